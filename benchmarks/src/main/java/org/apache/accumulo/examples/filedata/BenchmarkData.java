@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyValue;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Builds table entries in the layout written by {@link FileDataIngest}.
+ */
+final class BenchmarkData {
+
+  private BenchmarkData() {}
+
+  /**
+   * @return a string that sorts in the same order as i
+   */
+  static String sortable(String prefix, int i) {
+    return String.format("%s%03d", prefix, i);
+  }
+
+  /**
+   * Adds the entries of one file, in sorted order: a ref for each ref visibility, then each chunk
+   * and the end marker once per chunk visibility.
+   */
+  static void addFile(List<Entry<Key,Value>> entries, String row, int chunkSize, int fileSize,
+      int numRefs, int numChunkVis, long seed) {
+    Text rowText = new Text(row);
+    for (int i = 0; i < numRefs; i++)
+      entries.add(new KeyValue(new Key(rowText, FileDataIngest.REFS_CF,
+          KeyUtil.buildNullSepText("uid" + i, FileDataIngest.REFS_ORIG_FILE),
+          new Text(sortable("R", i))), ("file" + i).getBytes()));
+
+    Random random = new Random(seed);
+    int numChunks = (fileSize + chunkSize - 1) / chunkSize;
+    for (int c = 0; c <= numChunks; c++) {
+      int len = c == numChunks ? 0 : Math.min(chunkSize, fileSize - c * chunkSize);
+      byte[] data = new byte[len];
+      random.nextBytes(data);
+      Text cq = new Text(FileDataIngest.intToBytes(chunkSize));
+      cq.append(FileDataIngest.intToBytes(c), 0, 4);
+      for (int v = 0; v < numChunkVis; v++)
+        entries.add(new KeyValue(
+            new Key(rowText, FileDataIngest.CHUNK_CF, cq, new Text(sortable("C", v))), data));
+    }
+  }
+
+  static List<Entry<Key,Value>> file(int chunkSize, int fileSize, int numRefs, int numChunkVis) {
+    List<Entry<Key,Value>> entries = new ArrayList<>();
+    addFile(entries, "row", chunkSize, fileSize, numRefs, numChunkVis, 42);
+    return entries;
+  }
+
+  static TreeMap<Key,Value> files(int numFiles, int chunkSize, int fileSize, int numRefs,
+      int numChunkVis) {
+    List<Entry<Key,Value>> entries = new ArrayList<>();
+    for (int f = 0; f < numFiles; f++)
+      addFile(entries, sortable("row", f), chunkSize, fileSize, numRefs, numChunkVis, f);
+    TreeMap<Key,Value> map = new TreeMap<>();
+    for (Entry<Key,Value> entry : entries)
+      map.put(entry.getKey(), entry.getValue());
+    return map;
+  }
+}
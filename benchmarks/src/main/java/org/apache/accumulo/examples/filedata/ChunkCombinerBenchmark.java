@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Scans a set of files through a {@link ChunkCombiner}, which dedupes their chunks and combines the
+ * visibilities of their refs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChunkCombinerBenchmark {
+
+  private static final int NUM_FILES = 16;
+
+  @Param({"1024", "65536"})
+  int chunkSize;
+
+  @Param({"262144"})
+  int fileSize;
+
+  // the number of refs to each file, each with its own visibility
+  @Param({"1", "8", "64"})
+  int refs;
+
+  // the number of visibilities each chunk is stored with
+  @Param({"1", "4"})
+  int chunkVisibilities;
+
+  private TreeMap<Key,Value> data;
+
+  @Setup
+  public void setup() {
+    data = BenchmarkData.files(NUM_FILES, chunkSize, fileSize, refs, chunkVisibilities);
+  }
+
+  @Benchmark
+  public void scan(Blackhole bh) throws IOException {
+    ChunkCombiner combiner = new ChunkCombiner();
+    combiner.init(new MapIterator(data), Collections.emptyMap(), null);
+    combiner.seek(new Range(), Collections.emptySet(), false);
+    while (combiner.hasTop()) {
+      bh.consume(combiner.getTopKey());
+      bh.consume(combiner.getTopValue());
+      combiner.next();
+    }
+  }
+}
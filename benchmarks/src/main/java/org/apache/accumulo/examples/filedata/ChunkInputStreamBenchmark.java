@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * Reads a whole file through a {@link ChunkInputStream}, a byte at a time and into an array.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChunkInputStreamBenchmark {
+
+  @Param({"1024", "65536"})
+  int chunkSize;
+
+  @Param({"65536", "4194304"})
+  int fileSize;
+
+  // the number of visibilities each chunk is stored with
+  @Param({"1", "4"})
+  int chunkVisibilities;
+
+  private List<Entry<Key,Value>> entries;
+  private final byte[] buf = new byte[8192];
+
+  @Setup
+  public void setup() {
+    entries = BenchmarkData.file(chunkSize, fileSize, 1, chunkVisibilities);
+  }
+
+  private ChunkInputStream open() throws IOException {
+    ChunkInputStream cis = new ChunkInputStream();
+    cis.setSource(Iterators.peekingIterator(entries.iterator()));
+    return cis;
+  }
+
+  @Benchmark
+  public long readByte() throws IOException {
+    long sum = 0;
+    try (ChunkInputStream cis = open()) {
+      int b;
+      while ((b = cis.read()) >= 0)
+        sum += b;
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public void readArray(Blackhole bh) throws IOException {
+    try (ChunkInputStream cis = open()) {
+      while (cis.read(buf, 0, buf.length) > 0)
+        bh.consume(buf);
+    }
+  }
+}
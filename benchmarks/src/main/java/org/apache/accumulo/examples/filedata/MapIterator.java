@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+
+/**
+ * An in-memory source for iterators under benchmark, serving the entries of a sorted map.
+ */
+class MapIterator implements SortedKeyValueIterator<Key,Value> {
+  private final SortedMap<Key,Value> map;
+  private Iterator<Entry<Key,Value>> iter;
+  private Entry<Key,Value> entry;
+  private Collection<ByteSequence> columnFamilies;
+  private boolean inclusive;
+  private Range range;
+
+  MapIterator(SortedMap<Key,Value> map) {
+    this.map = map;
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options,
+      IteratorEnvironment env) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public MapIterator deepCopy(IteratorEnvironment env) {
+    return new MapIterator(map);
+  }
+
+  @Override
+  public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) {
+    this.range = range;
+    this.columnFamilies = columnFamilies;
+    this.inclusive = inclusive;
+    iter = (range.getStartKey() == null ? map : map.tailMap(range.getStartKey())).entrySet()
+        .iterator();
+    next();
+    while (hasTop() && range.beforeStartKey(getTopKey()))
+      next();
+  }
+
+  @Override
+  public void next() {
+    entry = null;
+    while (iter.hasNext()) {
+      Entry<Key,Value> e = iter.next();
+      if (range.afterEndKey(e.getKey()))
+        return;
+      if (columnFamilies.isEmpty()
+          || columnFamilies.contains(e.getKey().getColumnFamilyData()) == inclusive) {
+        entry = e;
+        return;
+      }
+    }
+  }
+
+  @Override
+  public boolean hasTop() {
+    return entry != null;
+  }
+
+  @Override
+  public Key getTopKey() {
+    return entry.getKey();
+  }
+
+  @Override
+  public Value getTopValue() {
+    return entry.getValue();
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Combines a number of visibilities with a {@link VisibilityCombiner}. Every other visibility is
+ * subsumed by the one before it, so the simplification is exercised too.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class VisibilityCombinerBenchmark {
+
+  @Param({"2", "16", "128"})
+  int fanOut;
+
+  @Param({"false", "true"})
+  boolean cached;
+
+  private final List<ByteSequence> visibilities = new ArrayList<>();
+  private final Map<Set<ByteSequence>,byte[]> cache = new HashMap<>();
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < fanOut; i++) {
+      String vis = "U" + (i / 2) + "&(G" + (i / 2 % 4) + "|ADMIN)";
+      if (i % 2 == 1)
+        vis = "(" + vis + ")&AUDIT";
+      visibilities.add(new ArrayByteSequence(vis));
+    }
+  }
+
+  @Benchmark
+  public byte[] combine() {
+    VisibilityCombiner vc = cached ? new VisibilityCombiner(cache) : new VisibilityCombiner();
+    for (ByteSequence vis : visibilities)
+      vc.add(vis);
+    return vc.get();
+  }
+}
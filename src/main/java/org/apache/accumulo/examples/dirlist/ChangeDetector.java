@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * Compares the files and directories found by a walk with what the directory table already holds,
+ * so an incremental {@link Ingest} only reads and writes paths that are new or whose last modified
+ * time or length changed, and deletes the paths that are gone.
+ * <p>
+ * Before the entries of a directory are visited, what is stored for all of its children is read
+ * with one scan. Each child found by the walk is checked against it and removed from it, so once
+ * the walk leaves the directory the children left over are the ones that no longer exist. Those
+ * are deleted from the directory and index tables, along with everything stored under them. Only
+ * entries visible with the given authorizations are compared and deleted.
+ * <p>
+ * A path that was stored as a file and is now a directory, or the other way around, is
+ * {@link Change#REPLACED}, and what was stored for its old type is deleted with
+ * {@link #deleteReplaced(String, boolean, BatchWriter, BatchWriter, BatchWriter, CountDeltas)}
+ * before it is written again.
+ */
+public class ChangeDetector {
+
+  public enum Change {
+    NEW, CHANGED, UNCHANGED,
+    /** stored as a file and now a directory, or stored as a directory and now a file */
+    REPLACED
+  }
+
+  /**
+   * The last modified time and length stored for a path, as a directory and as a file, or -1 for
+   * those not stored.
+   */
+  static class Stored {
+    long dirLastmod = -1;
+    long dirLength = -1;
+    long fileLastmod = -1;
+    long fileLength = -1;
+
+    boolean isDir() {
+      return dirLastmod >= 0 || dirLength >= 0;
+    }
+
+    boolean isFile() {
+      return fileLastmod >= 0 || fileLength >= 0;
+    }
+  }
+
+  private final AccumuloClient client;
+  private final String tableName;
+  private final Authorizations auths;
+  private final RowFormat format;
+  // the stored children of each directory being walked that have not been found yet
+  private final Map<String,Map<String,Stored>> unseen = new ConcurrentHashMap<>();
+
+  public ChangeDetector(AccumuloClient client, String tableName, Authorizations auths,
+      RowFormat format) {
+    this.client = client;
+    this.tableName = tableName;
+    this.auths = auths;
+    this.format = format;
+  }
+
+  private static String getParent(String path) {
+    int slashIndex = path.lastIndexOf('/');
+    return slashIndex <= 0 ? "/" : path.substring(0, slashIndex);
+  }
+
+  /**
+   * Reads the stored entries of one row, leaving the iterator at the next row.
+   *
+   * @return what is stored for the row
+   */
+  static Stored readRow(PeekingIterator<Entry<Key,Value>> entries) {
+    Stored stored = new Stored();
+    Text row = entries.peek().getKey().getRow();
+    Text latestFile = null;
+    while (entries.hasNext() && entries.peek().getKey().compareRow(row) == 0) {
+      Entry<Key,Value> entry = entries.next();
+      Text colf = entry.getKey().getColumnFamily();
+      String colq = entry.getKey().getColumnQualifier().toString();
+      boolean isDir = colf.equals(QueryUtil.DIR_COLF);
+      // file column families sort newest first, so only the first one is read
+      if (!isDir) {
+        if (latestFile == null)
+          latestFile = colf;
+        else if (!latestFile.equals(colf))
+          continue;
+      }
+      if (!colq.equals(Ingest.LASTMOD_CQ) && !colq.equals(Ingest.LENGTH_CQ))
+        continue;
+      long value;
+      try {
+        value = Long.parseLong(entry.getValue().toString());
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      if (colq.equals(Ingest.LASTMOD_CQ)) {
+        if (isDir)
+          stored.dirLastmod = value;
+        else
+          stored.fileLastmod = value;
+      } else {
+        if (isDir)
+          stored.dirLength = value;
+        else
+          stored.fileLength = value;
+      }
+    }
+    return stored;
+  }
+
+  /**
+   * @param stored
+   *          what is stored for the path, or null if nothing is
+   * @return how a path differs from what is stored for it
+   */
+  static Change compare(Stored stored, boolean isDir, long length, long lastmod) {
+    if (stored == null)
+      return Change.NEW;
+    if (isDir ? !stored.isDir() && stored.isFile() : stored.isDir() && !stored.isFile())
+      return Change.REPLACED;
+    if (isDir)
+      return stored.dirLastmod == lastmod && stored.dirLength == length ? Change.UNCHANGED
+          : Change.CHANGED;
+    return stored.fileLastmod == lastmod && stored.fileLength == length ? Change.UNCHANGED
+        : Change.CHANGED;
+  }
+
+  /**
+   * Reads what is stored for the children of a directory, before they are checked.
+   */
+  public void loadChildren(String dir) throws TableNotFoundException {
+    Map<String,Stored> children = new ConcurrentHashMap<>();
+    try (Scanner scanner = client.createScanner(tableName, auths)) {
+      scanner.setRange(Range.prefix(format.getChildPrefix(dir)));
+      PeekingIterator<Entry<Key,Value>> entries = Iterators.peekingIterator(scanner.iterator());
+      while (entries.hasNext()) {
+        String path = format.getPath(entries.peek().getKey().getRow(), dir);
+        children.put(path, readRow(entries));
+      }
+    }
+    unseen.put(dir, children);
+  }
+
+  /**
+   * Checks a path found by the walk against what is stored for it.
+   */
+  public Change check(String path, boolean isDir, long length, long lastmod)
+      throws TableNotFoundException {
+    Map<String,Stored> children = unseen.get(getParent(path));
+    Stored stored;
+    if (children != null) {
+      stored = children.remove(path);
+    } else {
+      // the parent was not walked, as for the first path of a walk, so look the path up directly
+      try (Scanner scanner = client.createScanner(tableName, auths)) {
+        scanner.setRange(new Range(format.getRow(path.equals("/") ? "" : path)));
+        PeekingIterator<Entry<Key,Value>> entries = Iterators.peekingIterator(scanner.iterator());
+        stored = entries.hasNext() ? readRow(entries) : null;
+      }
+    }
+    return compare(stored, isDir, length, lastmod);
+  }
+
+  /**
+   * Deletes the stored children of a directory that the walk did not find, and everything stored
+   * under them, once the walk is done with the directory.
+   *
+   * @param trigramBW
+   *          where to delete the {@link TrigramIndex} entries of the deleted paths, or null
+   * @param counts
+   *          where to remove the deleted paths from the counts of their ancestors, or null
+   * @return the number of paths deleted
+   */
+  public long deleteUnseen(String dir, BatchWriter dirBW, BatchWriter indexBW,
+      BatchWriter trigramBW, CountDeltas counts)
+      throws TableNotFoundException, MutationsRejectedException {
+    Map<String,Stored> children = unseen.remove(dir);
+    if (children == null)
+      return 0;
+    long deleted = 0;
+    for (Entry<String,Stored> child : children.entrySet()) {
+      String path = child.getKey();
+      deleted += deleteRows(new Range(format.getRow(path)), getParent(path), dirBW, indexBW,
+          trigramBW, null, null);
+      // the directories and files deleted under the child
+      long[] under = new long[2];
+      if (child.getValue().isDir())
+        deleted += deleteSubtree(path, dirBW, indexBW, trigramBW, under);
+      if (counts != null)
+        counts.remove(path, child.getValue().isDir(), under[0], under[1]);
+    }
+    return deleted;
+  }
+
+  /**
+   * Deletes what is stored for the old type of a {@link Change#REPLACED} path, before it is written
+   * as its new type. Only the columns of the old type are deleted from the path's row, since the
+   * columns of the new type are written to other column families and the index entries of the path
+   * stay the same. For a path that was a directory, everything stored under it is deleted too.
+   *
+   * @param wasDir
+   *          true if the path was stored as a directory
+   * @param trigramBW
+   *          where to delete the {@link TrigramIndex} entries of paths under a former directory, or
+   *          null
+   * @param counts
+   *          where to remove the path as its old type, and the paths under it, from the counts of
+   *          its ancestors, or null
+   * @return the number of paths deleted under a former directory
+   */
+  public long deleteReplaced(String path, boolean wasDir, BatchWriter dirBW, BatchWriter indexBW,
+      BatchWriter trigramBW, CountDeltas counts)
+      throws TableNotFoundException, MutationsRejectedException {
+    long[] under = new long[2];
+    long deleted = wasDir ? deleteSubtree(path, dirBW, indexBW, trigramBW, under) : 0;
+    Text row = format.getRow(path);
+    Mutation m = new Mutation(row);
+    try (Scanner scanner = client.createScanner(tableName, auths)) {
+      scanner.setRange(new Range(row));
+      for (Entry<Key,Value> entry : scanner) {
+        Key key = entry.getKey();
+        if ((key.compareColumnFamily(QueryUtil.DIR_COLF) == 0) == wasDir)
+          m.putDelete(key.getColumnFamily(), key.getColumnQualifier(),
+              new ColumnVisibility(key.getColumnVisibility()));
+      }
+    }
+    if (m.size() > 0)
+      dirBW.addMutation(m);
+    if (counts != null)
+      counts.remove(path, wasDir, under[0], under[1]);
+    return deleted;
+  }
+
+  /**
+   * Deletes everything stored under a directory, one directory's children at a time, since only
+   * the children of a directory share a row prefix in every {@link RowFormat}.
+   */
+  private long deleteSubtree(String dir, BatchWriter dirBW, BatchWriter indexBW,
+      BatchWriter trigramBW, long[] removed)
+      throws TableNotFoundException, MutationsRejectedException {
+    List<String> subdirs = new ArrayList<>();
+    long deleted = deleteRows(Range.prefix(format.getChildPrefix(dir)), dir, dirBW, indexBW,
+        trigramBW, removed, subdirs);
+    for (String subdir : subdirs)
+      deleted += deleteSubtree(subdir, dirBW, indexBW, trigramBW, removed);
+    return deleted;
+  }
+
+  /**
+   * @param parent
+   *          the path of the directory holding the paths of the rows in the range
+   * @param removed
+   *          where to add the number of directory and file rows deleted, or null
+   * @param dirs
+   *          where to add the paths of the directories deleted, or null
+   */
+  private long deleteRows(Range range, String parent, BatchWriter dirBW, BatchWriter indexBW,
+      BatchWriter trigramBW, long[] removed, List<String> dirs)
+      throws TableNotFoundException, MutationsRejectedException {
+    long rows = 0;
+    long dirRows = 0;
+    try (Scanner scanner = client.createScanner(tableName, auths)) {
+      scanner.setRange(range);
+      Iterator<Entry<Key,Value>> entries = scanner.iterator();
+      Text row = null;
+      String path = null;
+      Mutation m = null;
+      Set<Text> visibilities = new HashSet<>();
+      while (entries.hasNext()) {
+        Key key = entries.next().getKey();
+        if (row == null || key.compareRow(row) != 0) {
+          if (m != null)
+            deleteRow(m, path, visibilities, dirBW, indexBW, trigramBW);
+          row = key.getRow();
+          path = format.getPath(row, parent);
+          m = new Mutation(row);
+          visibilities.clear();
+          rows++;
+          // the dir column family sorts before those of files
+          if (key.compareColumnFamily(QueryUtil.DIR_COLF) == 0) {
+            dirRows++;
+            if (dirs != null)
+              dirs.add(path);
+          }
+        }
+        m.putDelete(key.getColumnFamily(), key.getColumnQualifier(),
+            new ColumnVisibility(key.getColumnVisibility()));
+        visibilities.add(key.getColumnVisibility());
+      }
+      if (m != null)
+        deleteRow(m, path, visibilities, dirBW, indexBW, trigramBW);
+    }
+    if (removed != null) {
+      removed[0] += dirRows;
+      removed[1] += rows - dirRows;
+    }
+    return rows;
+  }
+
+  private void deleteRow(Mutation m, String path, Set<Text> visibilities, BatchWriter dirBW,
+      BatchWriter indexBW, BatchWriter trigramBW) throws MutationsRejectedException {
+    dirBW.addMutation(m);
+    // the index entries were written with the same visibility as the directory entries
+    Text ref = format.getIndexRef(path);
+    List<Mutation> indexDeletes = new ArrayList<>(2);
+    for (Mutation index : Ingest.buildIndexMutations(format, new ColumnVisibility(), path)) {
+      Mutation delete = new Mutation(index.getRow());
+      for (Text vis : visibilities)
+        delete.putDelete(QueryUtil.INDEX_COLF, ref, new ColumnVisibility(vis));
+      indexDeletes.add(delete);
+    }
+    indexBW.addMutations(indexDeletes);
+    if (trigramBW != null) {
+      Mutation trigramDelete = TrigramIndex.buildDeleteMutation(format, path, visibilities);
+      if (trigramDelete != null)
+        trigramBW.addMutation(trigramDelete);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.admin.CompactionConfig;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Combiner;
+import org.apache.accumulo.core.iterators.user.VersioningIterator;
+import org.apache.accumulo.core.security.Authorizations;
+
+/**
+ * Sums the directory counts stored in the dir:counts column, which are comma-separated values of
+ * the form dirCount,fileCount,recursiveDirCount,recursiveFileCount. With this combiner on the
+ * directory table, {@link Ingest} keeps the counts current by writing the change to the counts of
+ * each ancestor of the paths it adds and deletes, and {@link FileCount} writes the difference
+ * between the counts it computes and those stored.
+ */
+public class CountCombiner extends Combiner {
+
+  public static final String NAME = "dirCounts";
+
+  private static final int FIELDS = 4;
+
+  @Override
+  public Value reduce(Key key, Iterator<Value> iter) {
+    long[] sums = new long[FIELDS];
+    while (iter.hasNext()) {
+      String[] counts = iter.next().toString().split(",");
+      if (counts.length != FIELDS)
+        throw new IllegalArgumentException("invalid counts " + String.join(",", counts));
+      for (int i = 0; i < FIELDS; i++)
+        sums[i] += Long.parseLong(counts[i]);
+    }
+    return toValue(sums[0], sums[1], sums[2], sums[3]);
+  }
+
+  static Value toValue(long dirCount, long fileCount, long recursiveDirCount,
+      long recursiveFileCount) {
+    return new Value((dirCount + "," + fileCount + "," + recursiveDirCount + ","
+        + recursiveFileCount).getBytes());
+  }
+
+  /**
+   * @return true if the combiner is configured on a table
+   */
+  public static boolean isAttached(AccumuloClient client, String tableName)
+      throws AccumuloSecurityException, AccumuloException, TableNotFoundException {
+    return client.tableOperations().listIterators(tableName).containsKey(NAME);
+  }
+
+  /**
+   * Configures the combiner on the counts column of a directory table, if it is not already.
+   * Without the combiner, counts written again by {@link FileCount} are versions of which only the
+   * latest is read. The combiner would sum all of them, so if more than one version of any counts
+   * is stored, the table is first compacted to keep only the latest.
+   *
+   * @param auths
+   *          authorizations to read the stored counts with
+   */
+  public static void attach(AccumuloClient client, String tableName, Authorizations auths)
+      throws AccumuloSecurityException, AccumuloException, TableNotFoundException {
+    if (isAttached(client, tableName))
+      return;
+    if (hasOldVersions(client, tableName, auths))
+      client.tableOperations().compact(tableName, new CompactionConfig().setWait(true));
+    // counts are combined before the versioning iterator keeps only the latest of them
+    IteratorSetting setting = new IteratorSetting(10, NAME, CountCombiner.class);
+    Combiner.setColumns(setting, Collections
+        .singletonList(new IteratorSetting.Column(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ)));
+    client.tableOperations().attachIterator(tableName, setting);
+  }
+
+  /**
+   * @return true if any counts column has more than one version stored
+   */
+  static boolean hasOldVersions(AccumuloClient client, String tableName, Authorizations auths)
+      throws TableNotFoundException {
+    try (Scanner scanner = client.createScanner(tableName, auths)) {
+      // replaces the options of the table's versioning iterator, to see a second version
+      IteratorSetting versions = new IteratorSetting(20, "vers", VersioningIterator.class);
+      VersioningIterator.setMaxVersions(versions, 2);
+      scanner.addScanIterator(versions);
+      scanner.fetchColumn(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ);
+      Key last = null;
+      for (Entry<Key,Value> entry : scanner) {
+        if (last != null && entry.getKey().equals(last, PartialKey.ROW_COLFAM_COLQUAL_COLVIS))
+          return true;
+        last = entry.getKey();
+      }
+    }
+    return false;
+  }
+}
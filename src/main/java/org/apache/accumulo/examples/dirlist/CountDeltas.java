@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.security.ColumnVisibility;
+
+/**
+ * Collects the changes to the counts of directories as paths are added and deleted, and writes them
+ * to the dir:counts column of a directory table with a {@link CountCombiner}. The changes to each
+ * directory are summed before they are written, so the directories near the root, which change
+ * with every path, are written once for many paths.
+ */
+public class CountDeltas implements AutoCloseable {
+
+  private final BatchWriter batchWriter;
+  private final RowFormat format;
+  private final ColumnVisibility visibility;
+  private final int maxDirs;
+  // dirCount, fileCount, recursiveDirCount, recursiveFileCount changes for each directory
+  private final Map<String,long[]> deltas = new HashMap<>();
+
+  /**
+   * @param maxDirs
+   *          the most directories to hold changes for before they are written
+   */
+  public CountDeltas(BatchWriter batchWriter, RowFormat format, ColumnVisibility visibility,
+      int maxDirs) {
+    this.batchWriter = batchWriter;
+    this.format = format;
+    this.visibility = visibility;
+    this.maxDirs = maxDirs;
+  }
+
+  private static String getParent(String path) {
+    int slashIndex = path.lastIndexOf('/');
+    return slashIndex < 0 || path.equals("/") ? null : path.substring(0, slashIndex);
+  }
+
+  /**
+   * Counts a new path in its parent and in the recursive counts of every other ancestor.
+   */
+  public synchronized void add(String path, boolean isDir) throws MutationsRejectedException {
+    update(path, isDir, 0, 0, 1);
+  }
+
+  /**
+   * Removes a deleted path, and the directories and files that were under it, from the counts of
+   * its ancestors.
+   */
+  public synchronized void remove(String path, boolean isDir, long dirsUnder, long filesUnder)
+      throws MutationsRejectedException {
+    update(path, isDir, -dirsUnder, -filesUnder, -1);
+  }
+
+  private void update(String path, boolean isDir, long dirsUnder, long filesUnder, int sign)
+      throws MutationsRejectedException {
+    long recursiveDirs = dirsUnder + (isDir ? sign : 0);
+    long recursiveFiles = filesUnder + (isDir ? 0 : sign);
+    String dir = getParent(path);
+    if (dir == null)
+      return;
+    deltas.computeIfAbsent(dir, k -> new long[4])[isDir ? 0 : 1] += sign;
+    // the root directory is the empty path, which has no parent
+    for (; dir != null; dir = getParent(dir)) {
+      long[] delta = deltas.computeIfAbsent(dir, k -> new long[4]);
+      delta[2] += recursiveDirs;
+      delta[3] += recursiveFiles;
+    }
+    if (deltas.size() >= maxDirs)
+      flush();
+  }
+
+  /**
+   * Writes the changes collected so far to the batch writer.
+   */
+  public synchronized void flush() throws MutationsRejectedException {
+    for (Entry<String,long[]> entry : deltas.entrySet()) {
+      long[] delta = entry.getValue();
+      if (delta[0] == 0 && delta[1] == 0 && delta[2] == 0 && delta[3] == 0)
+        continue;
+      Mutation m = new Mutation(format.getRow(entry.getKey()));
+      m.put(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ, visibility,
+          CountCombiner.toValue(delta[0], delta[1], delta[2], delta[3]));
+      batchWriter.addMutation(m);
+    }
+    deltas.clear();
+  }
+
+  @Override
+  public void close() throws MutationsRejectedException {
+    flush();
+  }
+}
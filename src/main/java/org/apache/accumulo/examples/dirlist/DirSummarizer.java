@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongBinaryOperator;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.summary.Summarizer;
+import org.apache.accumulo.core.client.summary.SummarizerConfiguration;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Summarizes the files stored in a directory table, so that totals over a directory tree are read
+ * from the summaries Accumulo keeps with each of the table's files instead of from the table's
+ * entries. See {@link QueryUtil#getSubtreeSummary(String)}.
+ * <p>
+ * For each directory up to a configured depth, and for the root directory, the summary holds the
+ * number of files under it at any depth, their total length, the oldest and newest last modified
+ * times among them, and the number of files with each extension. Each statistic is named by its
+ * kind, a null byte and the path of the directory. Only the latest version of a file in each of the
+ * table's files is summarized, and deleted entries are skipped, so until the table is compacted the
+ * summaries can also count versions and files that were replaced or deleted in other files. Only
+ * {@link RowFormat#STANDARD} rows, which hold whole paths, are summarized.
+ * <p>
+ * The number of statistics of one of the table's files is limited, and the statistics that do not
+ * fit are counted in the {@value #DROPPED} statistic instead. By default the limit grows with the
+ * configured depth, since each level can hold many more directories than the one above it.
+ * <p>
+ * Summaries are computed as entries are written to the table's files, so entries that are still
+ * only in a tablet server's memory are not summarized until the table is flushed.
+ */
+public class DirSummarizer implements Summarizer {
+
+  /**
+   * The option giving the depth of the deepest directories summarized.
+   */
+  public static final String DEPTH_OPT = "depth";
+  /**
+   * The option giving the most statistics kept for one file of the table.
+   */
+  public static final String MAX_STATS_OPT = "maxStats";
+
+  public static final String FILES = "files";
+  public static final String BYTES = "bytes";
+  public static final String OLDEST = "oldest";
+  public static final String NEWEST = "newest";
+  public static final String EXTENSION = "ext.";
+  public static final String DROPPED = "dropped";
+
+  private static final int DEFAULT_DEPTH = 2;
+  // about the size of a serialized statistic, with the path in its name
+  private static final int STAT_SIZE = 128;
+
+  /**
+   * @return the name of the statistic of a kind for a directory
+   */
+  public static String statName(String kind, String dir) {
+    return kind + '\0' + dir;
+  }
+
+  static int getDepth(SummarizerConfiguration config) {
+    return Integer.parseInt(config.getOptions().getOrDefault(DEPTH_OPT, "" + DEFAULT_DEPTH));
+  }
+
+  /**
+   * @return the most statistics kept by default for a depth, which is four times as many for each
+   *         level summarized, from 1024 for the root alone up to 65536 from depth 3
+   */
+  static int defaultMaxStats(int depth) {
+    return 1024 << (2 * Math.min(Math.max(depth, 0), 3));
+  }
+
+  static int getMaxStats(SummarizerConfiguration config) {
+    String maxStats = config.getOptions().get(MAX_STATS_OPT);
+    return maxStats == null ? defaultMaxStats(getDepth(config)) : Integer.parseInt(maxStats);
+  }
+
+  // how the values of a statistic are combined
+  private static LongBinaryOperator operator(String stat) {
+    if (stat.startsWith(OLDEST + '\0'))
+      return Math::min;
+    if (stat.startsWith(NEWEST + '\0'))
+      return Math::max;
+    return Long::sum;
+  }
+
+  // the extension of a file name, after its last dot, which is "" for names without one
+  static String getExtension(String name) {
+    int dotIndex = name.lastIndexOf('.');
+    return dotIndex <= 0 ? "" : name.substring(dotIndex + 1);
+  }
+
+  private static class DirCollector implements Collector {
+    private final int depth;
+    private final int maxStats;
+    private final Map<String,Long> stats = new HashMap<>();
+    private Text row = null;
+    private Text latestFile = null;
+    private String[] dirs = null;
+    private String extension = null;
+
+    DirCollector(SummarizerConfiguration config) {
+      depth = getDepth(config);
+      maxStats = getMaxStats(config);
+    }
+
+    private void add(String kind, String dir, long value) {
+      String stat = statName(kind, dir);
+      if (!stats.containsKey(stat) && stats.size() >= maxStats) {
+        stats.merge(DROPPED, 1L, Long::sum);
+        return;
+      }
+      stats.merge(stat, value, operator(stat)::applyAsLong);
+    }
+
+    // the directories a path is summarized under, the root and its ancestors up to the depth
+    private void startFile(Text row) {
+      String path = RowFormat.STANDARD.getPath(row, null);
+      int pathDepth = QueryUtil.getDepth(path);
+      dirs = new String[Math.min(depth, pathDepth - 1) + 1];
+      dirs[0] = "";
+      int end = 0;
+      for (int i = 1; i < dirs.length; i++) {
+        end = path.indexOf('/', end + 1);
+        dirs[i] = path.substring(0, end);
+      }
+      extension = getExtension(path.substring(path.lastIndexOf('/') + 1));
+    }
+
+    @Override
+    public void accept(Key k, Value v) {
+      if (k.isDeleted() || k.compareColumnFamily(QueryUtil.DIR_COLF) == 0)
+        return;
+      // file column families sort newest first, so only the first one of a row is summarized
+      if (row == null || k.compareRow(row) != 0) {
+        row = k.getRow();
+        latestFile = k.getColumnFamily();
+        startFile(row);
+      } else if (k.compareColumnFamily(latestFile) != 0) {
+        return;
+      }
+
+      String colq = k.getColumnQualifier().toString();
+      if (!colq.equals(Ingest.LENGTH_CQ) && !colq.equals(Ingest.LASTMOD_CQ))
+        return;
+      long value;
+      try {
+        value = Long.parseLong(v.toString());
+      } catch (NumberFormatException e) {
+        return;
+      }
+      for (String dir : dirs) {
+        if (colq.equals(Ingest.LENGTH_CQ)) {
+          add(FILES, dir, 1);
+          add(BYTES, dir, value);
+          add(EXTENSION + extension, dir, 1);
+        } else {
+          add(OLDEST, dir, value);
+          add(NEWEST, dir, value);
+        }
+      }
+    }
+
+    @Override
+    public void summarize(StatisticConsumer sc) {
+      stats.forEach(sc::accept);
+    }
+  }
+
+  @Override
+  public Collector collector(SummarizerConfiguration sc) {
+    return new DirCollector(sc);
+  }
+
+  @Override
+  public Combiner combiner(SummarizerConfiguration sc) {
+    return (summary1, summary2) -> summary2
+        .forEach((stat, value) -> summary1.merge(stat, value, operator(stat)::applyAsLong));
+  }
+
+  /**
+   * @return true if the summarizer is configured on a table
+   */
+  public static boolean isConfigured(AccumuloClient client, String tableName)
+      throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+    for (SummarizerConfiguration config : client.tableOperations().listSummarizers(tableName))
+      if (config.getClassName().equals(DirSummarizer.class.getName()))
+        return true;
+    return false;
+  }
+
+  /**
+   * Configures the summarizer on a directory table, if it is not already, and sizes the largest
+   * summary the table keeps for a file to fit the statistics of the depth. Files the table already
+   * has are only summarized once they are compacted.
+   *
+   * @param depth
+   *          the depth of the deepest directories summarized
+   */
+  public static void configure(AccumuloClient client, String tableName, int depth)
+      throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+    if (isConfigured(client, tableName))
+      return;
+    int maxStats = defaultMaxStats(depth);
+    client.tableOperations().setProperty(tableName, Property.TABLE_FILE_SUMMARY_MAX_SIZE.getKey(),
+        (maxStats * STAT_SIZE / 1024) + "K");
+    client.tableOperations().addSummarizers(tableName,
+        SummarizerConfiguration.builder(DirSummarizer.class).addOption(DEPTH_OPT, depth)
+            .addOption(MAX_STATS_OPT, maxStats).build());
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+
+import org.apache.accumulo.examples.dirlist.Viewer.NodeInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A tree model that lists directories in the background, so that browsing a large tree never
+ * blocks the Swing event thread.
+ * <p>
+ * A directory is listed when its node is first expanded. Until the listing arrives, the node holds
+ * a single placeholder child. Listings are read by a fixed number of threads and kept in a cache of
+ * the most recently used directories, so a directory expanded again is shown at once. Once a
+ * directory is shown, the listings of its first few subdirectories are read ahead of time, since
+ * they are the likeliest to be expanded next. Directories the user expands are read before any that
+ * are only read ahead, and only a limited number of reads ahead are queued at once.
+ * <p>
+ * Apart from {@link #close()}, the methods of this model must be called on the event thread, as for
+ * any Swing model. Nodes hold {@link NodeInfo} objects.
+ */
+@SuppressWarnings("serial")
+public class DirTreeModel extends DefaultTreeModel implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(DirTreeModel.class);
+
+  /**
+   * Reads the entries of a directory, from one of the model's threads.
+   */
+  public interface Lister {
+    List<NodeInfo> list(String path) throws Exception;
+  }
+
+  private final Lister lister;
+  private final ThreadPoolExecutor executor;
+  private final Semaphore prefetchPermits;
+  private final int maxPrefetch;
+  private final AtomicLong sequence = new AtomicLong();
+  // the listings read or being read, least recently used first
+  private final Map<String,CompletableFuture<List<NodeInfo>>> cache;
+  // the nodes whose children are their directory's listing, used only on the event thread
+  private final Set<TreeNode> loaded = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * @param numThreads
+   *          the number of directories listed at once
+   * @param maxCachedDirs
+   *          the number of directory listings kept
+   * @param maxPrefetch
+   *          the number of directories read ahead of time after each directory is shown, and the
+   *          most reads ahead queued at once
+   */
+  public DirTreeModel(DefaultMutableTreeNode root, Lister lister, int numThreads,
+      int maxCachedDirs, int maxPrefetch) {
+    super(root);
+    if (numThreads < 1)
+      throw new IllegalArgumentException("numThreads must be at least 1 " + numThreads);
+    this.lister = lister;
+    this.maxPrefetch = maxPrefetch;
+    this.prefetchPermits = new Semaphore(maxPrefetch);
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,CompletableFuture<List<NodeInfo>>> e) {
+        return size() > maxCachedDirs;
+      }
+    };
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<>(), r -> {
+          Thread thread = new Thread(r, "directory lister " + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Reads one directory listing, ordered so that listings the user is waiting for are read before
+   * those read ahead of time, and otherwise in the order they were requested.
+   */
+  private class ListTask implements Runnable, Comparable<ListTask> {
+    private final String path;
+    private final CompletableFuture<List<NodeInfo>> listing;
+    private final boolean prefetch;
+    private final long order = sequence.getAndIncrement();
+
+    ListTask(String path, CompletableFuture<List<NodeInfo>> listing, boolean prefetch) {
+      this.path = path;
+      this.listing = listing;
+      this.prefetch = prefetch;
+    }
+
+    @Override
+    public void run() {
+      try {
+        log.debug("listing {}", path);
+        listing.complete(lister.list(path));
+      } catch (Exception e) {
+        // a failed listing is read again the next time it is requested
+        synchronized (cache) {
+          cache.remove(path, listing);
+        }
+        listing.completeExceptionally(e);
+      } finally {
+        if (prefetch)
+          prefetchPermits.release();
+      }
+    }
+
+    @Override
+    public int compareTo(ListTask other) {
+      if (prefetch != other.prefetch)
+        return prefetch ? 1 : -1;
+      return Long.compare(order, other.order);
+    }
+  }
+
+  /**
+   * Returns the listing of a directory, from the cache or read in the background.
+   *
+   * @param prefetch
+   *          whether the listing is only read ahead of time, in which case it is not read if too
+   *          many other reads ahead are queued
+   * @return the listing, or null if a read ahead was not started
+   */
+  CompletableFuture<List<NodeInfo>> list(String path, boolean prefetch) {
+    synchronized (cache) {
+      CompletableFuture<List<NodeInfo>> listing = cache.get(path);
+      if (listing != null)
+        return listing;
+      if (prefetch && !prefetchPermits.tryAcquire())
+        return null;
+      listing = new CompletableFuture<>();
+      cache.put(path, listing);
+      executor.execute(new ListTask(path, listing, prefetch));
+      return listing;
+    }
+  }
+
+  // the root is always a directory, even if nothing is stored for it
+  @Override
+  public boolean isLeaf(Object node) {
+    if (node == getRoot())
+      return false;
+    Object info = ((DefaultMutableTreeNode) node).getUserObject();
+    return !(info instanceof NodeInfo) || !((NodeInfo) info).isDirectory();
+  }
+
+  /**
+   * Shows the entries of a directory node, at once if its listing is cached and otherwise once it
+   * is read. Does nothing if the node already shows them.
+   */
+  public void load(DefaultMutableTreeNode node) {
+    if (isLeaf(node) || loaded.contains(node))
+      return;
+    String path = ((NodeInfo) node.getUserObject()).getFullName();
+    CompletableFuture<List<NodeInfo>> listing = list(path, false);
+    if (listing.isDone()) {
+      show(node, listing);
+      return;
+    }
+    if (node.getChildCount() == 0) {
+      node.add(new DefaultMutableTreeNode(new NodeInfo("loading...", Collections.emptyMap())));
+      nodeStructureChanged(node);
+    }
+    listing.whenComplete((entries, e) -> SwingUtilities.invokeLater(() -> show(node, listing)));
+  }
+
+  /**
+   * Removes the entries shown under the children of a directory node, which are shown again from
+   * the cache when they are expanded.
+   */
+  public void unloadChildren(DefaultMutableTreeNode node) {
+    for (int i = 0; i < node.getChildCount(); i++) {
+      DefaultMutableTreeNode child = (DefaultMutableTreeNode) node.getChildAt(i);
+      if (child.getChildCount() > 0 || loaded.contains(child)) {
+        loaded.remove(child);
+        child.removeAllChildren();
+        nodeStructureChanged(child);
+      }
+    }
+  }
+
+  private void show(DefaultMutableTreeNode node, CompletableFuture<List<NodeInfo>> listing) {
+    // the node may have been shown or removed while the listing was read
+    if (loaded.contains(node) || node.getRoot() != getRoot())
+      return;
+    node.removeAllChildren();
+    List<NodeInfo> entries;
+    try {
+      entries = listing.join();
+    } catch (RuntimeException e) {
+      String path = ((NodeInfo) node.getUserObject()).getFullName();
+      log.error("Could not list {}", path, e.getCause());
+      node.add(new DefaultMutableTreeNode(
+          new NodeInfo("could not list " + path, Collections.emptyMap())));
+      nodeStructureChanged(node);
+      return;
+    }
+    for (NodeInfo entry : entries)
+      node.add(new DefaultMutableTreeNode(entry));
+    loaded.add(node);
+    nodeStructureChanged(node);
+
+    int prefetched = 0;
+    for (NodeInfo entry : entries) {
+      if (prefetched == maxPrefetch)
+        break;
+      if (entry.isDirectory() && list(entry.getFullName(), true) != null)
+        prefetched++;
+    }
+  }
+
+  /**
+   * Stops reading listings.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks directory trees with a pool of threads, so that the directory listings and file attribute
+ * reads of a large tree overlap instead of waiting on each other, which matters most on network
+ * file systems. Each directory is listed by one task, and its entries are handed out in batches to
+ * other tasks that read their attributes, visit them, and start a task for each subdirectory.
+ * <p>
+ * Paths are visited in no particular order and from many threads at once. Every path is visited by
+ * its real path. Symbolic links are visited as the file or directory they point to, so a path may
+ * be visited again for each link to it, but links are not followed into, so a walk can not loop
+ * forever. Directories that can not be listed, and links that point nowhere, are skipped.
+ */
+public class DirectoryWalker {
+
+  private static final Logger log = LoggerFactory.getLogger(DirectoryWalker.class);
+
+  // the number of directory entries visited by one task
+  private static final int BATCH_SIZE = 256;
+
+  /**
+   * Receives each path found by a walk, from any of the walk's threads.
+   */
+  public interface Visitor {
+    void visit(Path path, BasicFileAttributes attrs) throws Exception;
+
+    /**
+     * Called before any entries of a directory are visited, after the directory itself is.
+     */
+    default void preVisitDirectory(Path dir) throws Exception {}
+
+    /**
+     * Called once every entry of a directory, and everything under its subdirectories, has been
+     * visited. Not called for a directory that could not be listed completely.
+     */
+    default void postVisitDirectory(Path dir) throws Exception {}
+  }
+
+  private final int parallelism;
+
+  /**
+   * @param parallelism
+   *          the number of threads that list directories and visit paths
+   */
+  public DirectoryWalker(int parallelism) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be at least 1 " + parallelism);
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Visits a path and, if it is a directory, everything under it. Returns once every path has been
+   * visited.
+   *
+   * @throws Exception
+   *           the first exception thrown by the visitor, after which the walk stops
+   */
+  public void walk(Path root, Visitor visitor) throws Exception {
+    Path path;
+    try {
+      path = root.toRealPath();
+    } catch (IOException e) {
+      path = root.toAbsolutePath();
+    }
+    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    visitor.visit(path, attrs);
+    if (!attrs.isDirectory())
+      return;
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(new ListTask(path, visitor));
+    } catch (VisitException e) {
+      throw (Exception) e.getCause();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Carries an exception thrown by the visitor out of the pool.
+   */
+  private static class VisitException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    VisitException(Exception cause) {
+      super(cause);
+    }
+  }
+
+  /**
+   * Lists a directory, visiting its entries in batches.
+   */
+  private static class ListTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Path dir;
+    private final Visitor visitor;
+
+    ListTask(Path dir, Visitor visitor) {
+      this.dir = dir;
+      this.visitor = visitor;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        visitor.preVisitDirectory(dir);
+      } catch (Exception e) {
+        throw new VisitException(e);
+      }
+      List<VisitTask> batches = new ArrayList<>();
+      List<Path> batch = new ArrayList<>(BATCH_SIZE);
+      boolean listed = true;
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+        for (Path entry : entries) {
+          batch.add(entry);
+          if (batch.size() == BATCH_SIZE) {
+            batches.add(visitBatch(batch));
+            batch = new ArrayList<>(BATCH_SIZE);
+          }
+        }
+      } catch (IOException | DirectoryIteratorException e) {
+        log.warn("unable to list {}", dir, e);
+        listed = false;
+      }
+      if (!batch.isEmpty())
+        batches.add(visitBatch(batch));
+      for (VisitTask task : batches)
+        task.join();
+      if (listed) {
+        try {
+          visitor.postVisitDirectory(dir);
+        } catch (Exception e) {
+          throw new VisitException(e);
+        }
+      }
+    }
+
+    private VisitTask visitBatch(List<Path> batch) {
+      VisitTask task = new VisitTask(batch, visitor);
+      task.fork();
+      return task;
+    }
+  }
+
+  /**
+   * Visits a batch of directory entries, listing each subdirectory in a task of its own.
+   */
+  private static class VisitTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final List<Path> paths;
+    private final Visitor visitor;
+
+    VisitTask(List<Path> paths, Visitor visitor) {
+      this.paths = paths;
+      this.visitor = visitor;
+    }
+
+    @Override
+    protected void compute() {
+      List<ListTask> subdirs = new ArrayList<>();
+      for (Path path : paths) {
+        BasicFileAttributes attrs;
+        boolean isLink;
+        try {
+          attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          isLink = attrs.isSymbolicLink();
+          if (isLink) {
+            path = path.toRealPath();
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+          }
+        } catch (IOException e) {
+          log.debug("skipping {}", path, e);
+          continue;
+        }
+
+        try {
+          visitor.visit(path, attrs);
+        } catch (Exception e) {
+          throw new VisitException(e);
+        }
+        if (attrs.isDirectory() && !isLink) {
+          ListTask task = new ListTask(path, visitor);
+          task.fork();
+          subdirs.add(task);
+        }
+      }
+      for (ListTask task : subdirs)
+        task.join();
+    }
+  }
+}
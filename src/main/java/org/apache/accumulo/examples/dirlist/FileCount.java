@@ -16,16 +16,27 @@
  */
 package org.apache.accumulo.examples.dirlist;
 
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.accumulo.core.client.AccumuloClient;
 import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.MutationsRejectedException;
 import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.FirstEntryInRowIterator;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.accumulo.examples.cli.BatchWriterOpts;
@@ -38,11 +49,19 @@ import com.beust.jcommander.Parameter;
 /**
  * Computes recursive counts over file system information and stores them back into the same
  * Accumulo table.
+ * <p>
+ * Each depth of the table is scanned once, from the deepest up, and all counts are written in one
+ * batch writer session. With more than one thread, the tree under each top level directory is
+ * counted separately and in parallel.
+ * <p>
+ * When the table has a {@link CountCombiner}, as {@link Ingest} configures to keep counts current,
+ * only the difference between the computed and stored counts is written, to correct them.
  */
 public class FileCount {
 
-  private int entriesScanned;
-  private int inserts;
+  private final AtomicLong entriesScanned = new AtomicLong();
+  private final AtomicLong inserts = new AtomicLong();
+  private final AtomicInteger maxDepth = new AtomicInteger();
 
   private final ScannerOpts scanOpts;
   private final BatchWriterOpts bwOpts;
@@ -50,6 +69,10 @@ public class FileCount {
   private final String tableName;
   private final Authorizations auths;
   private final ColumnVisibility visibility;
+  private final int numThreads;
+  // whether counts are summed by a CountCombiner, so the difference from those stored is written
+  private boolean combined;
+  private RowFormat format;
 
   private static class CountValue {
     int dirCount = 0;
@@ -81,216 +104,267 @@ public class FileCount {
       recursiveDirCount++;
     }
 
-    public void clear() {
-      dirCount = 0;
-      fileCount = 0;
-      recursiveDirCount = 0;
-      recusiveFileCount = 0;
-    }
-
     public void incrementRecursive(CountValue other) {
       recursiveDirCount += other.recursiveDirCount;
       recusiveFileCount += other.recusiveFileCount;
     }
-  }
-
-  private int findMaxDepth(Scanner scanner, int min, int max) {
-    int mid = min + (max - min) / 2;
-    return findMaxDepth(scanner, min, mid, max);
-  }
-
-  private int findMaxDepth(Scanner scanner, int min, int mid, int max) {
-    // check to see if the mid-point exist
-    if (max < min)
-      return -1;
 
-    scanner.setRange(
-        new Range(String.format("%03d", mid), true, String.format("%03d", mid + 1), false));
-
-    if (scanner.iterator().hasNext()) {
-      // this depth exist, check to see if a larger depth exist
-      int ret = findMaxDepth(scanner, mid + 1, max);
-      if (ret == -1)
-        return mid; // this must the max
-      else
-        return ret;
-    } else {
-      // this depth does not exist, look lower
-      return findMaxDepth(scanner, min, mid - 1);
+    CountValue minus(CountValue other) {
+      CountValue diff = new CountValue();
+      diff.dirCount = dirCount - other.dirCount;
+      diff.fileCount = fileCount - other.fileCount;
+      diff.recursiveDirCount = recursiveDirCount - other.recursiveDirCount;
+      diff.recusiveFileCount = recusiveFileCount - other.recusiveFileCount;
+      return diff;
     }
 
+    boolean isZero() {
+      return dirCount == 0 && fileCount == 0 && recursiveDirCount == 0 && recusiveFileCount == 0;
+    }
   }
 
-  private int findMaxDepth(Scanner scanner) {
-    // do binary search to find max depth
-    int origBatchSize = scanner.getBatchSize();
-    scanner.setBatchSize(100);
-    int depth = findMaxDepth(scanner, 0, 64, 999);
-    scanner.setBatchSize(origBatchSize);
-    return depth;
+  // the counts stored in a row, when they are its first entry
+  private static CountValue storedCounts(Entry<Key,Value> entry) {
+    if (entry.getKey().compareColumnFamily(QueryUtil.DIR_COLF) != 0
+        || entry.getKey().compareColumnQualifier(QueryUtil.COUNTS_COLQ) != 0)
+      return null;
+    CountValue counts = new CountValue();
+    counts.set(entry.getValue());
+    return counts;
   }
 
-  // find the count column and consume a row
-  private Entry<Key,Value> findCount(Entry<Key,Value> entry, Iterator<Entry<Key,Value>> iterator,
-      CountValue cv) {
-
-    Key key = entry.getKey();
-    Text currentRow = key.getRow();
-
-    if (key.compareColumnQualifier(QueryUtil.COUNTS_COLQ) == 0)
-      cv.set(entry.getValue());
-
-    while (iterator.hasNext()) {
-      entry = iterator.next();
-      entriesScanned++;
-      key = entry.getKey();
-
-      if (key.compareRow(currentRow) != 0)
-        return entry;
-
-      if (key.compareColumnFamily(QueryUtil.DIR_COLF) == 0
-          && key.compareColumnQualifier(QueryUtil.COUNTS_COLQ) == 0) {
-        cv.set(entry.getValue());
-      }
+  private Mutation createMutation(Text row, CountValue countVal) {
+    Mutation m = new Mutation(row);
+    m.put(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ, visibility, countVal.toValue());
+    return m;
+  }
 
+  /**
+   * Writes the counts of a directory, or with a {@link CountCombiner} on the table, the difference
+   * from the counts stored for it, if there is any.
+   */
+  private void writeCounts(BatchWriter batchWriter, Text row, CountValue countVal,
+      CountValue stored) throws MutationsRejectedException {
+    if (combined && stored != null) {
+      countVal = countVal.minus(stored);
+      if (countVal.isZero())
+        return;
     }
-
-    return null;
+    batchWriter.addMutation(createMutation(row, countVal));
+    inserts.incrementAndGet();
   }
 
-  private Entry<Key,Value> consumeRow(Entry<Key,Value> entry, Iterator<Entry<Key,Value>> iterator) {
-    Key key = entry.getKey();
-    Text currentRow = key.getRow();
-
-    while (iterator.hasNext()) {
-      entry = iterator.next();
-      entriesScanned++;
-      key = entry.getKey();
-
-      if (key.compareRow(currentRow) != 0)
-        return entry;
-    }
+  // the rows at a depth that are under a directory, which only standard rows group together
+  private Range levelRange(int depth, String dir) {
+    if (dir.isEmpty())
+      return Range.prefix(format.getDepthPrefix(depth));
+    return Range.prefix(String.format("%03d%s/", depth, dir));
+  }
 
-    return null;
+  private Scanner createScanner(Range range) throws Exception {
+    Scanner scanner = client.createScanner(tableName, auths);
+    scanner.setBatchSize(scanOpts.scanBatchSize);
+    scanner.setRange(range);
+    // only the first entry of a row is needed, which is in the dir column family for directories
+    scanner.addScanIterator(new IteratorSetting(30, FirstEntryInRowIterator.class));
+    return scanner;
   }
 
-  private String extractDir(Key key) {
-    String row = key.getRowData().toString();
-    return row.substring(3, row.lastIndexOf('/'));
+  private boolean hasRows(Range range) throws Exception {
+    try (Scanner scanner = createScanner(range)) {
+      scanner.setBatchSize(1);
+      return scanner.iterator().hasNext();
+    }
   }
 
-  private Mutation createMutation(int depth, String dir, CountValue countVal) {
-    Mutation m = new Mutation(String.format("%03d%s", depth, dir));
-    m.put(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ, visibility, countVal.toValue());
-    return m;
+  /**
+   * Binary searches for the deepest level with rows under a directory. Every level between the
+   * directory and the deepest one holds rows, since each row has a parent one level up.
+   */
+  private int findMaxDepth(String dir, int depth) throws Exception {
+    int lo = depth;
+    int hi = 999;
+    while (lo < hi) {
+      int mid = lo + (hi - lo + 1) / 2;
+      if (hasRows(levelRange(mid, dir)))
+        lo = mid;
+      else
+        hi = mid - 1;
+    }
+    return lo;
   }
 
-  private void calculateCounts(Scanner scanner, int depth, BatchWriter batchWriter)
+  /**
+   * Writes the counts of every directory under a directory, reading each depth under it once from
+   * the deepest up. The counts of the directories at one depth are summed from the rows at the next
+   * depth and kept until their own rows are read, so nothing written is read back and the batch
+   * writer is never flushed.
+   *
+   * @return the counts of the directory itself, which are not written
+   */
+  private CountValue countSubtree(String dir, int depth, BatchWriter batchWriter)
       throws Exception {
+    int deepest = findMaxDepth(dir, depth);
+    maxDepth.accumulateAndGet(deepest, Math::max);
+
+    // directories are matched with their children by the keys of their rows
+    Map<String,CountValue> childCounts = new HashMap<>();
+    for (int d = deepest; d > depth; d--) {
+      Map<String,CountValue> parentCounts = new HashMap<>();
+      String currentDir = null;
+      CountValue countVal = null;
+      try (Scanner scanner = createScanner(levelRange(d, dir))) {
+        for (Entry<Key,Value> entry : scanner) {
+          entriesScanned.incrementAndGet();
+          Key key = entry.getKey();
+          Text row = key.getRow();
+
+          // the rows of a directory's children are next to each other, but the directories are
+          // not always in the order of their own rows ('-' sorts before '/' in the path format),
+          // so they are kept in a map
+          String parent = format.getParentKey(row);
+          if (!parent.equals(currentDir)) {
+            currentDir = parent;
+            countVal = parentCounts.computeIfAbsent(parent, k -> new CountValue());
+          }
+
+          if (key.compareColumnFamily(QueryUtil.DIR_COLF) == 0) {
+            // a directory with no children still gets counts
+            CountValue tmpCount = childCounts.remove(format.getKey(row));
+            if (tmpCount == null)
+              tmpCount = new CountValue();
+            writeCounts(batchWriter, row, tmpCount, storedCounts(entry));
+            countVal.incrementRecursive(tmpCount);
+            countVal.incrementDirs();
+          } else {
+            countVal.incrementFiles();
+          }
+        }
+      }
 
-    scanner.setRange(
-        new Range(String.format("%03d", depth), true, String.format("%03d", depth + 1), false));
-
-    CountValue countVal = new CountValue();
-
-    Iterator<Entry<Key,Value>> iterator = scanner.iterator();
-
-    String currentDir = null;
-
-    Entry<Key,Value> entry = null;
-    if (iterator.hasNext()) {
-      entry = iterator.next();
-      entriesScanned++;
+      // directories with children but no row of their own, whose rows only standard keys give
+      if (format == RowFormat.STANDARD) {
+        for (Entry<String,CountValue> missing : childCounts.entrySet()) {
+          writeCounts(batchWriter, format.getRow(missing.getKey()), missing.getValue(), null);
+        }
+      }
+      childCounts = parentCounts;
     }
 
-    while (entry != null) {
-      Key key = entry.getKey();
-
-      String dir = extractDir(key);
+    CountValue counts = childCounts.get(format.getKey(format.getRow(dir)));
+    return counts == null ? new CountValue() : counts;
+  }
 
-      if (currentDir == null) {
-        currentDir = dir;
-      } else if (!currentDir.equals(dir)) {
-        batchWriter.addMutation(createMutation(depth - 1, currentDir, countVal));
-        inserts++;
-        currentDir = dir;
-        countVal.clear();
+  /**
+   * Counts each top level directory in its own task, then sums them for the root directory.
+   */
+  private CountValue countTopLevel(BatchWriter batchWriter) throws Exception {
+    CountValue rootCount = new CountValue();
+    Map<String,Future<CountValue>> subtrees = new LinkedHashMap<>();
+    Map<String,CountValue> stored = new HashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      try (Scanner scanner = createScanner(levelRange(1, ""))) {
+        for (Entry<Key,Value> entry : scanner) {
+          entriesScanned.incrementAndGet();
+          Key key = entry.getKey();
+          if (key.compareColumnFamily(QueryUtil.DIR_COLF) == 0) {
+            String path = format.getPath(key.getRow(), "");
+            subtrees.put(path, executor.submit(() -> countSubtree(path, 1, batchWriter)));
+            stored.put(path, storedCounts(entry));
+            rootCount.incrementDirs();
+          } else {
+            rootCount.incrementFiles();
+          }
+        }
       }
 
-      // process a whole row
-      if (key.compareColumnFamily(QueryUtil.DIR_COLF) == 0) {
-        CountValue tmpCount = new CountValue();
-        entry = findCount(entry, iterator, tmpCount);
-
-        if (tmpCount.dirCount == 0 && tmpCount.fileCount == 0) {
-          // in this case the higher depth will not insert anything if the
-          // dir has no children, so insert something here
-          Mutation m = new Mutation(key.getRow());
-          m.put(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ, visibility, tmpCount.toValue());
-          batchWriter.addMutation(m);
-          inserts++;
+      for (Entry<String,Future<CountValue>> subtree : subtrees.entrySet()) {
+        CountValue tmpCount;
+        try {
+          tmpCount = subtree.getValue().get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+          throw e;
         }
-
-        countVal.incrementRecursive(tmpCount);
-        countVal.incrementDirs();
-      } else {
-        entry = consumeRow(entry, iterator);
-        countVal.incrementFiles();
+        writeCounts(batchWriter, format.getRow(subtree.getKey()), tmpCount,
+            stored.get(subtree.getKey()));
+        rootCount.incrementRecursive(tmpCount);
       }
+    } finally {
+      executor.shutdownNow();
     }
+    return rootCount;
+  }
 
-    if (currentDir != null) {
-      batchWriter.addMutation(createMutation(depth - 1, currentDir, countVal));
-      inserts++;
+  private CountValue readRootCounts() throws Exception {
+    try (Scanner scanner = client.createScanner(tableName, auths)) {
+      scanner.setRange(new Range(format.getRow("")));
+      scanner.fetchColumn(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ);
+      for (Entry<Key,Value> entry : scanner)
+        return storedCounts(entry);
     }
+    return null;
   }
 
   public FileCount(AccumuloClient client, String tableName, Authorizations auths,
       ColumnVisibility cv, ScannerOpts scanOpts, BatchWriterOpts bwOpts) throws Exception {
+    this(client, tableName, auths, cv, scanOpts, bwOpts, 1);
+  }
+
+  /**
+   * @param numThreads
+   *          the number of top level directories counted at once, or 1 to count the whole table in
+   *          one thread, as a table of {@link RowFormat#COMPACT} rows always is
+   */
+  public FileCount(AccumuloClient client, String tableName, Authorizations auths,
+      ColumnVisibility cv, ScannerOpts scanOpts, BatchWriterOpts bwOpts, int numThreads)
+      throws Exception {
+    if (numThreads < 1)
+      throw new IllegalArgumentException("numThreads must be at least 1 " + numThreads);
     this.client = client;
     this.tableName = tableName;
     this.auths = auths;
     this.visibility = cv;
     this.scanOpts = scanOpts;
     this.bwOpts = bwOpts;
+    this.numThreads = numThreads;
   }
 
   public void run() throws Exception {
 
-    entriesScanned = 0;
-    inserts = 0;
-
-    Scanner scanner = client.createScanner(tableName, auths);
-    scanner.setBatchSize(scanOpts.scanBatchSize);
-    BatchWriter bw = client.createBatchWriter(tableName, bwOpts.getBatchWriterConfig());
+    entriesScanned.set(0);
+    inserts.set(0);
+    maxDepth.set(0);
+    combined = CountCombiner.isAttached(client, tableName);
+    format = RowFormat.forTable(client, tableName);
+    // compact rows under a directory are not grouped by depth, so they are counted in one pass
+    boolean oneThread = numThreads == 1 || format == RowFormat.COMPACT;
 
     long t1 = System.currentTimeMillis();
 
-    int depth = findMaxDepth(scanner);
-
-    long t2 = System.currentTimeMillis();
-
-    for (int d = depth; d > 0; d--) {
-      calculateCounts(scanner, d, bw);
-      // must flush so next depth can read what prev depth wrote
-      bw.flush();
+    try (BatchWriter bw = client.createBatchWriter(tableName, bwOpts.getBatchWriterConfig())) {
+      CountValue rootCount = oneThread ? countSubtree("", 0, bw) : countTopLevel(bw);
+      writeCounts(bw, format.getRow(""), rootCount, combined ? readRootCounts() : null);
     }
 
-    bw.close();
-
-    long t3 = System.currentTimeMillis();
+    long t2 = System.currentTimeMillis();
 
-    System.out.printf("Max depth              : %d%n", depth);
-    System.out.printf("Time to find max depth : %,d ms%n", (t2 - t1));
-    System.out.printf("Time to compute counts : %,d ms%n", (t3 - t2));
-    System.out.printf("Entries scanned        : %,d %n", entriesScanned);
-    System.out.printf("Counts inserted        : %,d %n", inserts);
+    System.out.printf("Max depth              : %d%n", maxDepth.get());
+    System.out.printf("Time to compute counts : %,d ms%n", (t2 - t1));
+    System.out.printf("Entries scanned        : %,d %n", entriesScanned.get());
+    System.out.printf("Counts inserted        : %,d %n", inserts.get());
   }
 
   public static class Opts extends ClientOnRequiredTable {
     @Parameter(names = "--vis", description = "use a given visibility for the new counts",
         converter = VisibilityConverter.class)
     ColumnVisibility visibility = new ColumnVisibility();
+
+    @Parameter(names = "--threads",
+        description = "number of top level directories to count at once, 1 counts in one pass")
+    int threads = Runtime.getRuntime().availableProcessors();
   }
 
   public static void main(String[] args) throws Exception {
@@ -302,7 +376,7 @@ public class FileCount {
 
     try (AccumuloClient client = opts.createAccumuloClient()) {
       FileCount fileCount = new FileCount(client, opts.getTableName(), opts.auths, opts.visibility,
-          scanOpts, bwOpts);
+          scanOpts, bwOpts, opts.threads);
       fileCount.run();
     }
   }
@@ -16,14 +16,24 @@
  */
 package org.apache.accumulo.examples.dirlist;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.accumulo.core.client.AccumuloClient;
 import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
 import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.client.lexicoder.Encoder;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Value;
@@ -43,7 +53,9 @@ import com.beust.jcommander.Parameter;
 /**
  * Recursively lists the files and directories under a given path, ingests their names and file info
  * into one Accumulo table, indexes the file names in a separate table, and the file data into a
- * third table.
+ * third table. The file names can also be indexed by their trigrams in a fourth table. The tree is
+ * walked by a {@link DirectoryWalker} with a configurable number of threads, and the directory and
+ * index tables are written by threads of their own.
  */
 public final class Ingest {
 
@@ -65,9 +77,15 @@ public final class Ingest {
 
   public static Mutation buildMutation(ColumnVisibility cv, String path, boolean isDir,
       boolean isHidden, boolean canExec, long length, long lastmod, String hash) {
+    return buildMutation(RowFormat.STANDARD, cv, path, isDir, isHidden, canExec, length, lastmod,
+        hash);
+  }
+
+  public static Mutation buildMutation(RowFormat format, ColumnVisibility cv, String path,
+      boolean isDir, boolean isHidden, boolean canExec, long length, long lastmod, String hash) {
     if (path.equals("/"))
       path = "";
-    Mutation m = new Mutation(QueryUtil.getRow(path));
+    Mutation m = new Mutation(format.getRow(path));
     Text colf;
     if (isDir)
       colf = QueryUtil.DIR_COLF;
@@ -82,56 +100,241 @@ public final class Ingest {
     return m;
   }
 
-  private static void ingest(File src, ColumnVisibility cv, BatchWriter dirBW, BatchWriter indexBW,
-      FileDataIngest fdi, BatchWriter data) throws Exception {
-    // build main table entry
-    String path;
-    try {
-      path = src.getCanonicalPath();
-    } catch (IOException e) {
-      path = src.getAbsolutePath();
+  /**
+   * The information stored about one file or directory.
+   */
+  static class FileInfo {
+    final String path;
+    final boolean isDir;
+    final boolean isHidden;
+    final boolean canExec;
+    final long length;
+    final long lastmod;
+    final String hash;
+
+    FileInfo(String path, boolean isDir, boolean isHidden, boolean canExec, long length,
+        long lastmod, String hash) {
+      this.path = path;
+      this.isDir = isDir;
+      this.isHidden = isHidden;
+      this.canExec = canExec;
+      this.length = length;
+      this.lastmod = lastmod;
+      this.hash = hash;
     }
-    log.info(path);
+  }
 
+  /**
+   * Reads the information about a file, and ingests its data unless it is a directory.
+   *
+   * @return the information, or null if the file data could not be read
+   */
+  static FileInfo readInfo(Path path, BasicFileAttributes attrs, FileDataIngest fdi,
+      BatchWriter data) throws IOException {
     String hash = null;
-    if (!src.isDirectory()) {
+    if (!attrs.isDirectory()) {
       try {
-        hash = fdi.insertFileData(path, data);
+        hash = fdi.insertFileData(path.toString(), data);
       } catch (Exception e) {
         // if something goes wrong, just skip this one
-        return;
+        return null;
       }
     }
+    return new FileInfo(path.toString(), attrs.isDirectory(), Files.isHidden(path),
+        Files.isExecutable(path), attrs.size(), attrs.lastModifiedTime().toMillis(), hash);
+  }
 
-    dirBW.addMutation(buildMutation(cv, path, src.isDirectory(), src.isHidden(), src.canExecute(),
-        src.length(), src.lastModified(), hash));
-
-    // build index table entries
+  static List<Mutation> buildIndexMutations(RowFormat format, ColumnVisibility cv, String path) {
+    List<Mutation> mutations = new ArrayList<>(2);
     Text row = QueryUtil.getForwardIndex(path);
     if (row != null) {
-      Text p = new Text(QueryUtil.getRow(path));
+      Text p = format.getIndexRef(path);
       Mutation m = new Mutation(row);
       m.put(QueryUtil.INDEX_COLF, p, cv, nullValue);
-      indexBW.addMutation(m);
+      mutations.add(m);
 
       row = QueryUtil.getReverseIndex(path);
       m = new Mutation(row);
       m.put(QueryUtil.INDEX_COLF, p, cv, nullValue);
-      indexBW.addMutation(m);
+      mutations.add(m);
+    }
+    return mutations;
+  }
+
+  /**
+   * Writes the information of files to the directory and index tables, each from a thread of its
+   * own. Files are handed to the threads through bounded queues, so the threads that read files
+   * wait when they get too far ahead of the writers.
+   */
+  static class InfoWriters implements AutoCloseable {
+    private static final FileInfo END = new FileInfo("", false, false, false, 0, 0, null);
+
+    private final BlockingQueue<FileInfo> dirQueue;
+    private final BlockingQueue<FileInfo> indexQueue;
+    private final Thread dirThread;
+    private final Thread indexThread;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    /**
+     * @param trigramBW
+     *          where to write the {@link TrigramIndex} entries of each file, or null
+     */
+    InfoWriters(RowFormat format, ColumnVisibility cv, BatchWriter dirBW, BatchWriter indexBW,
+        BatchWriter trigramBW, int queueSize) {
+      dirQueue = new ArrayBlockingQueue<>(queueSize);
+      indexQueue = new ArrayBlockingQueue<>(queueSize);
+      dirThread = startWriter("dir writer", dirQueue,
+          info -> dirBW.addMutation(buildMutation(format, cv, info.path, info.isDir,
+              info.isHidden, info.canExec, info.length, info.lastmod, info.hash)));
+      indexThread = startWriter("index writer", indexQueue, info -> {
+        indexBW.addMutations(buildIndexMutations(format, cv, info.path));
+        if (trigramBW != null) {
+          Mutation m = TrigramIndex.buildMutation(format, cv, info.path);
+          if (m != null)
+            trigramBW.addMutation(m);
+        }
+      });
+    }
+
+    private interface Writer {
+      void write(FileInfo info) throws Exception;
+    }
+
+    private Thread startWriter(String name, BlockingQueue<FileInfo> queue, Writer writer) {
+      Thread thread = new Thread(() -> {
+        try {
+          for (FileInfo info = queue.take(); info != END; info = queue.take()) {
+            // after a failure, keep taking files so the readers do not wait forever
+            if (failure.get() == null) {
+              try {
+                writer.write(info);
+              } catch (Exception e) {
+                failure.compareAndSet(null, e);
+              }
+            }
+          }
+        } catch (InterruptedException e) {
+          failure.compareAndSet(null, e);
+        }
+      }, name);
+      thread.setDaemon(true);
+      thread.start();
+      return thread;
+    }
+
+    void add(FileInfo info) throws Exception {
+      add(info, true);
+    }
+
+    /**
+     * @param index
+     *          false to only write the file to the directory table, when its index entries are
+     *          already stored
+     */
+    void add(FileInfo info, boolean index) throws Exception {
+      checkFailure();
+      log.info(info.path);
+      dirQueue.put(info);
+      if (index)
+        indexQueue.put(info);
+    }
+
+    private void checkFailure() throws Exception {
+      Exception e = failure.get();
+      if (e != null)
+        throw e;
+    }
+
+    @Override
+    public void close() throws Exception {
+      dirQueue.put(END);
+      indexQueue.put(END);
+      dirThread.join();
+      indexThread.join();
+      checkFailure();
     }
   }
 
-  private static void recurse(File src, ColumnVisibility cv, BatchWriter dirBW, BatchWriter indexBW,
-      FileDataIngest fdi, BatchWriter data) throws Exception {
-    // ingest this File
-    ingest(src, cv, dirBW, indexBW, fdi, data);
-    // recurse into subdirectories
-    if (src.isDirectory()) {
-      File[] files = src.listFiles();
-      if (files == null)
+  private static void ingest(Path path, DirectoryWalker.Visitor visitor) throws Exception {
+    try {
+      path = path.toRealPath();
+    } catch (IOException e) {
+      path = path.toAbsolutePath();
+    }
+    visitor.visit(path, Files.readAttributes(path, BasicFileAttributes.class));
+  }
+
+  /**
+   * Ingests each path found by a walk, or with a {@link ChangeDetector}, only the paths that are
+   * new or changed, deleting those that are gone and what was stored for a path under its old type
+   * when it changed between a file and a directory. With {@link CountDeltas}, new and deleted paths
+   * are also counted in the counts of their ancestors.
+   */
+  private static class IngestVisitor implements DirectoryWalker.Visitor {
+    private final InfoWriters writers;
+    private final ThreadLocal<FileDataIngest> ingesters;
+    private final BatchWriter dirBW;
+    private final BatchWriter indexBW;
+    private final BatchWriter trigramBW;
+    private final BatchWriter dataBW;
+    private final ChangeDetector changes;
+    private final CountDeltas counts;
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+
+    IngestVisitor(InfoWriters writers, ThreadLocal<FileDataIngest> ingesters, BatchWriter dirBW,
+        BatchWriter indexBW, BatchWriter trigramBW, BatchWriter dataBW, ChangeDetector changes,
+        CountDeltas counts) {
+      this.writers = writers;
+      this.ingesters = ingesters;
+      this.dirBW = dirBW;
+      this.indexBW = indexBW;
+      this.trigramBW = trigramBW;
+      this.dataBW = dataBW;
+      this.changes = changes;
+      this.counts = counts;
+    }
+
+    @Override
+    public void visit(Path path, BasicFileAttributes attrs) throws Exception {
+      // a path reached again through a link, or a parent of several of the ingested directories,
+      // is only counted once
+      if (counts != null && !visited.add(path.toString()))
+        return;
+      ChangeDetector.Change change = ChangeDetector.Change.NEW;
+      if (changes != null) {
+        change = changes.check(path.toString(), attrs.isDirectory(), attrs.size(),
+            attrs.lastModifiedTime().toMillis());
+        // unchanged files are not read again
+        if (change == ChangeDetector.Change.UNCHANGED)
+          return;
+      }
+      FileInfo info = readInfo(path, attrs, ingesters.get(), dataBW);
+      if (info == null)
         return;
-      for (File child : files) {
-        recurse(child, cv, dirBW, indexBW, fdi, data);
+      if (change == ChangeDetector.Change.REPLACED) {
+        long deleted = changes.deleteReplaced(info.path, !info.isDir, dirBW, indexBW, trigramBW,
+            counts);
+        if (deleted > 0)
+          log.info("deleted {} paths under {}", deleted, info.path);
+      }
+      writers.add(info, change == ChangeDetector.Change.NEW);
+      if (counts != null
+          && (change == ChangeDetector.Change.NEW || change == ChangeDetector.Change.REPLACED))
+        counts.add(info.path, info.isDir);
+    }
+
+    @Override
+    public void preVisitDirectory(Path dir) throws Exception {
+      if (changes != null)
+        changes.loadChildren(dir.toString());
+    }
+
+    @Override
+    public void postVisitDirectory(Path dir) throws Exception {
+      if (changes != null) {
+        long deleted = changes.deleteUnseen(dir.toString(), dirBW, indexBW, trigramBW, counts);
+        if (deleted > 0)
+          log.info("deleted {} paths under {}", deleted, dir);
       }
     }
   }
@@ -141,6 +344,9 @@ public final class Ingest {
     String dirTable = DIR_TABLE;
     @Parameter(names = "--indexTable", description = "an index over the ingested data")
     String indexTable = INDEX_TABLE;
+    @Parameter(names = "--trigramTable",
+        description = "a trigram index over the file names, for searches with any wildcards")
+    String trigramTable = null;
     @Parameter(names = "--dataTable", description = "the file data, chunked into parts")
     String dataTable = DATA_TABLE;
     @Parameter(names = "--vis", description = "the visibility to mark the data",
@@ -148,6 +354,27 @@ public final class Ingest {
     ColumnVisibility visibility = new ColumnVisibility();
     @Parameter(names = "--chunkSize", description = "the size of chunks when breaking down files")
     int chunkSize = 100000;
+    @Parameter(names = "--threads",
+        description = "the number of threads listing directories and reading files")
+    int threads = Runtime.getRuntime().availableProcessors();
+    @Parameter(names = "--queueSize",
+        description = "the most files waiting to be written to each of the dir and index tables")
+    int queueSize = 10000;
+    @Parameter(names = "--incremental", description = "only write paths that are new or whose "
+        + "last modified time or length changed, and delete paths that no longer exist")
+    boolean incremental = false;
+    @Parameter(names = "--counts", description = "keep the directory counts current as paths are "
+        + "added and deleted, which implies --incremental")
+    boolean counts = false;
+    @Parameter(names = "--countsBuffer", description = "with --counts, the most directories whose "
+        + "count changes are summed in memory before they are written")
+    int countsBuffer = 10000;
+    @Parameter(names = "--compactRows", description = "write the rows of a new directory table "
+        + "in the compact format, with a parent id and a name instead of a whole path")
+    boolean compactRows = false;
+    @Parameter(names = "--summaryDepth", description = "summarize the files under each directory "
+        + "up to this depth, so QueryUtil can total them without a scan; 0 does not summarize")
+    int summaryDepth = 0;
     @Parameter(description = "<dir> { <dir> ... }")
     List<String> directories = new ArrayList<>();
   }
@@ -161,29 +388,68 @@ public final class Ingest {
       Common.createTableWithNamespace(client, opts.dirTable);
       Common.createTableWithNamespace(client, opts.indexTable);
       Common.createTableWithNamespace(client, opts.dataTable);
-      client.tableOperations().attachIterator(opts.dataTable,
-          new IteratorSetting(1, ChunkCombiner.class));
-
-      BatchWriter dirBW = client.createBatchWriter(opts.dirTable, bwOpts.getBatchWriterConfig());
-      BatchWriter indexBW = client.createBatchWriter(opts.indexTable,
-          bwOpts.getBatchWriterConfig());
-      BatchWriter dataBW = client.createBatchWriter(opts.dataTable, bwOpts.getBatchWriterConfig());
-      FileDataIngest fdi = new FileDataIngest(opts.chunkSize, opts.visibility);
-      for (String dir : opts.directories) {
-        recurse(new File(dir), opts.visibility, dirBW, indexBW, fdi, dataBW);
-
-        // fill in parent directory info
-        int slashIndex;
-        while ((slashIndex = dir.lastIndexOf('/')) > 0) {
-          dir = dir.substring(0, slashIndex);
-          ingest(new File(dir), opts.visibility, dirBW, indexBW, fdi, dataBW);
+      if (opts.trigramTable != null)
+        Common.createTableWithNamespace(client, opts.trigramTable);
+      // the tables of an incremental ingest already have the combiner
+      IteratorSetting chunkCombiner = new IteratorSetting(1, ChunkCombiner.class);
+      if (!client.tableOperations().listIterators(opts.dataTable)
+          .containsKey(chunkCombiner.getName()))
+        client.tableOperations().attachIterator(opts.dataTable, chunkCombiner);
+
+      if (opts.counts)
+        CountCombiner.attach(client, opts.dirTable, opts.auths);
+
+      RowFormat format = RowFormat.forTable(client, opts.dirTable);
+      if (opts.compactRows && format != RowFormat.COMPACT) {
+        try (Scanner scanner = client.createScanner(opts.dirTable, opts.auths)) {
+          if (scanner.iterator().hasNext())
+            throw new IllegalArgumentException(
+                opts.dirTable + " already holds rows in the " + format + " format");
+        }
+        format = RowFormat.COMPACT;
+        RowFormat.setForTable(client, opts.dirTable, format);
+      }
+      if (opts.summaryDepth > 0) {
+        if (format != RowFormat.STANDARD)
+          throw new IllegalArgumentException("only standard rows can be summarized");
+        DirSummarizer.configure(client, opts.dirTable, opts.summaryDepth);
+      }
+
+      BatchWriterConfig bwConfig = bwOpts.getBatchWriterConfig();
+      try (BatchWriter dirBW = client.createBatchWriter(opts.dirTable, bwConfig);
+          BatchWriter indexBW = client.createBatchWriter(opts.indexTable, bwConfig);
+          BatchWriter trigramBW = opts.trigramTable == null ? null
+              : client.createBatchWriter(opts.trigramTable, bwConfig);
+          BatchWriter dataBW = client.createBatchWriter(opts.dataTable, bwConfig);
+          CountDeltas counts = opts.counts
+              ? new CountDeltas(dirBW, format, opts.visibility, opts.countsBuffer) : null;
+          InfoWriters writers = new InfoWriters(format, opts.visibility, dirBW, indexBW,
+              trigramBW, opts.queueSize)) {
+        // each thread reads files with its own FileDataIngest, which can not be shared
+        ThreadLocal<FileDataIngest> ingesters = ThreadLocal
+            .withInitial(() -> new FileDataIngest(opts.chunkSize, opts.visibility));
+        // paths are only counted when they are new, so counting needs the stored paths
+        ChangeDetector changes = opts.incremental || opts.counts
+            ? new ChangeDetector(client, opts.dirTable, opts.auths, format) : null;
+        IngestVisitor visitor = new IngestVisitor(writers, ingesters, dirBW, indexBW, trigramBW,
+            dataBW, changes, counts);
+        DirectoryWalker walker = new DirectoryWalker(opts.threads);
+        for (String dir : opts.directories) {
+          walker.walk(Paths.get(dir), visitor);
+
+          // fill in parent directory info
+          int slashIndex;
+          while ((slashIndex = dir.lastIndexOf('/')) > 0) {
+            dir = dir.substring(0, slashIndex);
+            ingest(Paths.get(dir), visitor);
+          }
         }
+        ingest(Paths.get("/"), visitor);
       }
-      ingest(new File("/"), opts.visibility, dirBW, indexBW, fdi, dataBW);
 
-      dirBW.close();
-      indexBW.close();
-      dataBW.close();
+      // entries still in memory are not summarized until they are written to a file
+      if (opts.summaryDepth > 0)
+        client.tableOperations().flush(opts.dirTable, null, null, true);
     }
   }
 }
@@ -16,42 +16,75 @@
  */
 package org.apache.accumulo.examples.dirlist;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.StringJoiner;
 import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
 
 import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.ScannerBase;
 import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.summary.SummarizerConfiguration;
+import org.apache.accumulo.core.client.summary.Summary;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.user.IntersectingIterator;
 import org.apache.accumulo.core.iterators.user.RegExFilter;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.examples.cli.ClientOnRequiredTable;
 import org.apache.hadoop.io.Text;
 
 import com.beust.jcommander.Parameter;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 
 /**
  * Provides utility methods for getting the info for a file, listing the contents of a directory,
- * and performing single wild card searches on file or directory names.
+ * and performing single wild card searches on file or directory names, or searches with any number
+ * of wild cards using a {@link TrigramIndex}.
  */
 public class QueryUtil {
   private final AccumuloClient client;
   private final String tableName;
   private final Authorizations auths;
+  private final String trigramTable;
+  private final RowFormat format;
   public static final Text DIR_COLF = new Text("dir");
   public static final Text FORWARD_PREFIX = new Text("f");
   public static final Text REVERSE_PREFIX = new Text("r");
   public static final Text INDEX_COLF = new Text("i");
   public static final Text COUNTS_COLQ = new Text("counts");
 
-  public QueryUtil(AccumuloClient client, Opts opts) {
+  public QueryUtil(AccumuloClient client, Opts opts)
+      throws AccumuloException, TableNotFoundException {
     this.client = client;
     this.tableName = opts.getTableName();
     this.auths = opts.auths;
+    this.trigramTable = opts.trigramTable;
+    this.format = RowFormat.forTable(client, tableName);
   }
 
   /**
@@ -79,10 +112,19 @@ public class QueryUtil {
    */
   public static Text getRow(String path) {
     Text row = new Text(String.format("%03d", getDepth(path)));
-    row.append(path.getBytes(), 0, path.length());
+    byte[] bytes = path.getBytes(UTF_8);
+    row.append(bytes, 0, bytes.length);
     return row;
   }
 
+  // the offset of the name in the UTF-8 bytes of a path, after the last slash
+  private static int nameOffset(byte[] path) {
+    for (int i = path.length - 1; i >= 0; i--)
+      if (path[i] == '/')
+        return i + 1;
+    return 0;
+  }
+
   /**
    * Given a path, construct an accumulo row prepended with the {@link #FORWARD_PREFIX} for the
    * index table.
@@ -92,11 +134,12 @@ public class QueryUtil {
    * @return the accumulo row associated with this path
    */
   public static Text getForwardIndex(String path) {
-    String part = path.substring(path.lastIndexOf("/") + 1);
-    if (part.length() == 0)
+    byte[] bytes = path.getBytes(UTF_8);
+    int start = nameOffset(bytes);
+    if (start == bytes.length)
       return null;
     Text row = new Text(FORWARD_PREFIX);
-    row.append(part.getBytes(), 0, part.length());
+    row.append(bytes, start, bytes.length - start);
     return row;
   }
 
@@ -109,16 +152,16 @@ public class QueryUtil {
    * @return the accumulo row associated with this path
    */
   public static Text getReverseIndex(String path) {
-    String part = path.substring(path.lastIndexOf("/") + 1);
-    if (part.length() == 0)
+    byte[] bytes = path.getBytes(UTF_8);
+    int start = nameOffset(bytes);
+    if (start == bytes.length)
       return null;
-    byte[] rev = new byte[part.length()];
-    int i = part.length() - 1;
-    for (byte b : part.getBytes())
-      rev[i--] = b;
-    Text row = new Text(REVERSE_PREFIX);
-    row.append(rev, 0, rev.length);
-    return row;
+    // the prefix and the name reversed in place, in one array
+    byte[] row = new byte[1 + bytes.length - start];
+    row[0] = REVERSE_PREFIX.getBytes()[0];
+    for (int i = bytes.length - 1, j = 1; i >= start; i--, j++)
+      row[j] = bytes[i];
+    return new Text(row);
   }
 
   /**
@@ -143,17 +186,95 @@ public class QueryUtil {
     if (path.endsWith("/"))
       path = path.substring(0, path.length() - 1);
     Scanner scanner = client.createScanner(tableName, auths);
-    scanner.setRange(new Range(getRow(path)));
+    scanner.setRange(new Range(format.getRow(path)));
     Map<String,String> data = new TreeMap<>();
     for (Entry<Key,Value> e : scanner) {
       String type = getType(e.getKey().getColumnFamily());
-      data.put("fullname", e.getKey().getRow().toString().substring(3));
+      data.put("fullname", format.getPath(e.getKey().getRow(), getParent(path)));
       data.put(type + e.getKey().getColumnQualifier().toString() + ":"
           + e.getKey().getColumnVisibility().toString(), new String(e.getValue().get()));
     }
     return data;
   }
 
+  /**
+   * Looks up the stat information of many paths at once, with one batch scan over all of their
+   * rows, and passes the information of each path to a consumer as soon as its row is read. Each
+   * row is read whole on the tablet servers, so the information of a path is complete when it is
+   * passed on. Paths are passed on in no particular order, and paths with no information are not
+   * passed on.
+   *
+   * @param paths
+   *          the full paths of files or directories
+   * @param numThreads
+   *          the number of threads used to query the tablet servers
+   * @param consumer
+   *          receives the full path and the information of each path found, in the form
+   *          {@link #getData(String)} returns, from one thread at a time
+   */
+  public void getData(Collection<String> paths, int numThreads,
+      BiConsumer<String,Map<String,String>> consumer) throws TableNotFoundException, IOException {
+    if (paths.isEmpty())
+      return;
+    // compact rows do not hold the whole path, so each row is mapped back to its path
+    Map<Text,String> rowPaths = new HashMap<>();
+    List<Range> ranges = new ArrayList<>(paths.size());
+    for (String path : paths) {
+      if (path.endsWith("/"))
+        path = path.substring(0, path.length() - 1);
+      Text row = format.getRow(path);
+      rowPaths.put(row, format.getPath(row, getParent(path)));
+      ranges.add(new Range(row));
+    }
+    Map<Text,String> visibilities = new HashMap<>();
+    try (BatchScanner scanner = client.createBatchScanner(tableName, auths, numThreads)) {
+      scanner.setRanges(ranges);
+      scanner.addScanIterator(new IteratorSetting(50, "wholeRow", WholeRowIterator.class));
+      for (Entry<Key,Value> row : scanner) {
+        String path = rowPaths.get(row.getKey().getRow());
+        consumer.accept(path, decodeData(row.getKey(), row.getValue(), path, visibilities));
+      }
+    }
+  }
+
+  /**
+   * Looks up the stat information of many paths at once. See
+   * {@link #getData(Collection, int, BiConsumer)}.
+   *
+   * @return the information of each path found, by its full path
+   */
+  public Map<String,Map<String,String>> getData(Collection<String> paths, int numThreads)
+      throws TableNotFoundException, IOException {
+    Map<String,Map<String,String>> data = new TreeMap<>();
+    getData(paths, numThreads, data::put);
+    return data;
+  }
+
+  /**
+   * Converts a row encoded by the {@link WholeRowIterator} to the information of its path.
+   */
+  static Map<String,String> decodeData(Key key, Value value, String path,
+      Map<Text,String> visibilities) throws IOException {
+    Map<String,String> data = new TreeMap<>();
+    data.put("fullname", path);
+    for (Entry<Key,Value> e : WholeRowIterator.decodeRow(key, value).entrySet())
+      addData(data, e, visibilities);
+    return data;
+  }
+
+  // the parent directory of a path, which is "" for the root directory and its children
+  private static String getParent(String path) {
+    int slashIndex = path.lastIndexOf('/');
+    return slashIndex < 0 ? "" : path.substring(0, slashIndex);
+  }
+
+  private static void addData(Map<String,String> data, Entry<Key,Value> e,
+      Map<Text,String> visibilities) {
+    String vis = visibilities.computeIfAbsent(e.getKey().getColumnVisibility(), Text::toString);
+    data.put(getType(e.getKey().getColumnFamily()) + e.getKey().getColumnQualifier().toString()
+        + ":" + vis, new String(e.getValue().get()));
+  }
+
   /**
    * Uses the directory table to list the contents of a directory.
    *
@@ -161,23 +282,180 @@ public class QueryUtil {
    *          the full path of a directory
    */
   public Map<String,Map<String,String>> getDirList(String path) throws TableNotFoundException {
+    Map<String,Map<String,String>> fim = new TreeMap<>();
+    try (DirListIterator entries = streamDirList(path, null, null)) {
+      while (entries.hasNext()) {
+        Entry<String,Map<String,String>> entry = entries.next();
+        fim.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return fim;
+  }
+
+  /**
+   * Lists the contents of a directory one entry at a time, in name order, reading them from the
+   * directory table as they are needed instead of all at once.
+   *
+   * @param path
+   *          the full path of a directory
+   * @param startAfter
+   *          the name of the entry to resume listing after, such as the token of a previous
+   *          {@link DirPage}, or null to start at the beginning
+   * @param columns
+   *          the column qualifiers to read, such as "length" or "lastmod", or null to read all of
+   *          them; other columns are filtered out on the tablet servers
+   * @return the name of each entry with its data, in the form {@link #getData(String)} returns,
+   *         from an iterator the caller must close if it does not read it to the end
+   */
+  public DirListIterator streamDirList(String path, String startAfter, Collection<String> columns)
+      throws TableNotFoundException {
+    return streamDirList(path, startAfter, columns, 0);
+  }
+
+  private DirListIterator streamDirList(String path, String startAfter,
+      Collection<String> columns, int pageSize) throws TableNotFoundException {
     if (!path.endsWith("/"))
       path = path + "/";
-    Map<String,Map<String,String>> fim = new TreeMap<>();
+    String dir = path.substring(0, path.length() - 1);
+    Range range = Range.prefix(format.getChildPrefix(path));
+    if (startAfter != null) {
+      // a name with a slash is not in the directory, and nothing is listed after it
+      if (startAfter.contains("/"))
+        return new DirListIterator(null, Iterators.peekingIterator(Collections.emptyIterator()),
+            format, dir);
+      range = new Range(new Key(format.getRow(path + startAfter)).followingKey(PartialKey.ROW),
+          true, range.getEndKey(), range.isEndKeyInclusive());
+    }
     Scanner scanner = client.createScanner(tableName, auths);
-    scanner.setRange(Range.prefix(getRow(path)));
-    for (Entry<Key,Value> e : scanner) {
-      String name = e.getKey().getRow().toString();
-      name = name.substring(name.lastIndexOf("/") + 1);
-      String type = getType(e.getKey().getColumnFamily());
-      if (!fim.containsKey(name)) {
-        fim.put(name, new TreeMap<>());
-        fim.get(name).put("fullname", e.getKey().getRow().toString().substring(3));
+    scanner.setRange(range);
+    if (pageSize > 0) {
+      // each entry is a handful of columns, times the versions of a file, and one more row is read
+      // to tell whether there is another page
+      scanner.setBatchSize((int) Math.min(Integer.MAX_VALUE, (pageSize + 1) * 8L));
+      IteratorSetting limit = new IteratorSetting(60, "rowLimit", RowLimitIterator.class);
+      RowLimitIterator.setLimit(limit, pageSize + 1);
+      scanner.addScanIterator(limit);
+    }
+    if (columns != null) {
+      StringJoiner regex = new StringJoiner("|");
+      for (String column : columns)
+        regex.add(Pattern.quote(column));
+      IteratorSetting filter = new IteratorSetting(50, "columns", RegExFilter.class);
+      RegExFilter.setRegexs(filter, null, null, regex.toString(), null, false);
+      scanner.addScanIterator(filter);
+    }
+    return new DirListIterator(scanner, Iterators.peekingIterator(scanner.iterator()), format,
+        dir);
+  }
+
+  /**
+   * Groups the entries of each row of a directory listing. The scanner it reads from is closed once
+   * the last entry has been read, or when it is closed.
+   */
+  public static class DirListIterator
+      implements Iterator<Entry<String,Map<String,String>>>, AutoCloseable {
+    private final ScannerBase scanner;
+    private final PeekingIterator<Entry<Key,Value>> entries;
+    private final RowFormat format;
+    private final String dir;
+    // the few visibilities of a table are converted to strings once
+    private final Map<Text,String> visibilities = new HashMap<>();
+    private boolean closed = false;
+
+    DirListIterator(ScannerBase scanner, PeekingIterator<Entry<Key,Value>> entries,
+        RowFormat format, String dir) {
+      this.scanner = scanner;
+      this.entries = entries;
+      this.format = format;
+      this.dir = dir;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (closed)
+        return false;
+      if (entries.hasNext())
+        return true;
+      close();
+      return false;
+    }
+
+    @Override
+    public void close() {
+      if (!closed && scanner != null)
+        scanner.close();
+      closed = true;
+    }
+
+    @Override
+    public Entry<String,Map<String,String>> next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      Text row = entries.peek().getKey().getRow();
+      String fullName = format.getPath(row, dir);
+      Map<String,String> data = new TreeMap<>();
+      data.put("fullname", fullName);
+      while (entries.hasNext() && entries.peek().getKey().compareRow(row) == 0) {
+        addData(data, entries.next(), visibilities);
       }
-      fim.get(name).put(type + e.getKey().getColumnQualifier().toString() + ":"
-          + e.getKey().getColumnVisibility().toString(), new String(e.getValue().get()));
+      return new SimpleImmutableEntry<>(fullName.substring(fullName.lastIndexOf("/") + 1), data);
+    }
+  }
+
+  /**
+   * One page of a directory listing.
+   */
+  public static class DirPage {
+    private final Map<String,Map<String,String>> entries;
+    private final String token;
+
+    DirPage(Map<String,Map<String,String>> entries, String token) {
+      this.entries = entries;
+      this.token = token;
+    }
+
+    /**
+     * @return the name of each entry on the page with its data, in name order
+     */
+    public Map<String,Map<String,String>> getEntries() {
+      return entries;
+    }
+
+    /**
+     * @return the token to pass to get the next page, or null if this is the last page
+     */
+    public String getToken() {
+      return token;
+    }
+  }
+
+  /**
+   * Lists at most a page of the contents of a directory. A {@link RowLimitIterator} stops the scan
+   * on the tablet servers once the rows of the page have been read.
+   *
+   * @param path
+   *          the full path of a directory
+   * @param token
+   *          the token of the previous page, or null for the first page
+   * @param pageSize
+   *          the most entries to list
+   * @param columns
+   *          the column qualifiers to read, or null to read all of them
+   */
+  public DirPage getDirListPage(String path, String token, int pageSize,
+      Collection<String> columns) throws TableNotFoundException {
+    if (pageSize < 1)
+      throw new IllegalArgumentException("pageSize must be at least 1 " + pageSize);
+    Map<String,Map<String,String>> page = new LinkedHashMap<>();
+    String last = null;
+    try (DirListIterator entries = streamDirList(path, token, columns, pageSize)) {
+      while (page.size() < pageSize && entries.hasNext()) {
+        Entry<String,Map<String,String>> entry = entries.next();
+        page.put(entry.getKey(), entry.getValue());
+        last = entry.getKey();
+      }
+      return new DirPage(page, entries.hasNext() ? last : null);
     }
-    return fim;
   }
 
   /**
@@ -260,11 +538,188 @@ public class QueryUtil {
     return scanner;
   }
 
+  /**
+   * Uses the trigram index table written by {@link Ingest} to find files or directories with a name
+   * matching a pattern with any number of wildcards, '*' for any characters and '?' for one. The
+   * paths with every trigram of the pattern are found by intersecting the trigram entries in each
+   * partition of the index, and then filtered with a regular expression for the pattern. Patterns
+   * with no trigrams, such as "*a*b", are matched against every name in the index table.
+   *
+   * @param exp
+   *          the name of a file or directory to search for, with any number of wildcards
+   * @return entries whose column qualifier is the directory table row of each path found, from a
+   *         scanner the caller must close
+   */
+  public ScannerBase wildCardSearch(String exp) throws Exception {
+    if (exp.contains("/"))
+      throw new Exception("this method only works with unqualified names");
+    if (trigramTable == null)
+      throw new Exception("no trigram index table given");
+
+    IteratorSetting regex = new IteratorSetting(50, "regex", RegExFilter.class);
+    RegExFilter.setRegexs(regex, null, null, TrigramIndex.toRowRegex(exp), null, false);
+
+    Set<Text> trigrams = TrigramIndex.getPatternTrigrams(exp);
+    if (trigrams.isEmpty()) {
+      System.out.println("executing full wildcard search for " + exp);
+      Scanner scanner = client.createScanner(tableName, auths);
+      scanner.setRange(Range.prefix(FORWARD_PREFIX));
+      scanner.addScanIterator(regex);
+      return scanner;
+    }
+
+    System.out.println("executing trigram search for " + exp + " with " + trigrams.size()
+        + " trigrams");
+    BatchScanner scanner = client.createBatchScanner(trigramTable, auths);
+    IteratorSetting ii = new IteratorSetting(30, "ii", IntersectingIterator.class);
+    IntersectingIterator.setColumnFamilies(ii, trigrams.toArray(new Text[0]));
+    scanner.addScanIterator(ii);
+    scanner.addScanIterator(regex);
+    scanner.setRanges(Collections.singleton(new Range()));
+    return scanner;
+  }
+
+  /**
+   * Totals over the files under a directory, read from the summaries of the directory table's
+   * files.
+   */
+  public static class SubtreeSummary {
+    private final long files;
+    private final long bytes;
+    private final long oldest;
+    private final long newest;
+    private final Map<String,Long> extensions;
+    private final boolean exact;
+
+    SubtreeSummary(long files, long bytes, long oldest, long newest,
+        Map<String,Long> extensions, boolean exact) {
+      this.files = files;
+      this.bytes = bytes;
+      this.oldest = oldest;
+      this.newest = newest;
+      this.extensions = extensions;
+      this.exact = exact;
+    }
+
+    /**
+     * Reads the totals of a directory from the statistics of a {@link DirSummarizer}.
+     */
+    static SubtreeSummary fromStatistics(String dir, Map<String,Long> stats, boolean exact) {
+      Map<String,Long> extensions = new TreeMap<>();
+      String suffix = '\0' + dir;
+      for (Entry<String,Long> stat : stats.entrySet()) {
+        String name = stat.getKey();
+        if (name.startsWith(DirSummarizer.EXTENSION) && name.endsWith(suffix))
+          extensions.put(name.substring(DirSummarizer.EXTENSION.length(),
+              name.length() - suffix.length()), stat.getValue());
+      }
+      return new SubtreeSummary(
+          stats.getOrDefault(DirSummarizer.statName(DirSummarizer.FILES, dir), 0L),
+          stats.getOrDefault(DirSummarizer.statName(DirSummarizer.BYTES, dir), 0L),
+          stats.getOrDefault(DirSummarizer.statName(DirSummarizer.OLDEST, dir), -1L),
+          stats.getOrDefault(DirSummarizer.statName(DirSummarizer.NEWEST, dir), -1L), extensions,
+          exact && !stats.containsKey(DirSummarizer.DROPPED));
+    }
+
+    /**
+     * @return the number of files under the directory, at any depth
+     */
+    public long getFiles() {
+      return files;
+    }
+
+    /**
+     * @return the total length of the files under the directory
+     */
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return the oldest last modified time of the files under the directory, or -1 if it has none
+     */
+    public long getOldest() {
+      return oldest;
+    }
+
+    /**
+     * @return the newest last modified time of the files under the directory, or -1 if it has none
+     */
+    public long getNewest() {
+      return newest;
+    }
+
+    /**
+     * @return the number of files under the directory with each extension, where "" is the
+     *         extension of names without one
+     */
+    public Map<String,Long> getExtensions() {
+      return extensions;
+    }
+
+    /**
+     * @return false if some of the table's files were not summarized, or had too many statistics
+     *         to keep, so that the totals are too low. Entries not yet flushed to a file are
+     *         missing from the totals either way.
+     */
+    public boolean isExact() {
+      return exact;
+    }
+
+    @Override
+    public String toString() {
+      return "files=" + files + " bytes=" + bytes + " oldest=" + oldest + " newest=" + newest
+          + " extensions=" + extensions + (exact ? "" : " (incomplete)");
+    }
+  }
+
+  /**
+   * Totals the files under a directory from the summaries Accumulo keeps with the directory
+   * table's files, which {@link DirSummarizer} computes as they are written, without reading any
+   * of the table's entries. Summaries cover all entries regardless of their visibility, and until
+   * the table is compacted may still count files that were replaced or deleted. Entries that have
+   * not been flushed from the tablet servers' memory are not counted, even when the totals are
+   * exact.
+   *
+   * @param path
+   *          the full path of a directory, no deeper than the directories the summarizer is
+   *          configured to summarize
+   * @return the totals, or null if the table is not summarized
+   */
+  public SubtreeSummary getSubtreeSummary(String path)
+      throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+    if (format != RowFormat.STANDARD)
+      throw new IllegalArgumentException(tableName + " does not hold standard rows");
+    String dir = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    for (Summary summary : client.tableOperations().summaries(tableName).retrieve()) {
+      SummarizerConfiguration config = summary.getSummarizerConfiguration();
+      if (!config.getClassName().equals(DirSummarizer.class.getName()))
+        continue;
+      if (getDepth(dir) > DirSummarizer.getDepth(config))
+        throw new IllegalArgumentException(
+            "only directories up to depth " + DirSummarizer.getDepth(config) + " are summarized");
+      return SubtreeSummary.fromStatistics(dir, summary.getStatistics(),
+          summary.getFileStatistics().getInaccurate() == 0);
+    }
+    return null;
+  }
+
   public static class Opts extends ClientOnRequiredTable {
     @Parameter(names = "--path", description = "the directory to list")
     String path = "/";
     @Parameter(names = "--search", description = "find a file or directory with the given name")
     boolean search = false;
+    @Parameter(names = "--trigramTable",
+        description = "search the trigram index in this table, allowing any number of wildcards")
+    String trigramTable = null;
+    @Parameter(names = "--pageSize",
+        description = "list at most this many entries of the directory, 0 lists them all")
+    int pageSize = 0;
+    @Parameter(names = "--token", description = "the token printed with the previous page")
+    String token = null;
+    @Parameter(names = "--summary",
+        description = "print totals over the files under the directory, read from summaries")
+    boolean summary = false;
   }
 
   /**
@@ -277,13 +732,32 @@ public class QueryUtil {
     try (AccumuloClient client = opts.createAccumuloClient()) {
       QueryUtil q = new QueryUtil(client, opts);
       if (opts.search) {
-        for (Entry<Key,Value> e : q.singleWildCardSearch(opts.path)) {
-          System.out.println(e.getKey().getColumnQualifier());
+        if (opts.trigramTable == null) {
+          for (Entry<Key,Value> e : q.singleWildCardSearch(opts.path)) {
+            System.out.println(e.getKey().getColumnQualifier());
+          }
+        } else {
+          try (ScannerBase results = q.wildCardSearch(opts.path)) {
+            for (Entry<Key,Value> e : results) {
+              System.out.println(e.getKey().getColumnQualifier());
+            }
+          }
         }
-      } else {
-        for (Entry<String,Map<String,String>> e : q.getDirList(opts.path).entrySet()) {
+      } else if (opts.summary) {
+        System.out.println(q.getSubtreeSummary(opts.path));
+      } else if (opts.pageSize > 0) {
+        DirPage page = q.getDirListPage(opts.path, opts.token, opts.pageSize, null);
+        for (Entry<String,Map<String,String>> e : page.getEntries().entrySet()) {
           System.out.println(e);
         }
+        if (page.getToken() != null)
+          System.out.println("next page: --token " + page.getToken());
+      } else {
+        try (DirListIterator entries = q.streamDirList(opts.path, opts.token, null)) {
+          while (entries.hasNext()) {
+            System.out.println(entries.next());
+          }
+        }
       }
     }
   }
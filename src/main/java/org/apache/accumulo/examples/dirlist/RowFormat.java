@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.hadoop.io.Text;
+
+/**
+ * The formats of the rows of the directory table. The format of a table is kept in the
+ * {@value #PROPERTY} table property, so that every program reading the table uses the format it was
+ * written with.
+ * <p>
+ * {@link #STANDARD} rows are the depth of a path as three digits followed by the path, as
+ * {@link QueryUtil#getRow(String)} builds them, and the index tables refer to a path by its row.
+ * <p>
+ * {@link #COMPACT} rows are the depth of a path in one or two bytes, then a sixteen byte id of its
+ * parent directory, then its name. The id of a directory is the MD5 hash of the id of its parent
+ * and its name, with all zeros for the root directory, so it is computed from a path or from the
+ * row of the directory alone, without a dictionary. Two directories with the same id would have
+ * their children listed together, so the whole 128 bit hash is kept, where a collision among even
+ * billions of directories is far less likely than a hardware error.
+ * <p>
+ * Each row holds only one name instead of a whole path, and the children of a directory still
+ * share a prefix, but the rows under a directory at one depth no longer do, and a path can only be
+ * read back from its row along with the path of its parent. The index tables refer to a path by the
+ * path itself.
+ */
+public enum RowFormat {
+
+  STANDARD {
+    @Override
+    public Text getRow(String path) {
+      return QueryUtil.getRow(path);
+    }
+
+    @Override
+    public Text getChildPrefix(String dir) {
+      return QueryUtil.getRow(dir.endsWith("/") ? dir : dir + "/");
+    }
+
+    @Override
+    public Text getDepthPrefix(int depth) {
+      return new Text(String.format("%03d", depth));
+    }
+
+    @Override
+    public String getName(Text row) {
+      String path = getPath(row, null);
+      return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public String getPath(Text row, String parent) {
+      return row.toString().substring(3);
+    }
+
+    @Override
+    public String getKey(Text row) {
+      return getPath(row, null);
+    }
+
+    @Override
+    public String getParentKey(Text row) {
+      String path = getPath(row, null);
+      return path.substring(0, path.lastIndexOf('/'));
+    }
+
+    @Override
+    public Text getIndexRef(String path) {
+      return QueryUtil.getRow(path);
+    }
+  },
+
+  COMPACT {
+    @Override
+    public Text getRow(String path) {
+      List<String> names = getNames(path);
+      Text row = new Text(depthBytes(names.size()));
+      if (names.isEmpty())
+        return row;
+      row.append(getId(names, names.size() - 1), 0, ID_LENGTH);
+      byte[] name = names.get(names.size() - 1).getBytes(UTF_8);
+      row.append(name, 0, name.length);
+      return row;
+    }
+
+    @Override
+    public Text getChildPrefix(String dir) {
+      List<String> names = getNames(dir);
+      Text prefix = new Text(depthBytes(names.size() + 1));
+      prefix.append(getId(names, names.size()), 0, ID_LENGTH);
+      return prefix;
+    }
+
+    @Override
+    public Text getDepthPrefix(int depth) {
+      return new Text(depthBytes(depth));
+    }
+
+    @Override
+    public String getName(Text row) {
+      int start = nameOffset(row);
+      return start > row.getLength() ? ""
+          : new String(row.getBytes(), start, row.getLength() - start, UTF_8);
+    }
+
+    @Override
+    public String getPath(Text row, String parent) {
+      if (readDepth(row) == 0)
+        return "";
+      return (parent.equals("/") ? "" : parent) + "/" + getName(row);
+    }
+
+    @Override
+    public String getKey(Text row) {
+      if (readDepth(row) == 0)
+        return new String(ROOT_ID, ISO_8859_1);
+      int start = nameOffset(row);
+      byte[] id = childId(Arrays.copyOfRange(row.getBytes(), start - ID_LENGTH, start),
+          row.getBytes(), start, row.getLength() - start);
+      return new String(id, ISO_8859_1);
+    }
+
+    @Override
+    public String getParentKey(Text row) {
+      int start = nameOffset(row);
+      return new String(row.getBytes(), start - ID_LENGTH, ID_LENGTH, ISO_8859_1);
+    }
+
+    @Override
+    public Text getIndexRef(String path) {
+      return new Text(path);
+    }
+  };
+
+  /**
+   * The table property holding the name of the row format of a directory table.
+   */
+  public static final String PROPERTY = "table.custom.dirlist.rowFormat";
+
+  private static final int ID_LENGTH = 16;
+  private static final byte[] ROOT_ID = new byte[ID_LENGTH];
+  private static final int MAX_CACHED_IDS = 100000;
+  // the ids of recently used directories, by path
+  private static final Map<String,byte[]> ids = new ConcurrentHashMap<>();
+
+  /**
+   * @return the row of a path, where "" is the root directory
+   */
+  public abstract Text getRow(String path);
+
+  /**
+   * @return the prefix shared by the rows of the children of a directory
+   */
+  public abstract Text getChildPrefix(String dir);
+
+  /**
+   * @return the prefix shared by the rows of all paths at a depth
+   */
+  public abstract Text getDepthPrefix(int depth);
+
+  /**
+   * @return the name of the path of a row, the last part of its path
+   */
+  public abstract String getName(Text row);
+
+  /**
+   * @param parent
+   *          the path of the parent directory of the row's path, which only compact rows need
+   * @return the full path of a row
+   */
+  public abstract String getPath(Text row, String parent);
+
+  /**
+   * @return a string identifying the path of a row, which is the parent key of its children's rows
+   */
+  public abstract String getKey(Text row);
+
+  /**
+   * @return the key of the parent directory of the path of a row, which must not be the root
+   */
+  public abstract String getParentKey(Text row);
+
+  /**
+   * @return the column qualifier the index tables use to refer to a path
+   */
+  public abstract Text getIndexRef(String path);
+
+  /**
+   * @return the format of a directory table, which is standard unless the table says otherwise
+   */
+  public static RowFormat forTable(AccumuloClient client, String tableName)
+      throws AccumuloException, TableNotFoundException {
+    String format = client.tableOperations().getConfiguration(tableName).get(PROPERTY);
+    return format == null ? STANDARD : valueOf(format);
+  }
+
+  /**
+   * Sets the format of a directory table, which should be done before anything is written to it.
+   */
+  public static void setForTable(AccumuloClient client, String tableName, RowFormat format)
+      throws AccumuloException, AccumuloSecurityException {
+    client.tableOperations().setProperty(tableName, PROPERTY, format.name());
+  }
+
+  // depths below 128 take one byte, and larger depths two bytes that sort after all of those
+  static byte[] depthBytes(int depth) {
+    if (depth < 0x80)
+      return new byte[] {(byte) depth};
+    if (depth < 0x4000)
+      return new byte[] {(byte) (0x80 | (depth >>> 8)), (byte) depth};
+    throw new IllegalArgumentException("depth too large " + depth);
+  }
+
+  static int readDepth(Text row) {
+    byte[] bytes = row.getBytes();
+    if ((bytes[0] & 0x80) == 0)
+      return bytes[0];
+    return ((bytes[0] & 0x3f) << 8) | (bytes[1] & 0xff);
+  }
+
+  private static int nameOffset(Text row) {
+    return ((row.getBytes()[0] & 0x80) == 0 ? 1 : 2) + ID_LENGTH;
+  }
+
+  private static List<String> getNames(String path) {
+    List<String> names = new ArrayList<>();
+    for (String name : path.split("/"))
+      if (!name.isEmpty())
+        names.add(name);
+    return names;
+  }
+
+  // the id of the directory made of the first count names of a path
+  private static byte[] getId(List<String> names, int count) {
+    if (count == 0)
+      return ROOT_ID;
+    String dir = "/" + String.join("/", names.subList(0, count));
+    byte[] id = ids.get(dir);
+    if (id == null) {
+      byte[] name = names.get(count - 1).getBytes(UTF_8);
+      id = childId(getId(names, count - 1), name, 0, name.length);
+      if (ids.size() >= MAX_CACHED_IDS)
+        ids.clear();
+      ids.put(dir, id);
+    }
+    return id;
+  }
+
+  static byte[] childId(byte[] parentId, byte[] name, int offset, int length) {
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      md5.update(parentId);
+      md5.update(name, offset, length);
+      return md5.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.WrappingIterator;
+
+/**
+ * Returns the entries of at most a given number of rows after each seek, so a tablet server stops
+ * reading once a page of a directory listing has been found. The limit starts again at each seek,
+ * which includes the seek a scanner makes to continue after a full batch, so it bounds what one
+ * batch reads rather than a whole scan.
+ */
+public class RowLimitIterator extends WrappingIterator {
+
+  public static final String LIMIT_OPT = "limit";
+
+  private int limit;
+  private int rows;
+  private ByteSequence currentRow;
+  private boolean done;
+
+  /**
+   * @param limit
+   *          the most rows to return after each seek
+   */
+  public static void setLimit(IteratorSetting setting, int limit) {
+    if (limit < 1)
+      throw new IllegalArgumentException("limit must be at least 1 " + limit);
+    setting.addOption(LIMIT_OPT, Integer.toString(limit));
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options,
+      IteratorEnvironment env) throws IOException {
+    super.init(source, options, env);
+    limit = Integer.parseInt(options.get(LIMIT_OPT));
+  }
+
+  @Override
+  public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+    RowLimitIterator copy = new RowLimitIterator();
+    copy.setSource(getSource().deepCopy(env));
+    copy.limit = limit;
+    return copy;
+  }
+
+  @Override
+  public boolean hasTop() {
+    return !done && super.hasTop();
+  }
+
+  @Override
+  public void next() throws IOException {
+    super.next();
+    countRow();
+  }
+
+  @Override
+  public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive)
+      throws IOException {
+    super.seek(range, columnFamilies, inclusive);
+    rows = 0;
+    currentRow = null;
+    done = false;
+    countRow();
+  }
+
+  private void countRow() {
+    if (!super.hasTop())
+      return;
+    ByteSequence row = getSource().getTopKey().getRowData();
+    if (!row.equals(currentRow)) {
+      if (++rows > limit)
+        done = true;
+      else
+        currentRow = new ArrayByteSequence(row.toArray());
+    }
+  }
+}
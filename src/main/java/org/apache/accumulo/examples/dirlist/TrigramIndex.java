@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Builds the entries of a trigram index over file and directory names, which finds names matching
+ * a pattern with any number of wildcards without scanning every name.
+ * <p>
+ * The index is partitioned like the shard example: the row is a partition id, the column family is
+ * a trigram of the name, and the column qualifier refers to the path the way the other index table
+ * does, by its directory table row or, for {@link RowFormat#COMPACT} rows, by the path itself. All
+ * of the trigrams of a path are in one partition, so an intersecting iterator can find the paths
+ * with all of the trigrams of a pattern in each partition. The partition is computed from the path,
+ * so the entries of a path can be deleted without reading them.
+ * <p>
+ * Trigrams are taken from the UTF-8 bytes of the name, with a null byte added at its beginning and
+ * end so that patterns anchored at either end of a name, or names shorter than three bytes, still
+ * have trigrams.
+ */
+public class TrigramIndex {
+
+  public static final int NUM_PARTITIONS = 64;
+
+  private static final byte BOUNDARY = 0;
+
+  private TrigramIndex() {}
+
+  static Text getPartition(String path) {
+    return new Text(String.format("%08x", Math.abs(path.hashCode() % NUM_PARTITIONS)));
+  }
+
+  private static String getName(String path) {
+    return path.substring(path.lastIndexOf("/") + 1);
+  }
+
+  private static void addTrigrams(byte[] bytes, Set<Text> trigrams) {
+    for (int i = 0; i + 3 <= bytes.length; i++) {
+      Text trigram = new Text();
+      trigram.set(bytes, i, 3);
+      trigrams.add(trigram);
+    }
+  }
+
+  private static byte[] pad(String part, boolean start, boolean end) {
+    byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+    byte[] padded = new byte[bytes.length + (start ? 1 : 0) + (end ? 1 : 0)];
+    if (start)
+      padded[0] = BOUNDARY;
+    System.arraycopy(bytes, 0, padded, start ? 1 : 0, bytes.length);
+    if (end)
+      padded[padded.length - 1] = BOUNDARY;
+    return padded;
+  }
+
+  /**
+   * @return the trigrams of the name of a path
+   */
+  static Set<Text> getTrigrams(String path) {
+    Set<Text> trigrams = new LinkedHashSet<>();
+    addTrigrams(pad(getName(path), true, true), trigrams);
+    return trigrams;
+  }
+
+  /**
+   * @return the trigrams every name matching a pattern has, which may be none
+   */
+  static Set<Text> getPatternTrigrams(String pattern) {
+    Set<Text> trigrams = new LinkedHashSet<>();
+    int start = 0;
+    for (int i = 0; i <= pattern.length(); i++) {
+      if (i == pattern.length() || isWildcard(pattern.charAt(i))) {
+        if (i > start)
+          addTrigrams(pad(pattern.substring(start, i), start == 0, i == pattern.length()),
+              trigrams);
+        start = i + 1;
+      }
+    }
+    return trigrams;
+  }
+
+  private static boolean isWildcard(char c) {
+    return c == '*' || c == '?';
+  }
+
+  /**
+   * Converts a pattern, where '*' matches any characters and '?' matches one character, to a
+   * regular expression for the directory table rows of the paths with a matching name.
+   */
+  static String toRowRegex(String pattern) {
+    StringBuilder regex = new StringBuilder(".*/");
+    int start = 0;
+    for (int i = 0; i <= pattern.length(); i++) {
+      if (i == pattern.length() || isWildcard(pattern.charAt(i))) {
+        if (i > start)
+          regex.append(Pattern.quote(pattern.substring(start, i)));
+        if (i < pattern.length())
+          regex.append(pattern.charAt(i) == '*' ? "[^/]*" : "[^/]");
+        start = i + 1;
+      }
+    }
+    return regex.toString();
+  }
+
+  /**
+   * @return the index entries of a path, or null if it has no name
+   */
+  public static Mutation buildMutation(RowFormat format, ColumnVisibility cv, String path) {
+    if (getName(path).isEmpty())
+      return null;
+    Text row = format.getIndexRef(path);
+    Mutation m = new Mutation(getPartition(path));
+    for (Text trigram : getTrigrams(path))
+      m.put(trigram, row, cv, Ingest.nullValue);
+    return m;
+  }
+
+  /**
+   * @return deletes for the index entries of a path with each of the given visibilities, or null
+   *         if it has no name
+   */
+  public static Mutation buildDeleteMutation(RowFormat format, String path,
+      Collection<Text> visibilities) {
+    if (getName(path).isEmpty())
+      return null;
+    Text row = format.getIndexRef(path);
+    Mutation m = new Mutation(getPartition(path));
+    List<ColumnVisibility> cvs = new ArrayList<>(visibilities.size());
+    for (Text vis : visibilities)
+      cvs.add(new ColumnVisibility(vis));
+    for (Text trigram : getTrigrams(path))
+      for (ColumnVisibility cv : cvs)
+        m.putDelete(trigram, row, cv);
+    return m;
+  }
+}
@@ -18,7 +18,8 @@ package org.apache.accumulo.examples.dirlist;
 
 import java.awt.BorderLayout;
 import java.io.IOException;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -32,8 +33,6 @@ import javax.swing.event.TreeExpansionListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
-import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 
 import org.apache.accumulo.core.client.AccumuloClient;
@@ -45,17 +44,20 @@ import org.slf4j.LoggerFactory;
 import com.beust.jcommander.Parameter;
 
 /**
- * Provides a GUI for browsing the file system information stored in Accumulo.
+ * Provides a GUI for browsing the file system information stored in Accumulo. Directories are
+ * listed in the background by a {@link DirTreeModel}, so the GUI stays responsive while large
+ * directories are read.
  */
 @SuppressWarnings("serial")
 public class Viewer extends JFrame implements TreeSelectionListener, TreeExpansionListener {
   private static final Logger log = LoggerFactory.getLogger(Viewer.class);
 
   JTree tree;
-  DefaultTreeModel treeModel;
+  DirTreeModel treeModel;
   QueryUtil q;
   FileDataQuery fdq;
   String topPath;
+  int numThreads;
   Map<String,DefaultMutableTreeNode> nodeNameMap;
   JTextArea text;
   JTextArea data;
@@ -90,6 +92,14 @@ public class Viewer extends JFrame implements TreeSelectionListener, TreeExpansi
       return getName();
     }
 
+    public boolean isDirectory() {
+      for (String k : data.keySet()) {
+        if (k.startsWith("dir:"))
+          return true;
+      }
+      return false;
+    }
+
     public String getHash() {
       for (String k : data.keySet()) {
         String[] parts = k.split(":");
@@ -108,36 +118,34 @@ public class Viewer extends JFrame implements TreeSelectionListener, TreeExpansi
     q = new QueryUtil(client, opts);
     fdq = new FileDataQuery(client, opts.dataTable, opts.auths);
     this.topPath = opts.path;
+    this.numThreads = opts.threads;
   }
 
-  public void populate(DefaultMutableTreeNode node) throws TableNotFoundException {
-    String path = ((NodeInfo) node.getUserObject()).getFullName();
-    log.debug("listing " + path);
-    for (Entry<String,Map<String,String>> e : q.getDirList(path).entrySet()) {
-      log.debug("got child for " + node.getUserObject() + ": " + e.getKey());
-      node.add(new DefaultMutableTreeNode(new NodeInfo(e.getKey(), e.getValue())));
-    }
-  }
-
-  public void populateChildren(DefaultMutableTreeNode node) throws TableNotFoundException {
-    @SuppressWarnings("unchecked")
-    Enumeration<TreeNode> children = node.children();
-    while (children.hasMoreElements()) {
-      populate((DefaultMutableTreeNode) children.nextElement());
+  /**
+   * Lists a directory, from one of the threads of the tree model.
+   */
+  public List<NodeInfo> list(String path) throws TableNotFoundException {
+    List<NodeInfo> children = new ArrayList<>();
+    try (QueryUtil.DirListIterator entries = q.streamDirList(path, null, null)) {
+      while (entries.hasNext()) {
+        Entry<String,Map<String,String>> e = entries.next();
+        log.debug("got child for {}: {}", path, e.getKey());
+        children.add(new NodeInfo(e.getKey(), e.getValue()));
+      }
     }
+    return children;
   }
 
   public void init() throws TableNotFoundException {
-    DefaultMutableTreeNode root = new DefaultMutableTreeNode(
-        new NodeInfo(topPath, q.getData(topPath)));
-    populate(root);
-    populateChildren(root);
+    Map<String,String> topData = q.getData(topPath);
+    DefaultMutableTreeNode root = new DefaultMutableTreeNode(new NodeInfo(topPath, topData));
 
-    treeModel = new DefaultTreeModel(root);
+    treeModel = new DirTreeModel(root, this::list, numThreads, 1000, 2 * numThreads);
     tree = new JTree(treeModel);
     tree.addTreeExpansionListener(this);
     tree.addTreeSelectionListener(this);
-    text = new JTextArea(getText(q.getData(topPath)));
+    treeModel.load(root);
+    text = new JTextArea(getText(topData));
     data = new JTextArea("");
     JScrollPane treePane = new JScrollPane(tree);
     JScrollPane textPane = new JScrollPane(text);
@@ -166,23 +174,12 @@ public class Viewer extends JFrame implements TreeSelectionListener, TreeExpansi
 
   @Override
   public void treeExpanded(TreeExpansionEvent event) {
-    try {
-      populateChildren((DefaultMutableTreeNode) event.getPath().getLastPathComponent());
-    } catch (TableNotFoundException e) {
-      log.error("Could not find table.", e);
-    }
+    treeModel.load((DefaultMutableTreeNode) event.getPath().getLastPathComponent());
   }
 
   @Override
   public void treeCollapsed(TreeExpansionEvent event) {
-    DefaultMutableTreeNode node = (DefaultMutableTreeNode) event.getPath().getLastPathComponent();
-    @SuppressWarnings("unchecked")
-    Enumeration<TreeNode> children = node.children();
-    while (children.hasMoreElements()) {
-      DefaultMutableTreeNode child = (DefaultMutableTreeNode) children.nextElement();
-      log.debug("removing children of " + ((NodeInfo) child.getUserObject()).getFullName());
-      child.removeAllChildren();
-    }
+    treeModel.unloadChildren((DefaultMutableTreeNode) event.getPath().getLastPathComponent());
   }
 
   @Override
@@ -207,6 +204,8 @@ public class Viewer extends JFrame implements TreeSelectionListener, TreeExpansi
   static class Opts extends QueryUtil.Opts {
     @Parameter(names = "--dataTable")
     String dataTable = "dataTable";
+    @Parameter(names = "--threads", description = "number of directories to list at once")
+    int threads = 4;
   }
 
   public static void main(String[] args) throws Exception {
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.FirstEntryInRowIterator;
+import org.apache.accumulo.core.iterators.SortedKeyIterator;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Reads byte ranges of files written by {@link FileDataIngest} asynchronously. Requests may be made
+ * from any number of threads. They are queued and served in batches by a single thread, which
+ * looks up the chunks of every request in a batch with one shared {@link BatchScanner}.
+ * <p>
+ * A batch holds at most maxBatchBytes of requested data, which bounds the memory used by reads in
+ * flight. A single request larger than that is read in a batch of its own.
+ */
+public class AsyncChunkReader implements AutoCloseable {
+
+  // number of files whose chunk size is remembered
+  private static final int CHUNK_SIZE_CACHE_SIZE = 1024;
+
+  static class Request {
+    final String hash;
+    final long offset;
+    final int length;
+    final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+
+    int chunkSize;
+    int firstChunk;
+    int lastChunk;
+    ByteBuffer buf;
+    int filled;
+    // chunks received, relative to the first chunk
+    final BitSet received = new BitSet();
+    // the number of chunks in the file, once a short chunk or the end marker is seen
+    long numChunks = Long.MAX_VALUE;
+
+    Request(String hash, long offset, int length) {
+      this.hash = hash;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Sets the chunk size of the file, and the range of chunks to read for the request.
+     *
+     * @return false if the request starts past the last chunk a file can have
+     */
+    boolean setChunkSize(int chunkSize) {
+      long first = offset / chunkSize;
+      if (first >= Integer.MAX_VALUE)
+        return false;
+      this.chunkSize = chunkSize;
+      firstChunk = (int) first;
+      lastChunk = (int) Math.min((offset + length - 1) / chunkSize, Integer.MAX_VALUE - 1);
+      buf = ByteBuffer.allocate(length);
+      return true;
+    }
+  }
+
+  /**
+   * Looks for chunks of a file after those of a request.
+   */
+  interface ChunkProbe {
+    boolean hasLaterChunks(Request request) throws TableNotFoundException;
+  }
+
+  private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+  private final AccumuloClient client;
+  private final String tableName;
+  private final Authorizations auths;
+  private final BatchScanner chunkScanner;
+  private final BatchScanner sizeScanner;
+  private final long maxBatchBytes;
+  private final ChunkCodec codec = new ChunkCodec(0);
+  private final Map<String,Integer> chunkSizes = new LinkedHashMap<>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Entry<String,Integer> eldest) {
+      return size() > CHUNK_SIZE_CACHE_SIZE;
+    }
+  };
+  private final Thread dispatcher;
+  private volatile boolean closed = false;
+
+  /**
+   * @param numQueryThreads
+   *          the number of threads the batch scanner uses to query tablet servers
+   * @param maxBatchBytes
+   *          the most bytes of data requested by the reads in one batch
+   */
+  public AsyncChunkReader(AccumuloClient client, String tableName, Authorizations auths,
+      int numQueryThreads, long maxBatchBytes) throws TableNotFoundException {
+    if (maxBatchBytes <= 0)
+      throw new IllegalArgumentException("max batch bytes must be positive " + maxBatchBytes);
+    this.maxBatchBytes = maxBatchBytes;
+    this.client = client;
+    this.tableName = tableName;
+    this.auths = auths;
+    chunkScanner = client.createBatchScanner(tableName, auths, numQueryThreads);
+    chunkScanner.fetchColumnFamily(FileDataIngest.CHUNK_CF);
+    // finds the chunk size of a file from the key of its first chunk
+    sizeScanner = client.createBatchScanner(tableName, auths, numQueryThreads);
+    sizeScanner.fetchColumnFamily(FileDataIngest.CHUNK_CF);
+    sizeScanner.addScanIterator(new IteratorSetting(100, FirstEntryInRowIterator.class));
+    sizeScanner.addScanIterator(new IteratorSetting(101, SortedKeyIterator.class));
+
+    dispatcher = new Thread(this::dispatch, "async chunk reader");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Reads part of a file. The returned buffer is shorter than the requested length if the file
+   * ends first, and is empty if the offset is at or past the end of the file. The future completes
+   * exceptionally with an IOException if the file does not exist or has missing chunks, including
+   * when none of the requested chunks exist but later chunks of the file do.
+   *
+   * @param hash
+   *          the hash of the file
+   * @param offset
+   *          the offset of the first byte to read
+   * @param length
+   *          the number of bytes to read
+   */
+  public CompletableFuture<ByteBuffer> read(String hash, long offset, int length) {
+    if (offset < 0 || length < 0)
+      throw new IllegalArgumentException("invalid offset " + offset + " or length " + length);
+    Request request = new Request(hash, offset, length);
+    if (length == 0) {
+      request.future.complete(ByteBuffer.allocate(0));
+      return request.future;
+    }
+    queue.add(request);
+    // the dispatcher may have already stopped and drained the queue
+    if (closed)
+      failQueued(new IllegalStateException("reader is closed"));
+    return request.future;
+  }
+
+  private void failQueued(Throwable t) {
+    Request request;
+    while ((request = queue.poll()) != null)
+      request.future.completeExceptionally(t);
+  }
+
+  private void dispatch() {
+    List<Request> batch = new ArrayList<>();
+    try {
+      while (!closed) {
+        Request first = queue.take();
+        batch.add(first);
+        long batchBytes = first.length;
+        Request next;
+        while ((next = queue.peek()) != null && batchBytes + next.length <= maxBatchBytes) {
+          batch.add(queue.poll());
+          batchBytes += next.length;
+        }
+        try {
+          readBatch(batch);
+        } catch (Exception e) {
+          for (Request request : batch)
+            request.future.completeExceptionally(e);
+        }
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // closed
+    } finally {
+      IllegalStateException closedException = new IllegalStateException("reader is closed");
+      for (Request request : batch)
+        request.future.completeExceptionally(closedException);
+      failQueued(closedException);
+    }
+  }
+
+  private void findChunkSizes(List<Request> batch) {
+    List<Range> ranges = new ArrayList<>();
+    for (Request request : batch) {
+      if (!chunkSizes.containsKey(request.hash))
+        ranges.add(Range.prefix(new Text(request.hash), FileDataIngest.CHUNK_CF));
+    }
+    if (ranges.isEmpty())
+      return;
+    sizeScanner.setRanges(ranges);
+    for (Entry<Key,Value> entry : sizeScanner) {
+      ByteSequence cq = entry.getKey().getColumnQualifierData();
+      if (cq.length() >= 8)
+        chunkSizes.put(entry.getKey().getRow().toString(),
+            FileDataIngest.bytesToInt(cq.getBackingArray(), cq.offset()));
+    }
+  }
+
+  private void readBatch(List<Request> batch) throws IOException, TableNotFoundException {
+    findChunkSizes(batch);
+
+    List<Range> ranges = new ArrayList<>();
+    Map<Text,List<Request>> requestsByRow = new HashMap<>();
+    for (Request request : batch) {
+      Integer chunkSize = chunkSizes.get(request.hash);
+      if (chunkSize == null || chunkSize <= 0) {
+        request.future.completeExceptionally(new IOException("no chunks for " + request.hash));
+        continue;
+      }
+      if (!request.setChunkSize(chunkSize)) {
+        request.future.complete(ByteBuffer.allocate(0));
+        continue;
+      }
+
+      Text row = new Text(request.hash);
+      requestsByRow.computeIfAbsent(row, r -> new ArrayList<>()).add(request);
+      Key start = new Key(row, FileDataIngest.CHUNK_CF, chunkCQ(chunkSize, request.firstChunk));
+      Key end = Range.prefix(row, FileDataIngest.CHUNK_CF, chunkCQ(chunkSize, request.lastChunk))
+          .getEndKey();
+      ranges.add(new Range(start, true, end, false));
+    }
+    if (ranges.isEmpty())
+      return;
+
+    chunkScanner.setRanges(ranges);
+    for (Entry<Key,Value> entry : chunkScanner) {
+      ByteSequence cq = entry.getKey().getColumnQualifierData();
+      if (cq.length() < 8)
+        continue;
+      int chunkSize = FileDataIngest.bytesToInt(cq.getBackingArray(), cq.offset());
+      int index = FileDataIngest.bytesToInt(cq.getBackingArray(), cq.offset() + 4);
+      byte[] data = null;
+      for (Request request : requestsByRow.get(entry.getKey().getRow())) {
+        if (request.chunkSize != chunkSize || index < request.firstChunk
+            || index > request.lastChunk)
+          continue;
+        if (entry.getValue().getSize() == 0) {
+          // the end marker
+          request.numChunks = index;
+          continue;
+        }
+        if (data == null)
+          data = codec.decompress(ChunkCodec.getCodec(cq), entry.getValue().get(), chunkSize);
+        addChunk(request, index, data);
+      }
+    }
+
+    for (List<Request> requests : requestsByRow.values()) {
+      for (Request request : requests)
+        finish(request, this::hasLaterChunks);
+    }
+  }
+
+  private static Text chunkCQ(int chunkSize, int index) {
+    Text cq = new Text(FileDataIngest.intToBytes(chunkSize));
+    cq.append(FileDataIngest.intToBytes(index), 0, 4);
+    return cq;
+  }
+
+  // reads the key of the first chunk of the file after those of the request, if there is one
+  private boolean hasLaterChunks(Request request) throws TableNotFoundException {
+    Text row = new Text(request.hash);
+    Key start = new Key(row, FileDataIngest.CHUNK_CF,
+        chunkCQ(request.chunkSize, request.lastChunk + 1));
+    Text sizePrefix = new Text(FileDataIngest.intToBytes(request.chunkSize));
+    Key end = Range.prefix(row, FileDataIngest.CHUNK_CF, sizePrefix).getEndKey();
+    try (Scanner scanner = client.createScanner(tableName, auths)) {
+      scanner.setRange(new Range(start, true, end, false));
+      scanner.setBatchSize(1);
+      scanner.addScanIterator(new IteratorSetting(100, SortedKeyIterator.class));
+      return scanner.iterator().hasNext();
+    }
+  }
+
+  static void addChunk(Request request, int index, byte[] data) {
+    if (data.length < request.chunkSize)
+      request.numChunks = index + 1L;
+    // chunks with more than one visibility are returned more than once, with the same data
+    request.received.set(index - request.firstChunk);
+    long chunkStart = (long) index * request.chunkSize;
+    long from = Math.max(request.offset, chunkStart);
+    long to = Math.min(request.offset + request.length, chunkStart + data.length);
+    if (to > from) {
+      System.arraycopy(data, (int) (from - chunkStart), request.buf.array(),
+          (int) (from - request.offset), (int) (to - from));
+      request.filled = (int) Math.max(request.filled, to - request.offset);
+    }
+  }
+
+  /**
+   * Completes a request once all of its chunks that were found have been added.
+   */
+  static void finish(Request request, ChunkProbe probe) throws TableNotFoundException {
+    boolean missing;
+    if (request.received.isEmpty() && request.numChunks == Long.MAX_VALUE) {
+      // none of the chunks exist, which is past the end of the file unless later chunks do
+      missing = probe.hasLaterChunks(request);
+    } else {
+      int contiguous = request.received.nextClearBit(0);
+      long endChunk = Math.min(request.lastChunk + 1L, request.numChunks);
+      missing = request.received.nextSetBit(contiguous) >= 0
+          || request.firstChunk + contiguous < endChunk;
+    }
+    if (missing) {
+      request.future.completeExceptionally(new IOException("missing chunks for " + request.hash
+          + " between " + request.firstChunk + " and " + request.lastChunk));
+      return;
+    }
+    request.buf.limit(request.filled);
+    request.future.complete(request.buf);
+  }
+
+  /**
+   * Stops serving requests. Requests that have not completed fail with an IllegalStateException.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    dispatcher.interrupt();
+    try {
+      dispatcher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    chunkScanner.close();
+    sizeScanner.close();
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * Iterates over the chunk entries of one file, taking chunks from a {@link ChunkCache} while they
+ * are cached. At the first chunk that is not, the rest of the file is read from the source, and
+ * each chunk read is added to the cache. Iteration ends after the file's end marker.
+ */
+class CachingChunkIterator implements PeekingIterator<Entry<Key,Value>> {
+
+  private final ChunkCache cache;
+  private final Authorizations auths;
+  private final String hash;
+  private final Text row;
+  private final Function<Range,Iterator<Entry<Key,Value>>> opener;
+
+  private int chunkSize;
+  private int nextIndex = 0;
+  private PeekingIterator<Entry<Key,Value>> source;
+  private final ArrayDeque<Entry<Key,Value>> pending = new ArrayDeque<>();
+  private boolean done = false;
+
+  /**
+   * @param opener
+   *          opens an iterator over the entries of the table in a range
+   */
+  CachingChunkIterator(ChunkCache cache, Authorizations auths, String hash,
+      Function<Range,Iterator<Entry<Key,Value>>> opener) {
+    this.cache = cache;
+    this.auths = auths;
+    this.hash = hash;
+    this.row = new Text(hash);
+    this.opener = opener;
+    this.chunkSize = cache.getChunkSize(auths, hash);
+  }
+
+  private void fill() {
+    while (pending.isEmpty() && !done) {
+      if (source == null && chunkSize > 0) {
+        List<Entry<Key,Value>> cached = cache.get(auths, hash, chunkSize, nextIndex);
+        if (cached != null) {
+          addChunk(cached, nextIndex);
+          continue;
+        }
+      }
+
+      if (source == null) {
+        Range chunks = Range.prefix(row, FileDataIngest.CHUNK_CF);
+        if (chunkSize > 0) {
+          Text cq = new Text(FileDataIngest.intToBytes(chunkSize));
+          cq.append(FileDataIngest.intToBytes(nextIndex), 0, 4);
+          chunks = new Range(new Key(row, FileDataIngest.CHUNK_CF, cq), true, chunks.getEndKey(),
+              false);
+        }
+        source = Iterators.peekingIterator(opener.apply(chunks));
+      }
+      if (!source.hasNext()) {
+        done = true;
+        return;
+      }
+
+      // gather the entries of the next chunk, one per visibility
+      List<Entry<Key,Value>> entries = new ArrayList<>();
+      entries.add(source.next());
+      ByteSequence cq = entries.get(0).getKey().getColumnQualifierData();
+      while (source.hasNext() && sameChunk(cq, source.peek().getKey().getColumnQualifierData()))
+        entries.add(source.next());
+      if (cq.length() < 8) {
+        // not a chunk this can cache, pass it along for the stream to report
+        pending.addAll(entries);
+        continue;
+      }
+      int size = FileDataIngest.bytesToInt(cq.getBackingArray(), cq.offset());
+      int index = FileDataIngest.bytesToInt(cq.getBackingArray(), cq.offset() + 4);
+      if (chunkSize == 0) {
+        chunkSize = size;
+        cache.putChunkSize(auths, hash, chunkSize);
+      }
+      if (size == chunkSize)
+        cache.put(auths, hash, size, index, entries);
+      addChunk(entries, index);
+    }
+  }
+
+  private void addChunk(List<Entry<Key,Value>> entries, int index) {
+    pending.addAll(entries);
+    nextIndex = index + 1;
+    if (entries.get(0).getValue().getSize() == 0)
+      done = true;
+  }
+
+  private static boolean sameChunk(ByteSequence cq1, ByteSequence cq2) {
+    if (cq1.length() < 8 || cq2.length() < 8)
+      return false;
+    for (int i = 0; i < 8; i++) {
+      if (cq1.byteAt(i) != cq2.byteAt(i))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean hasNext() {
+    fill();
+    return !pending.isEmpty();
+  }
+
+  @Override
+  public Entry<Key,Value> peek() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    return pending.peek();
+  }
+
+  @Override
+  public Entry<Key,Value> next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    return pending.remove();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -23,6 +23,10 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Properties;
 
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
@@ -41,6 +45,9 @@ import com.beust.jcommander.Parameter;
  * A MapReduce that computes a histogram of byte frequency for each file and stores the histogram
  * alongside the file data. The {@link ChunkInputFormat} is used to read the file data from
  * Accumulo.
+ * <p>
+ * With {@code --serverSide}, the histograms are instead computed on the tablet servers by a
+ * {@link HistogramIterator}, so only the histograms are sent to the client, which writes them back.
  */
 public class CharacterHistogram {
 
@@ -77,6 +84,45 @@ public class CharacterHistogram {
     String tableName;
     @Parameter(names = "--vis")
     String visibilities = "";
+    @Parameter(names = "--serverSide",
+        description = "compute histograms with a scan iterator instead of a MapReduce")
+    boolean serverSide = false;
+    @Parameter(names = "--totalRow",
+        description = "with --serverSide, also add every histogram to the one in this row")
+    String totalRow = null;
+    @Parameter(names = "--splitSize",
+        description = "bytes of file data per mapper, or 0 for one mapper per tablet")
+    long splitSize = 0;
+  }
+
+  /**
+   * Computes the histograms with a {@link HistogramIterator} and writes them to the table. When a
+   * total row is given, a combiner that adds histograms is attached to the table, and every
+   * histogram is also written to that row's {@code info:histTotal}.
+   */
+  static void runServerSide(AccumuloClient client, Opts opts) throws Exception {
+    ColumnVisibility cv = new ColumnVisibility(opts.visibilities);
+    if (opts.totalRow != null) {
+      IteratorSetting combiner = HistogramIterator.combinerSetting(10);
+      if (!client.tableOperations().listIterators(opts.tableName)
+          .containsKey(combiner.getName()))
+        client.tableOperations().attachIterator(opts.tableName, combiner);
+    }
+    try (Scanner scanner = client.createScanner(opts.tableName, opts.auths);
+        BatchWriter bw = client.createBatchWriter(opts.tableName)) {
+      scanner.addScanIterator(new IteratorSetting(100, HistogramIterator.class));
+      for (Entry<Key,Value> entry : scanner) {
+        Mutation m = new Mutation(entry.getKey().getRow());
+        m.put(HistogramIterator.HIST_CF, HistogramIterator.HIST_CQ, cv, entry.getValue());
+        bw.addMutation(m);
+        if (opts.totalRow != null) {
+          m = new Mutation(opts.totalRow);
+          m.put(HistogramIterator.HIST_CF, HistogramIterator.HIST_TOTAL_CQ, cv,
+              entry.getValue());
+          bw.addMutation(m);
+        }
+      }
+    }
   }
 
   @SuppressWarnings("deprecation")
@@ -84,6 +130,13 @@ public class CharacterHistogram {
     Opts opts = new Opts();
     opts.parseArgs(CharacterHistogram.class.getName(), args);
 
+    if (opts.serverSide) {
+      try (AccumuloClient client = opts.createAccumuloClient()) {
+        runServerSide(client, opts);
+      }
+      return;
+    }
+
     Job job = Job.getInstance(opts.getHadoopConfig());
     job.setJobName(CharacterHistogram.class.getSimpleName());
     job.setJarByClass(CharacterHistogram.class);
@@ -102,6 +155,12 @@ public class CharacterHistogram {
     ChunkInputFormat.setConnectorInfo(job, props.getProperty("auth.principal"), token);
     ChunkInputFormat.setInputTableName(job, opts.tableName);
     ChunkInputFormat.setScanAuthorizations(job, opts.auths);
+    if (opts.splitSize > 0) {
+      try (AccumuloClient client = opts.createAccumuloClient()) {
+        ChunkInputFormat.setBalancedRanges(job, client, opts.tableName, opts.auths,
+            opts.splitSize);
+      }
+    }
 
     job.setOutputFormatClass(AccumuloOutputFormat.class);
     AccumuloOutputFormat.configure().clientProperties(opts.getClientProperties())
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyValue;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+
+/**
+ * A least recently used cache of file chunks, for {@link FileDataQuery}. Chunk data is held
+ * off-heap in direct buffers, up to a fixed number of bytes. A file's chunks never change once
+ * written, since the file is stored under the hash of its content, so entries never need to be
+ * invalidated.
+ * <p>
+ * Chunks are cached per set of authorizations they were read with, so a cache may be shared by
+ * queries with different authorizations without one seeing data only another may read. Instances
+ * are thread safe.
+ */
+public class ChunkCache {
+
+  // most files whose chunk size is remembered
+  private static final int MAX_FILES = 4096;
+
+  private static final class ChunkId {
+    final Authorizations auths;
+    final String hash;
+    final int chunkSize;
+    final int index;
+
+    ChunkId(Authorizations auths, String hash, int chunkSize, int index) {
+      this.auths = auths;
+      this.hash = hash;
+      this.chunkSize = chunkSize;
+      this.index = index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ChunkId))
+        return false;
+      ChunkId other = (ChunkId) o;
+      return chunkSize == other.chunkSize && index == other.index && hash.equals(other.hash)
+          && auths.equals(other.auths);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(auths, hash, chunkSize, index);
+    }
+  }
+
+  /**
+   * The entries of one chunk, one per visibility it was written with, with their values stored
+   * one after another in a single direct buffer.
+   */
+  private static final class CachedChunk {
+    final Key[] keys;
+    final int[] lengths;
+    final ByteBuffer data;
+
+    CachedChunk(List<Entry<Key,Value>> entries) {
+      keys = new Key[entries.size()];
+      lengths = new int[entries.size()];
+      int total = 0;
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = entries.get(i).getKey();
+        lengths[i] = entries.get(i).getValue().getSize();
+        total += lengths[i];
+      }
+      data = ByteBuffer.allocateDirect(total);
+      for (Entry<Key,Value> entry : entries)
+        data.put(entry.getValue().get(), 0, entry.getValue().getSize());
+      data.flip();
+    }
+
+    List<Entry<Key,Value>> toEntries() {
+      List<Entry<Key,Value>> entries = new ArrayList<>(keys.length);
+      ByteBuffer in = data.duplicate();
+      for (int i = 0; i < keys.length; i++) {
+        byte[] value = new byte[lengths[i]];
+        in.get(value);
+        entries.add(new KeyValue(keys[i], value));
+      }
+      return entries;
+    }
+  }
+
+  private final long maxSize;
+  private long size = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  private final LinkedHashMap<ChunkId,CachedChunk> chunks = new LinkedHashMap<>(16, 0.75f, true);
+  private final LinkedHashMap<ChunkId,Integer> chunkSizes = new LinkedHashMap<>(16, 0.75f,
+      true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Entry<ChunkId,Integer> eldest) {
+      return size() > MAX_FILES;
+    }
+  };
+
+  /**
+   * @param maxSize
+   *          the most bytes of chunk data to hold
+   */
+  public ChunkCache(long maxSize) {
+    if (maxSize <= 0)
+      throw new IllegalArgumentException("cache size must be positive " + maxSize);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return the entries of a chunk, or null if it is not cached
+   */
+  synchronized List<Entry<Key,Value>> get(Authorizations auths, String hash, int chunkSize,
+      int index) {
+    CachedChunk chunk = chunks.get(new ChunkId(auths, hash, chunkSize, index));
+    if (chunk == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return chunk.toEntries();
+  }
+
+  synchronized void put(Authorizations auths, String hash, int chunkSize, int index,
+      List<Entry<Key,Value>> entries) {
+    CachedChunk chunk = new CachedChunk(entries);
+    long chunkBytes = chunk.data.capacity();
+    if (chunkBytes > maxSize)
+      return;
+    CachedChunk old = chunks.put(new ChunkId(auths, hash, chunkSize, index), chunk);
+    if (old != null)
+      size -= old.data.capacity();
+    size += chunkBytes;
+    Iterator<CachedChunk> eldest = chunks.values().iterator();
+    while (size > maxSize) {
+      size -= eldest.next().data.capacity();
+      eldest.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * @return the chunk size a file was last read with, or 0 if it is not known
+   */
+  synchronized int getChunkSize(Authorizations auths, String hash) {
+    Integer chunkSize = chunkSizes.get(new ChunkId(auths, hash, 0, 0));
+    return chunkSize == null ? 0 : chunkSize;
+  }
+
+  synchronized void putChunkSize(Authorizations auths, String hash, int chunkSize) {
+    chunkSizes.put(new ChunkId(auths, hash, 0, 0), chunkSize);
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return the number of bytes of chunk data held
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ChunkCache[size=" + size + ", maxSize=" + maxSize + ", hits=" + hits + ", misses="
+        + misses + ", evictions=" + evictions + "]";
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.accumulo.core.data.ByteSequence;
+
+/**
+ * Compresses and decompresses chunk values. A compressed chunk has a ninth byte in its column
+ * qualifier, after the chunk size and chunk number, naming the codec. Chunks stored raw keep the
+ * original eight byte qualifier, so data written without compression reads the same as before.
+ * Instances hold a reusable deflater and inflater and are not thread safe.
+ */
+public class ChunkCodec {
+
+  public static final byte NONE = 0;
+  public static final byte DEFLATE = 1;
+
+  // extensions of formats that are already compressed and are stored raw
+  private static final Set<String> COMPRESSED_EXTS = Set.of("gz", "tgz", "bz2", "xz", "zst", "zip",
+      "jar", "7z", "rar", "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "mkv", "avi", "mov",
+      "pdf", "docx", "xlsx", "pptx");
+
+  private final int level;
+  private Deflater deflater;
+  private Inflater inflater;
+
+  /**
+   * @param level
+   *          a deflate level from 1 to 9, or 0 to store all chunks raw
+   */
+  public ChunkCodec(int level) {
+    if (level < 0 || level > Deflater.BEST_COMPRESSION)
+      throw new IllegalArgumentException("compression level must be between 0 and 9 " + level);
+    this.level = level;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * @return true if chunks of a file with the given extension should be compressed
+   */
+  public boolean shouldCompress(String ext) {
+    return level > 0 && (ext == null || !COMPRESSED_EXTS.contains(ext.toLowerCase()));
+  }
+
+  /**
+   * Compresses data into the output buffer.
+   *
+   * @return the compressed length, or -1 if the data did not fit in the output buffer, in which
+   *         case it should be stored raw
+   */
+  public int compress(byte[] data, int len, byte[] out) {
+    if (deflater == null)
+      deflater = new Deflater(level);
+    deflater.reset();
+    deflater.setInput(data, 0, len);
+    deflater.finish();
+    int clen = 0;
+    while (!deflater.finished() && clen < out.length)
+      clen += deflater.deflate(out, clen, out.length - clen);
+    return deflater.finished() ? clen : -1;
+  }
+
+  /**
+   * @return the codec of a chunk, given its column qualifier
+   */
+  public static byte getCodec(ByteSequence chunkCQ) {
+    return chunkCQ.length() > 8 ? chunkCQ.byteAt(8) : NONE;
+  }
+
+  /**
+   * Decompresses a chunk value.
+   *
+   * @param codec
+   *          the codec from the chunk's column qualifier
+   * @param value
+   *          the stored value
+   * @param chunkSize
+   *          the chunk size from the chunk's column qualifier, which bounds the decompressed size
+   */
+  public byte[] decompress(byte codec, byte[] value, int chunkSize) throws IOException {
+    if (codec == NONE || value.length == 0)
+      return value;
+    if (codec != DEFLATE)
+      throw new IOException("unknown chunk codec " + codec);
+    if (inflater == null)
+      inflater = new Inflater();
+    inflater.reset();
+    inflater.setInput(value);
+    byte[] out = new byte[chunkSize];
+    int len = 0;
+    try {
+      while (!inflater.finished() && len < out.length) {
+        int n = inflater.inflate(out, len, out.length - len);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          throw new IOException("truncated compressed chunk");
+        len += n;
+      }
+      // a full chunk may still have the end of the stream left to read
+      if (!inflater.finished() && inflater.inflate(new byte[1]) > 0)
+        throw new IOException("compressed chunk larger than chunk size " + chunkSize);
+    } catch (DataFormatException e) {
+      throw new IOException("corrupt compressed chunk", e);
+    }
+    if (!inflater.finished())
+      throw new IOException("truncated compressed chunk");
+    return len == out.length ? out : Arrays.copyOf(out, len);
+  }
+}
@@ -19,7 +19,9 @@ package org.apache.accumulo.examples.filedata;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
@@ -51,17 +53,46 @@ import org.apache.hadoop.io.Text;
  *    row1 ~chunk 0 (A&amp;B)|(C&amp;D) V1
  * </pre>
  *
- * {@link VisibilityCombiner} is used to combie the visibilities.
+ * {@link VisibilityCombiner} is used to combie the visibilities. When the refs of a row are part
+ * of the scan, they sort before the chunks and their visibilities are gathered as they are passed.
+ * Otherwise the refs are read with a separate seek. The combined visibility of recently seen rows
+ * is cached, as is the result of combining each distinct set of refs visibilities, see
+ * {@link #VIS_CACHE_SIZE_OPT}.
  */
 
 public class ChunkCombiner implements SortedKeyValueIterator<Key,Value> {
 
+  /**
+   * The number of rows whose combined refs visibility is cached, in case a row is seen again after
+   * a reseek.
+   */
+  public static final String VIS_CACHE_SIZE_OPT = "visCacheSize";
+  private static final int DEFAULT_VIS_CACHE_SIZE = 128;
+
   private SortedKeyValueIterator<Key,Value> source;
   private SortedKeyValueIterator<Key,Value> refsSource;
+  private Map<String,String> options;
   private static final Collection<ByteSequence> refsColf = Collections
       .singleton(FileDataIngest.REFS_CF_BS);
-  private Map<Text,byte[]> lastRowVC = Collections.emptyMap();
+  private Map<Text,byte[]> visCache;
+  // combined visibilities keyed by the refs visibilities they were combined from
+  private Map<Set<ByteSequence>,byte[]> combinedVisCache;
+
+  // the row being read, and whether its combined refs visibility is known yet
+  private Text currentRow = null;
+  private boolean rowVisKnown;
+  private byte[] rowVis;
+
+  // refs visibilities gathered while passing over the current row, used instead of seeking
+  // refsSource when the scan includes the refs and started at or before the beginning of the row
+  private boolean refsInScan;
+  private Text partialStartRow;
+  private boolean passComplete;
+  private VisibilityCombiner passVC;
 
+  private final Key topKeyHolder = new Key();
+  private final Value topValueHolder = new Value();
+  private byte[] valueBuf = null;
   private Key topKey = null;
   private Value topValue = null;
 
@@ -72,6 +103,23 @@ public class ChunkCombiner implements SortedKeyValueIterator<Key,Value> {
       IteratorEnvironment env) throws IOException {
     this.source = source;
     this.refsSource = source.deepCopy(env);
+    this.options = options;
+    int visCacheSize = DEFAULT_VIS_CACHE_SIZE;
+    if (options != null && options.containsKey(VIS_CACHE_SIZE_OPT))
+      visCacheSize = Integer.parseInt(options.get(VIS_CACHE_SIZE_OPT));
+    this.visCache = lruMap(visCacheSize);
+    this.combinedVisCache = lruMap(visCacheSize);
+  }
+
+  private static <K> Map<K,byte[]> lruMap(int maxSize) {
+    return new LinkedHashMap<>(16, .75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K,byte[]> eldest) {
+        return size() > maxSize;
+      }
+    };
   }
 
   @Override
@@ -87,6 +135,17 @@ public class ChunkCombiner implements SortedKeyValueIterator<Key,Value> {
   @Override
   public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive)
       throws IOException {
+    refsInScan = columnFamilies.isEmpty()
+        || inclusive == columnFamilies.contains(FileDataIngest.REFS_CF_BS);
+    Key start = range.getStartKey();
+    if (start == null || (range.isStartKeyInclusive() && start.getColumnFamilyData().length() == 0
+        && start.getColumnQualifierData().length() == 0
+        && start.getColumnVisibilityData().length() == 0
+        && start.getTimestamp() == Long.MAX_VALUE))
+      partialStartRow = null;
+    else
+      partialStartRow = start.getRow();
+    currentRow = null;
     source.seek(range, columnFamilies, inclusive);
     findTop();
   }
@@ -95,59 +154,97 @@ public class ChunkCombiner implements SortedKeyValueIterator<Key,Value> {
     do {
       topKey = null;
       topValue = null;
-    } while (source.hasTop() && _findTop() == null);
+    } while (source.hasTop() && !_findTop());
   }
 
-  private byte[] _findTop() throws IOException {
-    long maxTS;
+  private void startRow(Key key) {
+    currentRow = key.getRow();
+    rowVisKnown = false;
+    rowVis = null;
+    passVC = null;
+    passComplete = refsInScan
+        && (partialStartRow == null || key.compareRow(partialStartRow) != 0);
+  }
 
-    topKey = new Key(source.getTopKey());
-    topValue = new Value(source.getTopValue());
+  private void copyTopValue() {
+    byte[] v = source.getTopValue().get();
+    if (valueBuf == null || valueBuf.length != v.length)
+      valueBuf = new byte[v.length];
+    System.arraycopy(v, 0, valueBuf, 0, v.length);
+    topValueHolder.set(valueBuf);
+  }
+
+  private boolean _findTop() throws IOException {
+    Key sourceKey = source.getTopKey();
+    if (currentRow == null || sourceKey.compareRow(currentRow) != 0)
+      startRow(sourceKey);
+
+    topKeyHolder.set(sourceKey);
+    copyTopValue();
     source.next();
 
-    if (!topKey.getColumnFamilyData().equals(FileDataIngest.CHUNK_CF_BS))
-      return topKey.getColumnVisibility().getBytes();
+    if (topKeyHolder.compareColumnFamily(FileDataIngest.CHUNK_CF) != 0) {
+      if (passComplete && topKeyHolder.compareColumnFamily(FileDataIngest.REFS_CF) == 0) {
+        if (passVC == null)
+          passVC = new VisibilityCombiner(combinedVisCache);
+        passVC.add(topKeyHolder.getColumnVisibilityData());
+      }
+      topKey = topKeyHolder;
+      topValue = topValueHolder;
+      return true;
+    }
 
-    maxTS = topKey.getTimestamp();
+    long maxTS = topKeyHolder.getTimestamp();
 
-    while (source.hasTop() && source.getTopKey().equals(topKey, PartialKey.ROW_COLFAM_COLQUAL)) {
+    while (source.hasTop()
+        && source.getTopKey().equals(topKeyHolder, PartialKey.ROW_COLFAM_COLQUAL)) {
       if (source.getTopKey().getTimestamp() > maxTS)
         maxTS = source.getTopKey().getTimestamp();
 
-      if (!topValue.equals(source.getTopValue()))
-        throw new RuntimeException("values not equals " + topKey + " " + source.getTopKey() + " : "
-            + diffInfo(topValue, source.getTopValue()));
+      if (!topValueHolder.equals(source.getTopValue()))
+        throw new RuntimeException("values not equals " + topKeyHolder + " "
+            + source.getTopKey() + " : " + diffInfo(topValueHolder, source.getTopValue()));
 
       source.next();
     }
 
-    byte[] vis = getVisFromRefs();
-    if (vis != null) {
-      topKey = new Key(topKey.getRowData().toArray(), topKey.getColumnFamilyData().toArray(),
-          topKey.getColumnQualifierData().toArray(), vis, maxTS);
+    byte[] vis = getRowVis();
+    if (vis == null)
+      return false;
+    topKey = new Key(topKeyHolder.getRowData().toArray(),
+        topKeyHolder.getColumnFamilyData().toArray(),
+        topKeyHolder.getColumnQualifierData().toArray(), vis, maxTS, false, false);
+    topValue = topValueHolder;
+    return true;
+  }
+
+  private byte[] getRowVis() throws IOException {
+    if (!rowVisKnown) {
+      if (passComplete) {
+        rowVis = passVC == null ? null : passVC.get();
+        visCache.put(currentRow, rowVis);
+      } else if (visCache.containsKey(currentRow)) {
+        rowVis = visCache.get(currentRow);
+      } else {
+        rowVis = getVisFromRefs(currentRow);
+        visCache.put(currentRow, rowVis);
+      }
+      rowVisKnown = true;
     }
-    return vis;
+    return rowVis;
   }
 
-  private byte[] getVisFromRefs() throws IOException {
-    Text row = topKey.getRow();
-    if (lastRowVC.containsKey(row))
-      return lastRowVC.get(row);
+  private byte[] getVisFromRefs(Text row) throws IOException {
     Range range = new Range(row);
     refsSource.seek(range, refsColf, true);
     VisibilityCombiner vc = null;
     while (refsSource.hasTop()) {
       if (vc == null)
-        vc = new VisibilityCombiner();
+        vc = new VisibilityCombiner(combinedVisCache);
       vc.add(refsSource.getTopKey().getColumnVisibilityData());
       refsSource.next();
     }
-    if (vc == null) {
-      lastRowVC = Collections.singletonMap(row, null);
-      return null;
-    }
-    lastRowVC = Collections.singletonMap(row, vc.get());
-    return vc.get();
+    return vc == null ? null : vc.get();
   }
 
   private String diffInfo(Value v1, Value v2) {
@@ -182,7 +279,7 @@ public class ChunkCombiner implements SortedKeyValueIterator<Key,Value> {
   public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
     ChunkCombiner cc = new ChunkCombiner();
     try {
-      cc.init(source.deepCopy(env), null, env);
+      cc.init(source.deepCopy(env), options, env);
     } catch (IOException e) {
       throw new IllegalArgumentException(e);
     }
@@ -19,13 +19,24 @@ package org.apache.accumulo.examples.filedata;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyIterator;
+import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.examples.util.FormatUtil;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
@@ -35,10 +46,88 @@ import com.google.common.collect.PeekingIterator;
 /**
  * An InputFormat that turns the file data ingested with {@link FileDataIngest} into an InputStream
  * using {@link ChunkInputStream}. Mappers used with this InputFormat must close the InputStream.
+ * <p>
+ * By default there is one split per tablet, so a mapper may get a single large file while others
+ * get many small ones. {@link #setBalancedRanges} instead splits the table by the size of the
+ * files in it.
  */
 @SuppressWarnings("deprecation")
 public class ChunkInputFormat extends
     org.apache.accumulo.core.client.mapreduce.InputFormatBase<List<Entry<Key,Value>>,InputStream> {
+
+  /**
+   * Sets the ranges of the job so that each holds about the given number of bytes of file data.
+   * Ranges always end on a row boundary, so a file is never split across mappers, and a file
+   * larger than the split size gets a range of its own. Ranges are not adjusted to tablet
+   * boundaries, and each split keeps the locations of all the tablets its range overlaps.
+   * <p>
+   * File sizes are estimated from the chunk keys of each file, which are scanned without their
+   * values. The estimate rounds each file up to a whole chunk.
+   *
+   * @param splitSize
+   *          the number of bytes of file data to aim for in each split
+   */
+  public static void setBalancedRanges(Job job, AccumuloClient client, String table,
+      Authorizations auths, long splitSize) throws TableNotFoundException {
+    if (splitSize <= 0)
+      throw new IllegalArgumentException("split size must be positive " + splitSize);
+    List<Range> ranges;
+    try (Scanner scanner = client.createScanner(table, auths)) {
+      scanner.fetchColumnFamily(FileDataIngest.CHUNK_CF);
+      scanner.addScanIterator(new IteratorSetting(100, SortedKeyIterator.class));
+      ranges = balancedRanges(scanner.iterator(), splitSize);
+    }
+    setRanges(job, ranges);
+    setAutoAdjustRanges(job, false);
+  }
+
+  /**
+   * Groups consecutive rows into ranges holding about splitSize bytes each. The ranges cover the
+   * whole table, including rows without chunks.
+   *
+   * @param chunkKeys
+   *          the chunk entries of the table, in sorted order
+   */
+  static List<Range> balancedRanges(Iterator<Entry<Key,Value>> chunkKeys, long splitSize) {
+    List<Range> ranges = new ArrayList<>();
+    Text start = null; // exclusive start row of the range being built, null for the first
+    Text last = null; // last row in the range being built
+    long rangeSize = 0;
+
+    Text row = null;
+    long rowSize = 0;
+    while (row != null || chunkKeys.hasNext()) {
+      Key key = chunkKeys.hasNext() ? chunkKeys.next().getKey() : null;
+      if (row != null && (key == null || key.compareRow(row) != 0)) {
+        // the row is done, close the range before it if it would make the range too large
+        if (last != null && rangeSize + rowSize > splitSize) {
+          ranges.add(new Range(start, false, last, true));
+          start = last;
+          rangeSize = 0;
+        }
+        last = row;
+        rangeSize += rowSize;
+        row = null;
+      }
+      if (key == null)
+        break;
+      if (row == null) {
+        row = key.getRow();
+        rowSize = 0;
+      }
+      // the end marker's chunk number is the number of chunks in the file
+      ByteSequence cq = key.getColumnQualifierData();
+      if (cq.length() >= 8) {
+        byte[] b = cq.getBackingArray();
+        long chunkSize = FileDataIngest.bytesToInt(b, cq.offset());
+        long chunkNum = FileDataIngest.bytesToInt(b, cq.offset() + 4);
+        rowSize = Math.max(rowSize, chunkSize * chunkNum);
+      }
+    }
+    ranges.add(new Range(start, false, null, true));
+    return ranges;
+  }
+
   @Override
   public RecordReader<List<Entry<Key,Value>>,InputStream> createRecordReader(InputSplit split,
       TaskAttemptContext context) {
@@ -22,6 +22,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.PartialKey;
 import org.apache.accumulo.core.data.Value;
@@ -44,6 +45,7 @@ public class ChunkInputStream extends InputStream {
   protected int currentChunk;
   protected int currentChunkSize;
   protected boolean gotEndMarker;
+  private ChunkCodec chunkCodec;
 
   protected byte[] buf;
   protected int count;
@@ -58,6 +60,15 @@ public class ChunkInputStream extends InputStream {
   }
 
   public void setSource(PeekingIterator<Entry<Key,Value>> in) throws IOException {
+    setSource(in, 0);
+  }
+
+  /**
+   * Sets a source that is expected to start at the given chunk number rather than at the
+   * beginning of the file. Used by {@link SeekableChunkInputStream} after seeking into a file.
+   */
+  protected void setSource(PeekingIterator<Entry<Key,Value>> in, int firstChunk)
+      throws IOException {
     if (source != null)
       throw new IOException("setting new source without closing old one");
     this.source = in;
@@ -82,14 +93,16 @@ public class ChunkInputStream extends InputStream {
       buf = entry.getValue().get();
     }
     log.debug("starting chunk: " + currentKey.toString());
-    count = buf.length;
     currentVis.add(currentKey.getColumnVisibility());
     currentChunk = FileDataIngest.bytesToInt(currentKey.getColumnQualifier().getBytes(), 4);
     currentChunkSize = FileDataIngest.bytesToInt(currentKey.getColumnQualifier().getBytes(), 0);
+    buf = decompress(currentKey, buf);
+    count = buf.length;
     gotEndMarker = buf.length == 0;
-    if (currentChunk != 0) {
+    if (currentChunk != firstChunk) {
       source = null;
-      throw new IOException("starting chunk number isn't 0 for " + currentKey.getRow());
+      throw new IOException(
+          "starting chunk number isn't " + firstChunk + " for " + currentKey.getRow());
     }
   }
 
@@ -136,9 +149,9 @@ public class ChunkInputStream extends InputStream {
     // add the visibility to the list if it's not there
     currentVis.add(thisKey.getColumnVisibility());
 
-    // check to see if it is an identical chunk with a different visibility
-    if (thisKey.getColumnQualifier().equals(currentKey.getColumnQualifier())) {
-      log.debug("skipping identical chunk with different visibility");
+    // check to see if it is an identical chunk with a different visibility or codec
+    if (sameChunk(thisKey, currentKey)) {
+      log.debug("skipping identical chunk with different visibility or codec");
       return fill();
     }
 
@@ -160,7 +173,7 @@ public class ChunkInputStream extends InputStream {
 
     currentKey = thisKey;
     currentChunk = thisChunk;
-    buf = entry.getValue().get();
+    buf = decompress(thisKey, entry.getValue().get());
     pos = 0;
 
     // check to see if it's the last chunk
@@ -172,6 +185,24 @@ public class ChunkInputStream extends InputStream {
     return count = buf.length;
   }
 
+  /**
+   * Compares the chunk size and chunk number of two chunk keys, ignoring any codec.
+   */
+  private static boolean sameChunk(Key k1, Key k2) {
+    ByteSequence cq1 = k1.getColumnQualifierData();
+    ByteSequence cq2 = k2.getColumnQualifierData();
+    return cq1.subSequence(0, 8).equals(cq2.subSequence(0, 8));
+  }
+
+  private byte[] decompress(Key key, byte[] value) throws IOException {
+    byte codec = ChunkCodec.getCodec(key.getColumnQualifierData());
+    if (codec == ChunkCodec.NONE)
+      return value;
+    if (chunkCodec == null)
+      chunkCodec = new ChunkCodec(0);
+    return chunkCodec.decompress(codec, value, currentChunkSize);
+  }
+
   public Set<Text> getVisibilities() {
     if (source != null)
       throw new IllegalStateException(
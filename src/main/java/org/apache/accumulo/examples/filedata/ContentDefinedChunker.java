@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+/**
+ * Finds content defined chunk boundaries using a Gear rolling hash. A boundary is placed where the
+ * low bits of the hash are all zero, so an insert or delete only changes the chunks around it and
+ * the rest of the file still splits into the same chunks. Used by {@link ContentDefinedIngest}.
+ */
+public class ContentDefinedChunker {
+
+  private static final long[] GEAR = new long[256];
+
+  static {
+    // the table must be the same everywhere for chunks to dedupe, so fill it with splitmix64 from
+    // a fixed seed rather than a library random number generator
+    long seed = 0x5DEECE66DL;
+    for (int i = 0; i < GEAR.length; i++) {
+      long z = (seed += 0x9E3779B97F4A7C15L);
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      GEAR[i] = z ^ (z >>> 31);
+    }
+  }
+
+  private final int minSize;
+  private final int maxSize;
+  private final long mask;
+
+  /**
+   * @param minSize
+   *          no boundary is placed before this many bytes
+   * @param avgSize
+   *          the expected chunk size, must be a power of two
+   * @param maxSize
+   *          a boundary is always placed after this many bytes
+   */
+  public ContentDefinedChunker(int minSize, int avgSize, int maxSize) {
+    if (minSize <= 0 || minSize > avgSize || avgSize > maxSize)
+      throw new IllegalArgumentException(
+          "require 0 < min <= avg <= max " + minSize + " " + avgSize + " " + maxSize);
+    if (Integer.bitCount(avgSize) != 1)
+      throw new IllegalArgumentException("average chunk size must be a power of two " + avgSize);
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    // use the high bits of the hash, which depend on more of the preceding bytes
+    int bits = Integer.numberOfTrailingZeros(avgSize);
+    this.mask = bits == 0 ? 0 : -1L << (64 - bits);
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Finds the end of the chunk that starts at the given offset.
+   *
+   * @param b
+   *          the data
+   * @param off
+   *          the start of the chunk
+   * @param len
+   *          the number of bytes available; unless this is the end of the data, at least
+   *          {@link #getMaxSize()} bytes should be available
+   * @return the length of the chunk, between 1 and len
+   */
+  public int nextChunkLength(byte[] b, int off, int len) {
+    if (len <= minSize)
+      return len;
+    int end = Math.min(len, maxSize);
+    long hash = 0;
+    for (int i = minSize; i < end; i++) {
+      hash = (hash << 1) + GEAR[b[off + i] & 0xff];
+      if ((hash & mask) == 0)
+        return i + 1;
+    }
+    return end;
+  }
+}
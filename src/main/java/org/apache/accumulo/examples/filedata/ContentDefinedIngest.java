@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.examples.Common;
+import org.apache.accumulo.examples.cli.BatchWriterOpts;
+import org.apache.accumulo.examples.cli.ClientOnRequiredTable;
+import org.apache.hadoop.io.Text;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Takes a list of files and archives them into Accumulo using content defined chunks. Unlike
+ * {@link FileDataIngest}, chunk boundaries are chosen by a {@link ContentDefinedChunker}, so files
+ * that differ by a small edit still share most of their chunks. Each chunk is stored once in a
+ * chunk table keyed on the hash of the chunk. The data table row for a file holds the usual refs
+ * columns and a manifest listing the hashes of the file's chunks in order, which is read back with
+ * a {@link ManifestInputStream}.
+ */
+public class ContentDefinedIngest {
+
+  private final ContentDefinedChunker chunker;
+  private final ColumnVisibility cv;
+  private final byte[] window;
+  private final MessageDigest fileDigest;
+  private final MessageDigest chunkDigest;
+
+  public ContentDefinedIngest(ContentDefinedChunker chunker, ColumnVisibility colvis) {
+    this.chunker = chunker;
+    this.cv = colvis;
+    this.window = new byte[chunker.getMaxSize()];
+    try {
+      fileDigest = MessageDigest.getInstance("MD5");
+      chunkDigest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads the file once, writing any chunks to the chunk table and the refs and manifest to the
+   * data table.
+   *
+   * @return the hash of the file, which is its row in the data table
+   */
+  public String insertFileData(String filename, BatchWriter dataBW, BatchWriter chunkBW)
+      throws MutationsRejectedException, IOException {
+    fileDigest.reset();
+    String uid = FileDataIngest.hexString(fileDigest.digest(filename.getBytes()));
+
+    fileDigest.reset();
+    List<String> chunkHashes = new ArrayList<>();
+    try (InputStream in = new FileInputStream(filename)) {
+      int filled = 0;
+      boolean eof = false;
+      while (true) {
+        while (!eof && filled < window.length) {
+          int numRead = in.read(window, filled, window.length - filled);
+          if (numRead < 0)
+            eof = true;
+          else
+            filled += numRead;
+        }
+        if (filled == 0)
+          break;
+
+        int len = chunker.nextChunkLength(window, 0, filled);
+        fileDigest.update(window, 0, len);
+        chunkDigest.reset();
+        chunkDigest.update(window, 0, len);
+        String chunkHash = FileDataIngest.hexString(chunkDigest.digest());
+
+        Mutation m = new Mutation(chunkHash);
+        m.put(FileDataIngest.CHUNK_CF, new Text(), cv, new Value(window, 0, len));
+        chunkBW.addMutation(m);
+        chunkHashes.add(chunkHash);
+        if (chunkHashes.size() == Integer.MAX_VALUE)
+          throw new RuntimeException("too many chunks for file " + filename);
+
+        System.arraycopy(window, len, window, 0, filled - len);
+        filled -= len;
+      }
+    }
+
+    String hash = FileDataIngest.hexString(fileDigest.digest());
+    Text row = new Text(hash);
+    dataBW.addMutation(FileDataIngest.buildRefsMutation(row, uid, filename, cv));
+
+    Mutation m = new Mutation(row);
+    for (int i = 0; i < chunkHashes.size(); i++) {
+      m.put(FileDataIngest.MANIFEST_CF, new Text(FileDataIngest.intToBytes(i)), cv,
+          new Value(chunkHashes.get(i).getBytes()));
+    }
+    // end marker, like the one FileDataIngest writes after the last chunk
+    m.put(FileDataIngest.MANIFEST_CF, new Text(FileDataIngest.intToBytes(chunkHashes.size())), cv,
+        new Value(new byte[0]));
+    dataBW.addMutation(m);
+    return hash;
+  }
+
+  public static class Opts extends ClientOnRequiredTable {
+    @Parameter(names = "--chunkTable", required = true,
+        description = "table holding chunks keyed by their hash")
+    String chunkTable;
+
+    @Parameter(names = "--vis", description = "use a given visibility for the new data",
+        converter = VisibilityConverter.class)
+    ColumnVisibility visibility = new ColumnVisibility();
+
+    @Parameter(names = "--minChunk", description = "minimum chunk size")
+    int minChunk = 16 * 1024;
+
+    @Parameter(names = "--avgChunk", description = "average chunk size, a power of two")
+    int avgChunk = 64 * 1024;
+
+    @Parameter(names = "--maxChunk", description = "maximum chunk size")
+    int maxChunk = 256 * 1024;
+
+    @Parameter(description = "<file> { <file> ... }")
+    List<String> files = new ArrayList<>();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    BatchWriterOpts bwOpts = new BatchWriterOpts();
+    opts.parseArgs(ContentDefinedIngest.class.getName(), args, bwOpts);
+
+    try (AccumuloClient client = opts.createAccumuloClient()) {
+      Common.createTableWithNamespace(client, opts.getTableName());
+      Common.createTableWithNamespace(client, opts.chunkTable);
+      IteratorSetting combiner = new IteratorSetting(1, ChunkCombiner.class);
+      if (!client.tableOperations().listIterators(opts.getTableName())
+          .containsKey(combiner.getName()))
+        client.tableOperations().attachIterator(opts.getTableName(), combiner);
+
+      try (
+          BatchWriter dataBW = client.createBatchWriter(opts.getTableName(),
+              bwOpts.getBatchWriterConfig());
+          BatchWriter chunkBW = client.createBatchWriter(opts.chunkTable,
+              bwOpts.getBatchWriterConfig())) {
+        ContentDefinedIngest cdi = new ContentDefinedIngest(
+            new ContentDefinedChunker(opts.minChunk, opts.avgChunk, opts.maxChunk),
+            opts.visibility);
+        for (String filename : opts.files) {
+          cdi.insertFileData(filename, dataBW, chunkBW);
+        }
+      }
+    }
+  }
+}
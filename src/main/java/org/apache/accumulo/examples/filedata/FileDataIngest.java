@@ -19,10 +19,24 @@ package org.apache.accumulo.examples.filedata;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.accumulo.core.client.AccumuloClient;
 import org.apache.accumulo.core.client.BatchWriter;
@@ -47,26 +61,50 @@ public class FileDataIngest {
 
   public static final Text CHUNK_CF = new Text("~chunk");
   public static final Text REFS_CF = new Text("refs");
+  public static final Text MANIFEST_CF = new Text("~manifest");
   public static final String REFS_ORIG_FILE = "name";
   public static final String REFS_FILE_EXT = "filext";
   public static final ByteSequence CHUNK_CF_BS = new ArrayByteSequence(CHUNK_CF.getBytes(), 0,
       CHUNK_CF.getLength());
+  public static final ByteSequence MANIFEST_CF_BS = new ArrayByteSequence(MANIFEST_CF.getBytes(),
+      0, MANIFEST_CF.getLength());
   public static final ByteSequence REFS_CF_BS = new ArrayByteSequence(REFS_CF.getBytes(), 0,
       REFS_CF.getLength());
 
   public static final String TABLE_EXISTS_MSG = "Table already exists. User may wish to delete existing "
       + "table and re-run example. Table name: ";
 
+  // mapped regions of a file are at most this large, rounded down to a multiple of the chunk size
+  private static final long MAX_REGION_SIZE = 64 * 1024 * 1024;
+  // the number of files whose stored content is looked up together
+  private static final int LOOKUP_BATCH_SIZE = 1000;
+
   int chunkSize;
   byte[] chunkSizeBytes;
   byte[] buf;
+  byte[] compressed;
+  boolean compressFile;
   MessageDigest md5digest;
   ColumnVisibility cv;
+  ChunkCodec codec;
+  StoredContentChecker storedContent;
 
   public FileDataIngest(int chunkSize, ColumnVisibility colvis) {
+    this(chunkSize, colvis, 0);
+  }
+
+  /**
+   * @param compressionLevel
+   *          the deflate level used to compress chunks, or 0 to store chunks raw; chunks of files
+   *          in an already compressed format, or that do not shrink, are always stored raw
+   */
+  public FileDataIngest(int chunkSize, ColumnVisibility colvis, int compressionLevel) {
     this.chunkSize = chunkSize;
     chunkSizeBytes = intToBytes(chunkSize);
     buf = new byte[chunkSize];
+    codec = new ChunkCodec(compressionLevel);
+    if (compressionLevel > 0)
+      compressed = new byte[chunkSize];
     try {
       md5digest = MessageDigest.getInstance("MD5");
     } catch (NoSuchAlgorithmException e) {
@@ -75,79 +113,260 @@ public class FileDataIngest {
     cv = colvis;
   }
 
+  /**
+   * Skips writing the chunks of files whose content the given checker finds already stored, so
+   * only a new ref is written for them.
+   */
+  public void setStoredContentChecker(StoredContentChecker storedContent) {
+    this.storedContent = storedContent;
+  }
+
   public String insertFileData(String filename, BatchWriter bw)
       throws MutationsRejectedException, IOException {
     if (chunkSize == 0)
       return "";
+    FileHash fileHash = hashFile(filename, true);
+    boolean stored = storedContent != null
+        && storedContent.isStored(fileHash.hash, fileHash.size);
+    writeFile(filename, fileHash, stored, bw);
+    return fileHash.hash;
+  }
+
+  /**
+   * The hash and size of a file's content.
+   */
+  static class FileHash {
+    final String hash;
+    final long size;
+    // the mapping of a file in one region, which its chunks are written from, or null
+    final MappedByteBuffer mapping;
+
+    FileHash(String hash, long size, MappedByteBuffer mapping) {
+      this.hash = hash;
+      this.size = size;
+      this.mapping = mapping;
+    }
+  }
+
+  /**
+   * @param keepMapping
+   *          true to keep the mapping of a file that fits in one region, so its chunks are written
+   *          from the same mapping
+   */
+  FileHash hashFile(String filename, boolean keepMapping) throws IOException {
     md5digest.reset();
-    String uid = hexString(md5digest.digest(filename.getBytes()));
+    long size = 0;
+    MappedByteBuffer mapping = null;
+    Path path = Paths.get(filename);
+    if (Files.isRegularFile(path)) {
+      try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+        size = fc.size();
+        long regionSize = regionSize();
+        // hash the mapped file, which pulls its pages into the page cache for the chunking pass
+        for (long offset = 0; offset < size; offset += regionSize) {
+          MappedByteBuffer region = fc.map(MapMode.READ_ONLY, offset,
+              Math.min(regionSize, size - offset));
+          md5digest.update(region);
+          if (keepMapping && size <= regionSize)
+            mapping = region;
+        }
+      }
+    } else {
+      // something that is not a regular file, and so cannot be mapped, is read through a stream
+      try (InputStream fis = new FileInputStream(filename)) {
+        int numRead = fis.read(buf);
+        while (numRead >= 0) {
+          if (numRead > 0) {
+            md5digest.update(buf, 0, numRead);
+            size += numRead;
+          }
+          numRead = fis.read(buf);
+        }
+      }
+    }
+    return new FileHash(hexString(md5digest.digest()), size, mapping);
+  }
 
-    // read through file once, calculating hashes
+  /**
+   * Writes the refs of a file, and its chunks unless its content is already stored.
+   */
+  void writeFile(String filename, FileHash fileHash, boolean stored, BatchWriter bw)
+      throws MutationsRejectedException, IOException {
     md5digest.reset();
-    InputStream fis = null;
-    int numRead = 0;
-    try {
-      fis = new FileInputStream(filename);
-      numRead = fis.read(buf);
-      while (numRead >= 0) {
-        if (numRead > 0) {
-          md5digest.update(buf, 0, numRead);
+    String uid = hexString(md5digest.digest(filename.getBytes()));
+    Text row = new Text(fileHash.hash);
+    bw.addMutation(buildRefsMutation(row, uid, filename, cv));
+    if (stored)
+      return;
+
+    compressFile = codec.shouldCompress(getExt(filename));
+    int chunkCount = 0;
+    Path path = Paths.get(filename);
+    if (Files.isRegularFile(path)) {
+      try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+        long size = fc.size();
+        long regionSize = regionSize();
+        // the regions of a larger file are mapped again
+        for (long offset = 0; offset < size; offset += regionSize) {
+          MappedByteBuffer region = fileHash.mapping != null ? fileHash.mapping
+              : fc.map(MapMode.READ_ONLY, offset, Math.min(regionSize, size - offset));
+          region.rewind();
+          while (region.hasRemaining()) {
+            int numRead = Math.min(chunkSize, region.remaining());
+            region.get(buf, 0, numRead);
+            bw.addMutation(buildChunkMutation(row, chunkCount, buf, numRead));
+            if (chunkCount == Integer.MAX_VALUE)
+              throw new RuntimeException(
+                  "too many chunks for file " + filename + ", try raising chunk size");
+            chunkCount++;
+          }
         }
-        numRead = fis.read(buf);
       }
-    } finally {
-      if (fis != null) {
-        fis.close();
+    } else {
+      // read through the stream again, writing chunks to accumulo
+      try (InputStream fis = new FileInputStream(filename)) {
+        int numRead = fis.read(buf);
+        while (numRead >= 0) {
+          while (numRead < buf.length) {
+            int moreRead = fis.read(buf, numRead, buf.length - numRead);
+            if (moreRead > 0)
+              numRead += moreRead;
+            else if (moreRead < 0)
+              break;
+          }
+          bw.addMutation(buildChunkMutation(row, chunkCount, buf, numRead));
+          if (chunkCount == Integer.MAX_VALUE)
+            throw new RuntimeException(
+                "too many chunks for file " + filename + ", try raising chunk size");
+          chunkCount++;
+          numRead = fis.read(buf);
+        }
       }
     }
+    bw.addMutation(buildChunkMutation(row, chunkCount, buf, 0));
+    if (storedContent != null)
+      storedContent.markStored(fileHash.hash);
+  }
 
-    String hash = hexString(md5digest.digest());
-    Text row = new Text(hash);
+  private long regionSize() {
+    return Math.max(chunkSize, (MAX_REGION_SIZE / chunkSize) * chunkSize);
+  }
 
-    // write info to accumulo
+  static Mutation buildRefsMutation(Text row, String uid, String filename, ColumnVisibility cv) {
     Mutation m = new Mutation(row);
     m.put(REFS_CF, KeyUtil.buildNullSepText(uid, REFS_ORIG_FILE), cv,
         new Value(filename.getBytes()));
     String fext = getExt(filename);
     if (fext != null)
       m.put(REFS_CF, KeyUtil.buildNullSepText(uid, REFS_FILE_EXT), cv, new Value(fext.getBytes()));
-    bw.addMutation(m);
+    return m;
+  }
 
-    // read through file again, writing chunks to accumulo
-    int chunkCount = 0;
+  private Mutation buildChunkMutation(Text row, int chunkCount, byte[] data, int length) {
+    Mutation m = new Mutation(row);
+    Text chunkCQ = new Text(chunkSizeBytes);
+    chunkCQ.append(intToBytes(chunkCount), 0, 4);
+    int clen = compressFile && length > 0 ? codec.compress(data, length, compressed) : -1;
+    if (clen >= 0 && clen < length) {
+      chunkCQ.append(new byte[] {ChunkCodec.DEFLATE}, 0, 1);
+      m.put(CHUNK_CF, chunkCQ, cv, new Value(compressed, 0, clen));
+    } else {
+      m.put(CHUNK_CF, chunkCQ, cv, new Value(data, 0, length));
+    }
+    return m;
+  }
+
+  /**
+   * Inserts many files at once using a pool of threads that all write to the given batch writer.
+   * Each thread uses its own {@link FileDataIngest}, since instances hold a digest and buffer that
+   * can not be shared.
+   * <p>
+   * When a {@link StoredContentChecker} is set, files are hashed in batches, and which of a batch
+   * are already stored is looked up all at once before any of them are written.
+   *
+   * @param filenames
+   *          the files to insert
+   * @param bw
+   *          the batch writer shared by all threads
+   * @param numThreads
+   *          the number of files to read concurrently
+   * @return the hash of each file, in the same order as the file names
+   */
+  public List<String> insertFileData(List<String> filenames, BatchWriter bw, int numThreads)
+      throws MutationsRejectedException, IOException {
+    if (numThreads <= 1 && storedContent == null) {
+      List<String> hashes = new ArrayList<>(filenames.size());
+      for (String filename : filenames)
+        hashes.add(insertFileData(filename, bw));
+      return hashes;
+    }
+
+    ThreadLocal<FileDataIngest> ingesters = ThreadLocal.withInitial(() -> {
+      FileDataIngest fdi = new FileDataIngest(chunkSize, cv, codec.getLevel());
+      fdi.storedContent = storedContent;
+      return fdi;
+    });
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
     try {
-      fis = new FileInputStream(filename);
-      numRead = fis.read(buf);
-      while (numRead >= 0) {
-        while (numRead < buf.length) {
-          int moreRead = fis.read(buf, numRead, buf.length - numRead);
-          if (moreRead > 0)
-            numRead += moreRead;
-          else if (moreRead < 0)
-            break;
+      if (storedContent == null) {
+        List<Future<String>> futures = new ArrayList<>(filenames.size());
+        for (String filename : filenames)
+          futures.add(pool.submit(() -> ingesters.get().insertFileData(filename, bw)));
+        return getAll(futures);
+      }
+
+      List<String> hashes = new ArrayList<>(filenames.size());
+      for (int start = 0; start < filenames.size(); start += LOOKUP_BATCH_SIZE) {
+        List<String> batch = filenames.subList(start,
+            Math.min(filenames.size(), start + LOOKUP_BATCH_SIZE));
+        List<Future<FileHash>> hashed = new ArrayList<>(batch.size());
+        for (String filename : batch)
+          // mappings are not kept for a whole batch
+          hashed.add(pool.submit(() -> ingesters.get().hashFile(filename, false)));
+        List<FileHash> fileHashes = getAll(hashed);
+
+        Map<String,Long> sizes = new HashMap<>();
+        for (FileHash fileHash : fileHashes)
+          sizes.put(fileHash.hash, fileHash.size);
+        Set<String> stored = storedContent.findStored(sizes);
+
+        List<Future<String>> written = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+          String filename = batch.get(i);
+          FileHash fileHash = fileHashes.get(i);
+          // content repeated within the batch is only written for its first file
+          boolean skip = !stored.add(fileHash.hash);
+          written.add(pool.submit(() -> {
+            ingesters.get().writeFile(filename, fileHash, skip, bw);
+            return fileHash.hash;
+          }));
         }
-        m = new Mutation(row);
-        Text chunkCQ = new Text(chunkSizeBytes);
-        chunkCQ.append(intToBytes(chunkCount), 0, 4);
-        m.put(CHUNK_CF, chunkCQ, cv, new Value(buf, 0, numRead));
-        bw.addMutation(m);
-        if (chunkCount == Integer.MAX_VALUE)
-          throw new RuntimeException(
-              "too many chunks for file " + filename + ", try raising chunk size");
-        chunkCount++;
-        numRead = fis.read(buf);
+        hashes.addAll(getAll(written));
       }
+      return hashes;
     } finally {
-      if (fis != null) {
-        fis.close();
-      }
+      pool.shutdownNow();
+    }
+  }
+
+  private static <T> List<T> getAll(List<Future<T>> futures)
+      throws MutationsRejectedException, IOException {
+    try {
+      List<T> results = new ArrayList<>(futures.size());
+      for (Future<T> future : futures)
+        results.add(future.get());
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while inserting files", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof MutationsRejectedException)
+        throw (MutationsRejectedException) cause;
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      throw new RuntimeException(cause);
     }
-    m = new Mutation(row);
-    Text chunkCQ = new Text(chunkSizeBytes);
-    chunkCQ.append(intToBytes(chunkCount), 0, 4);
-    m.put(new Text(CHUNK_CF), chunkCQ, cv, new Value(new byte[0]));
-    bw.addMutation(m);
-    return hash;
   }
 
   public static int bytesToInt(byte[] b, int offset) {
@@ -173,7 +392,7 @@ public class FileDataIngest {
     return filename.substring(filename.lastIndexOf(".") + 1);
   }
 
-  public String hexString(byte[] bytes) {
+  public static String hexString(byte[] bytes) {
     StringBuilder sb = new StringBuilder();
     for (byte b : bytes) {
       sb.append(String.format("%02x", b));
@@ -189,6 +408,17 @@ public class FileDataIngest {
     @Parameter(names = "--chunk", description = "size of the chunks used to store partial files")
     int chunkSize = 64 * 1024;
 
+    @Parameter(names = "--compress",
+        description = "deflate level (1-9) used to compress chunks, or 0 to store them raw")
+    int compressionLevel = 0;
+
+    @Parameter(names = "--threads", description = "number of files to insert concurrently")
+    int threads = 1;
+
+    @Parameter(names = "--skipStored",
+        description = "only write a new ref for files whose content is already in the table")
+    boolean skipStored = false;
+
     @Parameter(description = "<file> { <file> ... }")
     List<String> files = new ArrayList<>();
   }
@@ -200,15 +430,19 @@ public class FileDataIngest {
 
     try (AccumuloClient client = opts.createAccumuloClient()) {
       Common.createTableWithNamespace(client, opts.getTableName());
-      client.tableOperations().attachIterator(opts.getTableName(),
-          new IteratorSetting(1, ChunkCombiner.class));
+      IteratorSetting combiner = new IteratorSetting(1, ChunkCombiner.class);
+      if (!client.tableOperations().listIterators(opts.getTableName())
+          .containsKey(combiner.getName()))
+        client.tableOperations().attachIterator(opts.getTableName(), combiner);
 
       try (BatchWriter bw = client.createBatchWriter(opts.getTableName(),
           bwOpts.getBatchWriterConfig())) {
-        FileDataIngest fdi = new FileDataIngest(opts.chunkSize, opts.visibility);
-        for (String filename : opts.files) {
-          fdi.insertFileData(filename, bw);
-        }
+        FileDataIngest fdi = new FileDataIngest(opts.chunkSize, opts.visibility,
+            opts.compressionLevel);
+        if (opts.skipStored)
+          fdi.setStoredContentChecker(new StoredContentChecker(client, opts.getTableName(),
+              opts.auths, opts.visibility, opts.chunkSize));
+        fdi.insertFileData(opts.files, bw, opts.threads);
       }
     }
   }
@@ -17,9 +17,11 @@
 package org.apache.accumulo.examples.filedata;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.accumulo.core.client.AccumuloClient;
 import org.apache.accumulo.core.client.AccumuloException;
@@ -30,6 +32,7 @@ import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
@@ -37,28 +40,96 @@ import com.google.common.collect.PeekingIterator;
 /**
  * Retrieves file data based on the hash of the file. Used by the
  * {@link org.apache.accumulo.examples.dirlist.Viewer}. See README.dirlist for instructions.
+ * <p>
+ * By default chunks are fetched one at a time. When a read ahead size is given, chunks are fetched
+ * in batches of that size by a {@link ReadAheadIterator} while the current chunk is being read.
+ * <p>
+ * When a {@link ChunkCache} is set, chunks of files read before are taken from the cache instead of
+ * being fetched again, and only the refs of the file are read from the table.
+ * <p>
+ * Only {@link #readAsync(String, long, int)} may be called from more than one thread. The other
+ * methods share a single scanner and stream.
  */
-public class FileDataQuery {
+public class FileDataQuery implements AutoCloseable {
+  private static final int DEFAULT_MANIFEST_WINDOW = 16;
+  private static final int ASYNC_QUERY_THREADS = 8;
+  private static final long ASYNC_MAX_BATCH_BYTES = 16 * 1024 * 1024;
+
   List<Entry<Key,Value>> lastRefs;
   private final ChunkInputStream cis;
+  private final int readAhead;
+  private ReadAheadIterator lastReadAhead;
+  private final AccumuloClient client;
+  private final String tableName;
+  private final Authorizations auths;
+  private AsyncChunkReader asyncReader;
+  private ChunkCache chunkCache;
   Scanner scanner;
 
   public FileDataQuery(AccumuloClient client, String tableName, Authorizations auths)
       throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+    this(client, tableName, auths, 0);
+  }
+
+  /**
+   * @param readAhead
+   *          the number of chunks to fetch ahead of the reader, or 0 to fetch one chunk at a time
+   */
+  public FileDataQuery(AccumuloClient client, String tableName, Authorizations auths,
+      int readAhead) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+    if (readAhead < 0)
+      throw new IllegalArgumentException("read ahead must not be negative " + readAhead);
     lastRefs = new ArrayList<>();
     cis = new ChunkInputStream();
     scanner = client.createScanner(tableName, auths);
+    this.readAhead = readAhead;
+    this.client = client;
+    this.tableName = tableName;
+    this.auths = auths;
   }
 
   public List<Entry<Key,Value>> getLastRefs() {
     return lastRefs;
   }
 
+  /**
+   * Sets the cache used for the chunks of files read with {@link #getData(String)}, which may be
+   * shared with other queries. Null turns off caching.
+   */
+  public void setChunkCache(ChunkCache chunkCache) {
+    this.chunkCache = chunkCache;
+  }
+
+  public ChunkCache getChunkCache() {
+    return chunkCache;
+  }
+
   public ChunkInputStream getData(String hash) throws IOException {
     scanner.setRange(new Range(hash));
-    scanner.setBatchSize(1);
     lastRefs.clear();
-    PeekingIterator<Entry<Key,Value>> pi = Iterators.peekingIterator(scanner.iterator());
+    if (lastReadAhead != null) {
+      lastReadAhead.close();
+      lastReadAhead = null;
+    }
+    if (chunkCache != null)
+      return getCachedData(hash);
+    PeekingIterator<Entry<Key,Value>> pi;
+    if (readAhead > 0) {
+      // each read ahead has its own scanner, which its reader closes when it stops
+      Scanner s;
+      try {
+        s = client.createScanner(tableName, auths);
+      } catch (TableNotFoundException e) {
+        throw new IOException(e);
+      }
+      s.setRange(new Range(hash));
+      s.setBatchSize(readAhead);
+      s.setReadaheadThreshold(1);
+      pi = lastReadAhead = new ReadAheadIterator(s.iterator(), readAhead, s);
+    } else {
+      scanner.setBatchSize(1);
+      pi = Iterators.peekingIterator(scanner.iterator());
+    }
     if (pi.hasNext()) {
       while (!pi.peek().getKey().getColumnFamily().equals(FileDataIngest.CHUNK_CF)) {
         lastRefs.add(pi.peek());
@@ -70,6 +141,73 @@ public class FileDataQuery {
     return cis;
   }
 
+  private ChunkInputStream getCachedData(String hash) throws IOException {
+    Text row = new Text(hash);
+    // the entries of the row before its chunks are always read, since refs may be added
+    scanner.setRange(new Range(new Key(row), true, new Key(row, FileDataIngest.CHUNK_CF), false));
+    scanner.setBatchSize(1000);
+    for (Entry<Key,Value> entry : scanner)
+      lastRefs.add(entry);
+    scanner.setBatchSize(readAhead > 0 ? readAhead : 1);
+    PeekingIterator<Entry<Key,Value>> pi = new CachingChunkIterator(chunkCache, auths, hash,
+        range -> {
+          scanner.setRange(range);
+          return scanner.iterator();
+        });
+    cis.clear();
+    cis.setSource(pi);
+    return cis;
+  }
+
+  /**
+   * Opens a stream over the file with the given hash that can be positioned at any byte offset.
+   * Each call creates its own scanner, so the returned streams may be used independently.
+   */
+  public SeekableChunkInputStream getSeekableData(String hash)
+      throws IOException, TableNotFoundException {
+    Scanner s = client.createScanner(tableName, auths);
+    s.setBatchSize(readAhead > 0 ? readAhead : 1);
+    return new SeekableChunkInputStream(s, hash);
+  }
+
+  /**
+   * Opens a stream over a file written by {@link ContentDefinedIngest}, whose chunks are stored in
+   * the given chunk table.
+   */
+  public ManifestInputStream getManifestData(String hash, String chunkTable) throws IOException {
+    scanner.setRange(new Range(hash));
+    // manifest entries are small, so fetch many per batch
+    scanner.setBatchSize(1000);
+    lastRefs.clear();
+    PeekingIterator<Entry<Key,Value>> pi = Iterators.peekingIterator(scanner.iterator());
+    while (pi.hasNext()
+        && !pi.peek().getKey().getColumnFamily().equals(FileDataIngest.MANIFEST_CF)) {
+      lastRefs.add(pi.next());
+    }
+    ManifestInputStream mis = new ManifestInputStream(client, chunkTable, auths,
+        readAhead > 0 ? readAhead : DEFAULT_MANIFEST_WINDOW);
+    mis.setSource(pi);
+    return mis;
+  }
+
+  /**
+   * Reads part of a file without blocking. Reads from all threads are served together by an
+   * {@link AsyncChunkReader}, created on first use.
+   *
+   * @see AsyncChunkReader#read(String, long, int)
+   */
+  public CompletableFuture<ByteBuffer> readAsync(String hash, long offset, int length)
+      throws TableNotFoundException {
+    AsyncChunkReader reader;
+    synchronized (this) {
+      if (asyncReader == null)
+        asyncReader = new AsyncChunkReader(client, tableName, auths, ASYNC_QUERY_THREADS,
+            ASYNC_MAX_BATCH_BYTES);
+      reader = asyncReader;
+    }
+    return reader.read(hash, offset, length);
+  }
+
   public String getSomeData(String hash, int numBytes) throws IOException {
     ChunkInputStream is = getData(hash);
     byte[] buf = new byte[numBytes];
@@ -79,4 +217,19 @@ public class FileDataQuery {
       return "";
     }
   }
+
+  @Override
+  public void close() {
+    if (lastReadAhead != null) {
+      lastReadAhead.close();
+      lastReadAhead = null;
+    }
+    synchronized (this) {
+      if (asyncReader != null) {
+        asyncReader.close();
+        asyncReader = null;
+      }
+    }
+    scanner.close();
+  }
 }
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Checks the stored content of each file on the tablet server, so file data never leaves it. For
+ * each row, the chunks are checked to run from 0 without gaps up to an end marker, every chunk but
+ * the last is checked to be full, and the MD5 hash of the content is checked to match the row. A
+ * single {@code info:verify} entry is returned for each row, whose value is a {@link Status} name,
+ * followed by a short description of the problem if there is one.
+ * <p>
+ * Chunks stored with more than one visibility are checked once, and compressed chunks are
+ * decompressed. If the row has chunks of more than one size, each size is checked as a separate
+ * copy of the content. Rows that only have refs are reported as {@link Status#NO_CHUNKS}, and rows
+ * written by {@link ContentDefinedIngest}, which keep their chunks in another table, are skipped.
+ * <p>
+ * With {@link #FAILURES_ONLY_OPT} set to true, rows that are OK are not returned. As with
+ * {@link HistogramIterator}, whole rows are always read, and a seek that starts after the
+ * beginning of a row skips to the next row.
+ */
+public class FileVerificationIterator implements SortedKeyValueIterator<Key,Value> {
+
+  public static final Text VERIFY_CF = new Text("info");
+  public static final Text VERIFY_CQ = new Text("verify");
+  public static final String FAILURES_ONLY_OPT = "failuresOnly";
+
+  public enum Status {
+    OK, NO_CHUNKS, MISSING_CHUNKS, MISSING_END_MARKER, EXTRA_CHUNKS, BAD_CHUNK, HASH_MISMATCH
+  }
+
+  private static final Collection<ByteSequence> COLFS = Arrays.asList(FileDataIngest.REFS_CF_BS,
+      FileDataIngest.CHUNK_CF_BS, FileDataIngest.MANIFEST_CF_BS);
+
+  private SortedKeyValueIterator<Key,Value> source;
+  private boolean failuresOnly = false;
+  private final ChunkCodec codec = new ChunkCodec(0);
+  private MessageDigest md5digest;
+  private Key topKey;
+  private Value topValue;
+
+  // the state of the chunks of the current size in the row being checked
+  private final byte[] lastChunk = new byte[8];
+  private int chunkSize;
+  private int nextIndex;
+  private int lastLength;
+  private boolean sawEnd;
+  private Status status;
+  private String problem;
+
+  @Override
+  public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options,
+      IteratorEnvironment env) {
+    this.source = source;
+    if (options != null && options.containsKey(FAILURES_ONLY_OPT))
+      failuresOnly = Boolean.parseBoolean(options.get(FAILURES_ONLY_OPT));
+    try {
+      md5digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+    FileVerificationIterator copy = new FileVerificationIterator();
+    copy.init(source.deepCopy(env), null, env);
+    copy.failuresOnly = failuresOnly;
+    return copy;
+  }
+
+  @Override
+  public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive)
+      throws IOException {
+    Range rowRange = WholeRows.seekRange(range);
+    if (rowRange == null) {
+      topKey = null;
+      topValue = null;
+      return;
+    }
+    source.seek(rowRange, COLFS, true);
+    findTop();
+  }
+
+  private void findTop() throws IOException {
+    topKey = null;
+    topValue = null;
+    while (topKey == null && source.hasTop()) {
+      Text row = source.getTopKey().getRow();
+      Text vis = source.getTopKey().getColumnVisibility();
+      long ts = 0;
+      boolean sawRefs = false;
+      boolean sawManifest = false;
+      status = Status.OK;
+      problem = null;
+      chunkSize = -1;
+      while (source.hasTop() && source.getTopKey().compareRow(row) == 0) {
+        Key key = source.getTopKey();
+        ts = Math.max(ts, key.getTimestamp());
+        if (key.compareColumnFamily(FileDataIngest.REFS_CF) == 0)
+          sawRefs = true;
+        else if (key.compareColumnFamily(FileDataIngest.MANIFEST_CF) == 0)
+          sawManifest = true;
+        else if (key.compareColumnFamily(FileDataIngest.CHUNK_CF) == 0 && status == Status.OK)
+          checkChunk(row, key.getColumnQualifierData(), source.getTopValue());
+        source.next();
+      }
+
+      if (sawManifest || (chunkSize < 0 && status == Status.OK && !sawRefs))
+        continue;
+      if (chunkSize < 0 && status == Status.OK)
+        fail(Status.NO_CHUNKS, "refs without chunks");
+      else if (status == Status.OK)
+        finishChunks(row);
+      if (status == Status.OK && failuresOnly)
+        continue;
+      topKey = new Key(row, VERIFY_CF, VERIFY_CQ, vis, ts);
+      topValue = new Value(problem == null ? status.name() : status.name() + " " + problem);
+    }
+  }
+
+  private void checkChunk(Text row, ByteSequence cq, Value value) throws IOException {
+    if (cq.length() < 8) {
+      fail(Status.BAD_CHUNK, "short column qualifier");
+      return;
+    }
+    // the same chunk written with another visibility is sorted right after the first
+    if (chunkSize >= 0 && sameChunk(lastChunk, cq))
+      return;
+    for (int i = 0; i < 8; i++)
+      lastChunk[i] = cq.byteAt(i);
+    int size = FileDataIngest.bytesToInt(lastChunk, 0);
+    int index = FileDataIngest.bytesToInt(lastChunk, 4);
+
+    if (size != chunkSize) {
+      // the previous size was a complete copy of the file, check it before starting the next
+      if (chunkSize >= 0 && !finishChunks(row))
+        return;
+      chunkSize = size;
+      nextIndex = 0;
+      lastLength = size;
+      sawEnd = false;
+      md5digest.reset();
+    }
+
+    if (sawEnd) {
+      fail(Status.EXTRA_CHUNKS, "chunk " + index + " after end marker " + (nextIndex - 1));
+      return;
+    }
+    if (index != nextIndex) {
+      fail(Status.MISSING_CHUNKS, "expected chunk " + nextIndex + " but found " + index);
+      return;
+    }
+    nextIndex++;
+    if (value.getSize() == 0) {
+      sawEnd = true;
+      return;
+    }
+    if (lastLength != chunkSize) {
+      fail(Status.BAD_CHUNK, "chunk " + (index - 1) + " is " + lastLength + " of " + chunkSize
+          + " bytes but is not the last");
+      return;
+    }
+
+    byte[] data;
+    try {
+      data = codec.decompress(ChunkCodec.getCodec(cq), value.get(), chunkSize);
+    } catch (IOException e) {
+      fail(Status.BAD_CHUNK, "chunk " + index + " " + e.getMessage());
+      return;
+    }
+    if (data.length > chunkSize) {
+      fail(Status.BAD_CHUNK, "chunk " + index + " is larger than " + chunkSize + " bytes");
+      return;
+    }
+    lastLength = data.length;
+    md5digest.update(data);
+  }
+
+  /**
+   * Checks that the chunks of the current size ended with an end marker and match the row hash.
+   *
+   * @return true if they did
+   */
+  private boolean finishChunks(Text row) {
+    if (!sawEnd) {
+      fail(Status.MISSING_END_MARKER, "no end marker after chunk " + (nextIndex - 1));
+      return false;
+    }
+    String hash = FileDataIngest.hexString(md5digest.digest());
+    if (!hash.equals(row.toString())) {
+      fail(Status.HASH_MISMATCH, "content of chunk size " + chunkSize + " has hash " + hash);
+      return false;
+    }
+    return true;
+  }
+
+  private void fail(Status status, String problem) {
+    this.status = status;
+    this.problem = problem;
+  }
+
+  private static boolean sameChunk(byte[] cq1, ByteSequence cq2) {
+    for (int i = 0; i < 8; i++) {
+      if (cq1[i] != cq2.byteAt(i))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean hasTop() {
+    return topKey != null;
+  }
+
+  @Override
+  public void next() throws IOException {
+    findTop();
+  }
+
+  @Override
+  public Key getTopKey() {
+    return topKey;
+  }
+
+  @Override
+  public Value getTopValue() {
+    return topValue;
+  }
+}
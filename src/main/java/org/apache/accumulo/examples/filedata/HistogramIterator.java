@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Combiner;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.user.SummingArrayCombiner;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Computes the byte histogram of each file on the tablet server, so file data never leaves it.
+ * For each row with chunks, this iterator returns a single {@code info:hist} entry whose value is
+ * the count of each of the 256 byte values in the file, in the same encoding
+ * {@link CharacterHistogram} stores. Chunks stored with more than one visibility are counted once,
+ * and compressed chunks are decompressed. The entry has the visibility and latest timestamp of the
+ * file's chunks.
+ * <p>
+ * Whole rows are always read, and a seek that starts after the beginning of a row skips to the next
+ * row, since that row's entry was already returned. A seek that ends in the middle of a row reads
+ * that whole row. Like {@link ChunkInputStream}, only the chunks of the first chunk size in a row
+ * are counted.
+ * <p>
+ * Histograms written to {@code info:histTotal} can be added together, into a total for many
+ * files, by the combiner from {@link #combinerSetting(int)}. The per file {@code info:hist}
+ * entries are left alone, so computing them again replaces them.
+ */
+public class HistogramIterator implements SortedKeyValueIterator<Key,Value> {
+
+  public static final Text HIST_CF = new Text("info");
+  public static final Text HIST_CQ = new Text("hist");
+  public static final Text HIST_TOTAL_CQ = new Text("histTotal");
+
+  private static final Collection<ByteSequence> CHUNK_COLF = Collections
+      .singleton(FileDataIngest.CHUNK_CF_BS);
+
+  private SortedKeyValueIterator<Key,Value> source;
+  private final ChunkCodec codec = new ChunkCodec(0);
+  private final long[] hist = new long[256];
+  // the size and number of the last chunk counted
+  private final byte[] lastChunk = new byte[8];
+  private Key topKey;
+  private Value topValue;
+
+  /**
+   * @return a setting for a combiner that adds together histograms written to
+   *         {@code info:histTotal}
+   */
+  public static IteratorSetting combinerSetting(int priority) {
+    IteratorSetting setting = new IteratorSetting(priority, "histogramCombiner",
+        SummingArrayCombiner.class);
+    SummingArrayCombiner.setEncodingType(setting, SummingArrayCombiner.Type.STRING);
+    Combiner.setColumns(setting,
+        Collections.singletonList(new IteratorSetting.Column(HIST_CF, HIST_TOTAL_CQ)));
+    return setting;
+  }
+
+  /**
+   * @return a histogram in the encoding used for {@code info:hist} values
+   */
+  public static Value encode(long[] hist) {
+    List<Long> counts = new ArrayList<>(hist.length);
+    for (long count : hist)
+      counts.add(count);
+    return new Value(SummingArrayCombiner.STRING_ARRAY_ENCODER.encode(counts));
+  }
+
+  /**
+   * @return the histogram in an {@code info:hist} value
+   */
+  public static long[] decode(Value value) {
+    List<Long> counts = SummingArrayCombiner.STRING_ARRAY_ENCODER.decode(value.get());
+    long[] hist = new long[counts.size()];
+    for (int i = 0; i < hist.length; i++)
+      hist[i] = counts.get(i);
+    return hist;
+  }
+
+  @Override
+  public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options,
+      IteratorEnvironment env) {
+    this.source = source;
+  }
+
+  @Override
+  public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+    HistogramIterator copy = new HistogramIterator();
+    copy.source = source.deepCopy(env);
+    return copy;
+  }
+
+  @Override
+  public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive)
+      throws IOException {
+    Range rowRange = WholeRows.seekRange(range);
+    if (rowRange == null) {
+      topKey = null;
+      topValue = null;
+      return;
+    }
+    source.seek(rowRange, CHUNK_COLF, true);
+    findTop();
+  }
+
+  private void findTop() throws IOException {
+    topKey = null;
+    topValue = null;
+    while (topKey == null && source.hasTop()) {
+      Text row = source.getTopKey().getRow();
+      Text vis = source.getTopKey().getColumnVisibility();
+      long ts = 0;
+      Arrays.fill(hist, 0);
+      boolean sawChunk = false;
+      // like ChunkInputStream, only the chunks of the first chunk size in the row are read
+      int chunkSize = -1;
+      while (source.hasTop() && source.getTopKey().compareRow(row) == 0) {
+        Key key = source.getTopKey();
+        ByteSequence cq = key.getColumnQualifierData();
+        ts = Math.max(ts, key.getTimestamp());
+        // the same chunk written with another visibility is sorted right after the first
+        if (key.compareColumnFamily(FileDataIngest.CHUNK_CF) == 0 && cq.length() >= 8
+            && !(sawChunk && sameChunk(lastChunk, cq))) {
+          for (int i = 0; i < 8; i++)
+            lastChunk[i] = cq.byteAt(i);
+          if (chunkSize == -1)
+            chunkSize = FileDataIngest.bytesToInt(lastChunk, 0);
+          if (chunkSize == FileDataIngest.bytesToInt(lastChunk, 0)) {
+            byte[] data = codec.decompress(ChunkCodec.getCodec(cq), source.getTopValue().get(),
+                chunkSize);
+            for (byte b : data)
+              hist[b & 0xff]++;
+            sawChunk = true;
+          }
+        }
+        source.next();
+      }
+      if (sawChunk) {
+        topKey = new Key(row, HIST_CF, HIST_CQ, vis, ts);
+        topValue = encode(hist);
+      }
+    }
+  }
+
+  private static boolean sameChunk(byte[] cq1, ByteSequence cq2) {
+    for (int i = 0; i < 8; i++) {
+      if (cq1[i] != cq2.byteAt(i))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean hasTop() {
+    return topKey != null;
+  }
+
+  @Override
+  public void next() throws IOException {
+    findTop();
+  }
+
+  @Override
+  public Key getTopKey() {
+    return topKey;
+  }
+
+  @Override
+  public Value getTopValue() {
+    return topValue;
+  }
+}
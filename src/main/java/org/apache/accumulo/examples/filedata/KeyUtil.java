@@ -16,7 +16,7 @@
  */
 package org.apache.accumulo.examples.filedata;
 
-import java.util.ArrayList;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import org.apache.hadoop.io.Text;
 
@@ -36,8 +36,9 @@ public class KeyUtil {
   public static Text buildNullSepText(String... s) {
     Text t = new Text(s[0]);
     for (int i = 1; i < s.length; i++) {
+      byte[] b = s[i].getBytes(UTF_8);
       t.append(nullbyte, 0, 1);
-      t.append(s[i].getBytes(), 0, s[i].length());
+      t.append(b, 0, b.length);
     }
     return t;
   }
@@ -50,16 +51,23 @@ public class KeyUtil {
    * @return an array of strings
    */
   public static String[] splitNullSepText(Text t) {
-    ArrayList<String> s = new ArrayList<>();
     byte[] b = t.getBytes();
+    int length = t.getLength();
+    // count the fields first, so the strings go straight into an array of the right size
+    int fields = 1;
+    for (int i = 0; i < length; i++)
+      if (b[i] == (byte) 0)
+        fields++;
+    String[] s = new String[fields];
+    int field = 0;
     int lastindex = 0;
-    for (int i = 0; i < t.getLength(); i++) {
+    for (int i = 0; i < length; i++) {
       if (b[i] == (byte) 0) {
-        s.add(new String(b, lastindex, i - lastindex));
+        s[field++] = new String(b, lastindex, i - lastindex, UTF_8);
         lastindex = i + 1;
       }
     }
-    s.add(new String(b, lastindex, t.getLength() - lastindex));
-    return s.toArray(new String[s.size()]);
+    s[field] = new String(b, lastindex, length - lastindex, UTF_8);
+    return s;
   }
 }
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * An input stream over a file written by {@link ContentDefinedIngest}. The manifest entries of the
+ * file are read from the data table and the chunks they name are looked up in the chunk table, a
+ * window of chunks at a time, with a batch scanner. Like {@link ChunkInputStream}, reading fails
+ * with an IOException if a chunk is missing or the manifest has entries after its end marker.
+ */
+public class ManifestInputStream extends InputStream {
+
+  /**
+   * Looks up the data of chunks by their hash.
+   */
+  interface ChunkFetcher {
+    /**
+     * @return the data of each chunk found, by its hash
+     */
+    Map<String,byte[]> fetch(Collection<String> hashes) throws IOException;
+  }
+
+  private final ChunkFetcher fetcher;
+  private final int window;
+
+  private PeekingIterator<Entry<Key,Value>> source;
+  private Text currentRow;
+  private int nextIndex;
+  private boolean gotEndMarker;
+  private final ArrayDeque<String> pending = new ArrayDeque<>();
+  private Map<String,byte[]> fetched = Collections.emptyMap();
+
+  private byte[] buf;
+  private int count;
+  private int pos;
+
+  /**
+   * @param window
+   *          the number of manifest entries whose chunks are fetched together
+   */
+  public ManifestInputStream(AccumuloClient client, String chunkTable, Authorizations auths,
+      int window) {
+    this(hashes -> fetchChunks(client, chunkTable, auths, hashes), window);
+  }
+
+  ManifestInputStream(ChunkFetcher fetcher, int window) {
+    if (window < 1)
+      throw new IllegalArgumentException("window must be positive " + window);
+    this.fetcher = fetcher;
+    this.window = window;
+  }
+
+  private static Map<String,byte[]> fetchChunks(AccumuloClient client, String chunkTable,
+      Authorizations auths, Collection<String> hashes) throws IOException {
+    List<Range> ranges = new ArrayList<>(hashes.size());
+    for (String hash : hashes)
+      ranges.add(new Range(hash));
+    Map<String,byte[]> chunks = new HashMap<>();
+    try (BatchScanner bs = client.createBatchScanner(chunkTable, auths)) {
+      bs.setRanges(ranges);
+      bs.fetchColumnFamily(FileDataIngest.CHUNK_CF);
+      for (Entry<Key,Value> e : bs)
+        chunks.put(e.getKey().getRow().toString(), e.getValue().get());
+    } catch (TableNotFoundException e) {
+      throw new IOException(e);
+    }
+    return chunks;
+  }
+
+  /**
+   * Starts reading the file in the row of the next entry of the source. Entries of that row that
+   * are not manifest entries are skipped.
+   */
+  public void setSource(PeekingIterator<Entry<Key,Value>> in) throws IOException {
+    if (source != null)
+      throw new IOException("setting new source without closing old one");
+    source = in;
+    currentRow = null;
+    nextIndex = 0;
+    gotEndMarker = false;
+    pending.clear();
+    fetched = Collections.emptyMap();
+    buf = null;
+    count = pos = 0;
+    if (source.hasNext())
+      currentRow = source.peek().getKey().getRow();
+    else
+      gotEndMarker = true;
+  }
+
+  private boolean inCurrentRow() {
+    return source.hasNext() && source.peek().getKey().compareRow(currentRow) == 0;
+  }
+
+  /**
+   * Reads the next window of manifest entries and fetches the chunks they name.
+   */
+  private void readManifest() throws IOException {
+    while (pending.size() < window && !gotEndMarker && inCurrentRow()) {
+      Entry<Key,Value> entry = source.next();
+      Key key = entry.getKey();
+      if (!key.getColumnFamilyData().equals(FileDataIngest.MANIFEST_CF_BS))
+        continue;
+      int index = FileDataIngest.bytesToInt(key.getColumnQualifierData().toArray(), 0);
+      if (index == nextIndex - 1)
+        continue; // the same entry with a different visibility
+      if (index != nextIndex)
+        throw new IOException("missing manifest entries between " + (nextIndex - 1) + " and "
+            + index + " for " + currentRow);
+      nextIndex++;
+      if (entry.getValue().getSize() == 0)
+        gotEndMarker = true;
+      else
+        pending.add(entry.getValue().toString());
+    }
+
+    fetched = pending.isEmpty() ? Collections.emptyMap() : fetcher.fetch(pending);
+  }
+
+  /**
+   * Reads the rest of the row after the end marker, failing if the manifest lists more chunks.
+   */
+  private void checkEnd() throws IOException {
+    while (inCurrentRow()) {
+      Key key = source.next().getKey();
+      if (key.getColumnFamilyData().equals(FileDataIngest.MANIFEST_CF_BS)
+          && FileDataIngest.bytesToInt(key.getColumnQualifierData().toArray(), 0) != nextIndex - 1)
+        throw new IOException("found extra manifest entry after end marker for " + currentRow);
+    }
+  }
+
+  private int fill() throws IOException {
+    if (pending.isEmpty()) {
+      if (source == null)
+        return -1;
+      if (!gotEndMarker)
+        readManifest();
+      if (pending.isEmpty()) {
+        if (!gotEndMarker)
+          throw new IOException("got to the end of the manifest without end marker " + currentRow);
+        checkEnd();
+        return -1;
+      }
+    }
+    String hash = pending.remove();
+    buf = fetched.get(hash);
+    if (buf == null)
+      throw new IOException("missing chunk " + hash + " for " + currentRow);
+    pos = 0;
+    return count = buf.length;
+  }
+
+  @Override
+  public int read() throws IOException {
+    while (pos >= count) {
+      if (fill() < 0)
+        return -1;
+    }
+    return buf[pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (b == null) {
+      throw new NullPointerException();
+    } else if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    } else if (len == 0) {
+      return 0;
+    }
+
+    int total = 0;
+    while (total < len) {
+      if (pos >= count && fill() < 0)
+        return total == 0 ? -1 : total;
+      int cnt = Math.min(count - pos, len - total);
+      System.arraycopy(buf, pos, b, off + total, cnt);
+      pos += cnt;
+      total += cnt;
+    }
+    return total;
+  }
+
+  /**
+   * Skips the rest of the current row in the source so the next file can be read.
+   */
+  @Override
+  public void close() throws IOException {
+    if (source != null && currentRow != null) {
+      while (inCurrentRow())
+        source.next();
+    }
+    source = null;
+    pending.clear();
+    fetched = Collections.emptyMap();
+    buf = null;
+    count = pos = 0;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+
+import com.google.common.collect.PeekingIterator;
+
+/**
+ * A peeking iterator that pulls entries from a source iterator on a background thread into a
+ * bounded buffer. Wrapping a scanner iterator with this lets a {@link ChunkInputStream} consume
+ * one chunk while the next chunks are already being fetched from the tablet servers. The order of
+ * the entries is unchanged, so all of the chunk validation done by {@link ChunkInputStream} still
+ * applies.
+ * <p>
+ * The background reader stops when the source is exhausted or the iterator is closed, and then
+ * closes the resource given for the source, such as the scanner it came from. A consumer that stops
+ * early must close the iterator, or the reader stays blocked on the full buffer and the scan stays
+ * open.
+ */
+public class ReadAheadIterator implements PeekingIterator<Entry<Key,Value>>, AutoCloseable {
+
+  private static final Entry<Key,Value> END = new AbstractMap.SimpleImmutableEntry<>(null, null);
+
+  private final BlockingQueue<Entry<Key,Value>> queue;
+  private final Thread reader;
+  private final AutoCloseable resource;
+  private volatile RuntimeException error = null;
+  private volatile boolean closed = false;
+  private Entry<Key,Value> next = null;
+
+  /**
+   * @param source
+   *          the iterator to read ahead on, typically a scanner iterator
+   * @param bufferSize
+   *          the maximum number of entries to buffer ahead of the consumer
+   */
+  public ReadAheadIterator(Iterator<Entry<Key,Value>> source, int bufferSize) {
+    this(source, bufferSize, null);
+  }
+
+  /**
+   * @param source
+   *          the iterator to read ahead on, typically a scanner iterator
+   * @param bufferSize
+   *          the maximum number of entries to buffer ahead of the consumer
+   * @param resource
+   *          closed by the background reader once it stops reading the source, or null
+   */
+  public ReadAheadIterator(Iterator<Entry<Key,Value>> source, int bufferSize,
+      AutoCloseable resource) {
+    if (bufferSize < 1)
+      throw new IllegalArgumentException("buffer size must be positive " + bufferSize);
+    this.resource = resource;
+    queue = new ArrayBlockingQueue<>(bufferSize);
+    reader = new Thread(() -> readAhead(source), "chunk read ahead");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  private void readAhead(Iterator<Entry<Key,Value>> source) {
+    try {
+      while (!closed && source.hasNext()) {
+        queue.put(source.next());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (RuntimeException e) {
+      error = e;
+    } finally {
+      release();
+    }
+    try {
+      queue.put(END);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void release() {
+    if (resource == null)
+      return;
+    try {
+      resource.close();
+    } catch (Exception e) {
+      if (error == null)
+        error = new IllegalStateException("failed to close read ahead source", e);
+    }
+  }
+
+  private Entry<Key,Value> fetch() {
+    if (next == null) {
+      if (closed)
+        throw new IllegalStateException("read ahead iterator is closed");
+      try {
+        next = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted waiting for read ahead", e);
+      }
+    }
+    if (next == END && error != null)
+      throw error;
+    return next;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return fetch() != END;
+  }
+
+  @Override
+  public Entry<Key,Value> peek() {
+    Entry<Key,Value> e = fetch();
+    if (e == END)
+      throw new NoSuchElementException();
+    return e;
+  }
+
+  @Override
+  public Entry<Key,Value> next() {
+    Entry<Key,Value> e = peek();
+    next = null;
+    return e;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops the background reader and discards anything it has buffered. The reader closes the
+   * resource of the source when it stops, which may be after this returns.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    reader.interrupt();
+    queue.clear();
+    next = null;
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * A {@link ChunkInputStream} over a single file that supports jumping to any byte offset. The
+ * chunk qualifier encodes the chunk size and chunk number, so the chunk holding an offset can be
+ * computed directly and the scanner re-seeked to that chunk instead of reading every chunk before
+ * it.
+ */
+public class SeekableChunkInputStream extends ChunkInputStream {
+
+  private final Scanner scanner;
+  private final Text row;
+  private int chunkSize = -1;
+  private byte[] chunkSizeBytes;
+  private long position = 0;
+  // the last chunk of the file with data, once a seek past the end has found it
+  private int lastChunk = -1;
+
+  /**
+   * @param scanner
+   *          a scanner over the data table, used exclusively by this stream
+   * @param hash
+   *          the hash of the file to read
+   */
+  public SeekableChunkInputStream(Scanner scanner, String hash) throws IOException {
+    this.scanner = scanner;
+    this.row = new Text(hash);
+    seek(0);
+  }
+
+  /**
+   * Finds the chunk size of the file from its first chunk key. When more than one chunk size is
+   * stored for a file, the smallest is used, as {@link ChunkInputStream} does.
+   *
+   * @return false if the file has no chunks
+   */
+  private boolean findChunkSize() {
+    scanner.setRange(Range.prefix(row, FileDataIngest.CHUNK_CF));
+    Iterator<Entry<Key,Value>> iter = scanner.iterator();
+    if (!iter.hasNext())
+      return false;
+    byte[] cq = iter.next().getKey().getColumnQualifierData().toArray();
+    chunkSize = FileDataIngest.bytesToInt(cq, 0);
+    chunkSizeBytes = FileDataIngest.intToBytes(chunkSize);
+    return true;
+  }
+
+  /**
+   * Positions the stream so the next read returns the byte at the given offset. Seeking past the
+   * end of the file leaves the stream at end of file, with its position at the length of the file.
+   * The first seek past the end finds the last chunk of the file with a binary search, which takes
+   * a scan for each halving of the chunk numbers; the last chunk is remembered, so later seeks past
+   * the end take one scan.
+   *
+   * @param offset
+   *          the byte offset into the file
+   */
+  public void seek(long offset) throws IOException {
+    if (offset < 0)
+      throw new IOException("negative seek offset " + offset);
+    clear();
+    position = offset;
+    if (chunkSize < 0 && !findChunkSize()) {
+      gotEndMarker = true;
+      position = 0;
+      return;
+    }
+    if (chunkSize == 0)
+      throw new IOException("invalid chunk size 0 for " + row);
+
+    long chunk = offset / chunkSize;
+    if (chunk > Integer.MAX_VALUE || (lastChunk >= 0 && chunk > lastChunk)) {
+      position = seekToEnd(Math.min(chunk, (long) Integer.MAX_VALUE + 1));
+    } else if (!seekChunk((int) chunk)) {
+      position = seekToEnd(chunk);
+    } else if (count == 0) {
+      // the end marker, which may follow a partial last chunk
+      position = seekToEnd(chunk + 1);
+    } else {
+      pos = (int) Math.min(offset % chunkSize, count);
+      position = chunk * chunkSize + pos;
+    }
+  }
+
+  /**
+   * Positions the source at the start of the given chunk.
+   *
+   * @return false if the file has no chunk with that number or a later one
+   */
+  private boolean seekChunk(int chunk) throws IOException {
+    clear();
+    Text chunkCQ = new Text(chunkSizeBytes);
+    chunkCQ.append(FileDataIngest.intToBytes(chunk), 0, 4);
+    Range chunks = Range.prefix(row, FileDataIngest.CHUNK_CF, new Text(chunkSizeBytes));
+    scanner.setRange(new Range(new Key(row, FileDataIngest.CHUNK_CF, chunkCQ), true,
+        chunks.getEndKey(), chunks.isEndKeyInclusive()));
+    Iterator<Entry<Key,Value>> iter = scanner.iterator();
+    if (!iter.hasNext()) {
+      gotEndMarker = true;
+      return false;
+    }
+    setSource(Iterators.peekingIterator(iter), chunk);
+    return true;
+  }
+
+  /**
+   * Positions the stream at the end of the file.
+   *
+   * @return the length of the file
+   */
+  private long seekToEnd(long missingChunk) throws IOException {
+    if (lastChunk < 0)
+      lastChunk = findLastChunk(missingChunk);
+    if (!seekChunk(lastChunk))
+      throw new IOException("missing chunk " + lastChunk + " for " + row);
+    pos = count;
+    return (long) lastChunk * chunkSize + count;
+  }
+
+  /**
+   * Finds the last chunk of the file with data, or chunk 0 for an empty file, with a binary search
+   * over the chunk numbers below one the file does not have. This takes one scan per halving, up to
+   * about 31 for a file with very many chunks.
+   */
+  private int findLastChunk(long missingChunk) throws IOException {
+    // chunk 0 always exists once the chunk size is known
+    long lo = 0;
+    long hi = missingChunk;
+    while (hi - lo > 1) {
+      long mid = (lo + hi) >>> 1;
+      if (seekChunk((int) mid))
+        lo = mid;
+      else
+        hi = mid;
+    }
+    int last = (int) lo;
+    // the last chunk is normally the empty end marker, after the last chunk with data
+    if (last > 0 && seekChunk(last) && count == 0)
+      last--;
+    return last;
+  }
+
+  /**
+   * @return the offset of the next byte that will be read
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b >= 0)
+      position++;
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int read = super.read(b, off, len);
+    if (read > 0)
+      position += read;
+    return read;
+  }
+
+  /**
+   * Skips forward by seeking, so skipping does not read the chunks in between.
+   *
+   * @return the number of bytes skipped, which is less than n at the end of the file
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0)
+      return 0;
+    long start = position;
+    seek(n > Long.MAX_VALUE - start ? Long.MAX_VALUE : start + n);
+    return position - start;
+  }
+
+  /**
+   * Releases the current source without reading the rest of the file.
+   */
+  @Override
+  public void close() {
+    clear();
+  }
+}
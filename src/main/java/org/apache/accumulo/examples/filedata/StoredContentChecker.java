@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Finds which files already have their content stored in a data table, so {@link FileDataIngest}
+ * can write only a new ref for them instead of all of their chunks. Content counts as stored when
+ * the end marker for its length and the ingest chunk size is present, since that is written after
+ * all of the chunks. The marker must also have the visibility files are ingested with, so a new ref
+ * never points at chunks that its readers can not see. Content stored with another chunk size or
+ * visibility, or with a visibility the given authorizations can not see, is not found and is
+ * written again.
+ * <p>
+ * The lookups for many files are made together with one batch scanner. Hashes that are found, or
+ * that are being written by this ingest, are remembered so files with the same content are not
+ * looked up again.
+ */
+public class StoredContentChecker {
+
+  // the most hashes remembered, so a very large ingest does not hold every hash in memory
+  private static final int MAX_KNOWN = 100_000;
+
+  private final AccumuloClient client;
+  private final String tableName;
+  private final Authorizations auths;
+  private final ByteSequence visibility;
+  private final int chunkSize;
+  private final Set<String> known = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param cv
+   *          the visibility files are ingested with
+   * @param chunkSize
+   *          the chunk size files are ingested with
+   */
+  public StoredContentChecker(AccumuloClient client, String tableName, Authorizations auths,
+      ColumnVisibility cv, int chunkSize) {
+    this.client = client;
+    this.tableName = tableName;
+    this.auths = auths;
+    this.visibility = new ArrayByteSequence(cv.getExpression());
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * @return the key of the end marker written after the chunks of content with the given hash and
+   *         size, or null if the content has too many chunks to be stored
+   */
+  static Key endMarker(String hash, long size, int chunkSize) {
+    long numChunks = (size + chunkSize - 1) / chunkSize;
+    if (numChunks > Integer.MAX_VALUE)
+      return null;
+    Text cq = new Text(FileDataIngest.intToBytes(chunkSize));
+    cq.append(FileDataIngest.intToBytes((int) numChunks), 0, 4);
+    return new Key(new Text(hash), FileDataIngest.CHUNK_CF, cq);
+  }
+
+  /**
+   * @return true if the given entry is an end marker with the ingest visibility
+   */
+  boolean matches(Key key, Value value) {
+    return value.getSize() == 0 && visibility.equals(key.getColumnVisibilityData());
+  }
+
+  /**
+   * @return true if content with the given hash and size is already stored
+   */
+  public boolean isStored(String hash, long size) throws IOException {
+    return findStored(Collections.singletonMap(hash, size)).contains(hash);
+  }
+
+  /**
+   * @param sizes
+   *          the size of the content with each hash
+   * @return the hashes whose content is already stored
+   */
+  public Set<String> findStored(Map<String,Long> sizes) throws IOException {
+    Set<String> stored = new HashSet<>();
+    List<Range> ranges = new ArrayList<>();
+    for (Entry<String,Long> entry : sizes.entrySet()) {
+      if (known.contains(entry.getKey())) {
+        stored.add(entry.getKey());
+        continue;
+      }
+      Key marker = endMarker(entry.getKey(), entry.getValue(), chunkSize);
+      if (marker != null)
+        ranges.add(Range.exact(marker.getRow(), marker.getColumnFamily(),
+            marker.getColumnQualifier()));
+    }
+    if (ranges.isEmpty())
+      return stored;
+
+    try (BatchScanner bs = client.createBatchScanner(tableName, auths)) {
+      bs.setRanges(ranges);
+      for (Entry<Key,Value> entry : bs) {
+        if (matches(entry.getKey(), entry.getValue())) {
+          String hash = entry.getKey().getRow().toString();
+          stored.add(hash);
+          markStored(hash);
+        }
+      }
+    } catch (TableNotFoundException e) {
+      throw new IOException("table " + tableName + " does not exist", e);
+    }
+    return stored;
+  }
+
+  /**
+   * Records that content with the given hash is stored, or is being written, with the ingest
+   * visibility, so later files with the same content are not looked up.
+   */
+  public void markStored(String hash) {
+    if (known.size() < MAX_KNOWN)
+      known.add(hash);
+  }
+}
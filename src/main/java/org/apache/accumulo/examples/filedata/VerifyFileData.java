@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.examples.cli.ClientOnRequiredTable;
+import org.apache.accumulo.examples.filedata.FileVerificationIterator.Status;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Checks the stored content of every file in a data table with a {@link FileVerificationIterator},
+ * reading all tablets in parallel with a batch scanner. Only the status of each file is sent back
+ * from the tablet servers.
+ */
+public class VerifyFileData {
+
+  /**
+   * Verifies every file in a table.
+   *
+   * @param failuresOnly
+   *          if true, only files with problems are passed to the consumer
+   * @param consumer
+   *          accepts the hash of each file and its status entry value
+   * @return the number of files with each status
+   */
+  public static Map<Status,Long> verify(AccumuloClient client, String tableName,
+      Authorizations auths, int numThreads, boolean failuresOnly,
+      BiConsumer<String,String> consumer) throws TableNotFoundException {
+    IteratorSetting setting = new IteratorSetting(100, FileVerificationIterator.class);
+    setting.addOption(FileVerificationIterator.FAILURES_ONLY_OPT,
+        Boolean.toString(failuresOnly));
+    Map<Status,Long> counts = new EnumMap<>(Status.class);
+    try (BatchScanner bs = client.createBatchScanner(tableName, auths, numThreads)) {
+      bs.addScanIterator(setting);
+      // the batch scanner splits the range at tablet boundaries and reads the tablets in parallel
+      bs.setRanges(Collections.singleton(new Range()));
+      for (Entry<Key,Value> entry : bs) {
+        String result = entry.getValue().toString();
+        int space = result.indexOf(' ');
+        Status status = Status.valueOf(space < 0 ? result : result.substring(0, space));
+        counts.merge(status, 1L, Long::sum);
+        consumer.accept(entry.getKey().getRow().toString(), result);
+      }
+    }
+    return counts;
+  }
+
+  static class Opts extends ClientOnRequiredTable {
+    @Parameter(names = "--threads", description = "number of tablets to read concurrently")
+    int threads = 10;
+
+    @Parameter(names = "--failuresOnly", description = "only print files with problems")
+    boolean failuresOnly = false;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Opts opts = new Opts();
+    opts.parseArgs(VerifyFileData.class.getName(), args);
+
+    try (AccumuloClient client = opts.createAccumuloClient()) {
+      Map<Status,Long> counts = verify(client, opts.getTableName(), opts.auths, opts.threads,
+          opts.failuresOnly, (hash, result) -> System.out.println(hash + " " + result));
+      for (Entry<Status,Long> entry : counts.entrySet())
+        System.out.println(entry.getKey() + ": " + entry.getValue());
+    }
+  }
+}
@@ -16,93 +16,222 @@
  */
 package org.apache.accumulo.examples.filedata;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
+import org.apache.accumulo.core.data.ArrayByteSequence;
 import org.apache.accumulo.core.data.ByteSequence;
 
 /**
  * A utility for merging visibilities into the form {@code (VIS1)|(VIS2)|...|(VISN)}. Used by the
  * {@link ChunkCombiner}.
+ * <p>
+ * Each visibility is split into its top level OR terms, and each term into its AND conjuncts,
+ * working directly on the bytes. Duplicate terms and terms subsumed by a term with a subset of
+ * their conjuncts are dropped, so {@code A|(A&B)} combines to {@code (A)}. Each remaining term is
+ * written as its sorted conjuncts joined with {@code &}, so equivalent terms always produce the
+ * same output. Empty visibilities are ignored. Conjuncts are compared as normalized bytes, so the
+ * simplification is exact but does not find every equivalent expression.
  */
 public class VisibilityCombiner {
 
-  private final TreeSet<String> visibilities = new TreeSet<>();
+  private static final Comparator<ByteSequence> BYTES_ORDER = ByteSequence::compareTo;
+
+  private final Set<ByteSequence> inputs = new HashSet<>();
+  private final Map<Set<ByteSequence>,byte[]> cache;
+
+  public VisibilityCombiner() {
+    this(null);
+  }
+
+  /**
+   * @param cache
+   *          results keyed by the set of visibilities combined, or null to not cache
+   */
+  public VisibilityCombiner(Map<Set<ByteSequence>,byte[]> cache) {
+    this.cache = cache;
+  }
 
   void add(ByteSequence cv) {
     if (cv.length() == 0)
       return;
+    // validate now so a bad visibility is reported when it is added
+    findEnd(cv, 0, cv.length(), (byte) 0);
+    inputs.add(new ArrayByteSequence(cv.toArray()));
+  }
 
-    int depth = 0;
-    int offset = 0;
+  byte[] get() {
+    byte[] result = cache == null ? null : cache.get(inputs);
+    if (result == null) {
+      result = combine();
+      if (cache != null)
+        cache.put(Set.copyOf(inputs), result);
+    }
+    return result;
+  }
 
-    for (int i = 0; i < cv.length(); i++) {
-      switch (cv.byteAt(i)) {
-        case '(':
-          depth++;
-          break;
-        case ')':
-          depth--;
-          if (depth < 0)
-            throw new IllegalArgumentException("Invalid vis " + cv);
-          break;
-        case '|':
-          if (depth == 0) {
-            insert(cv.subSequence(offset, i));
-            offset = i + 1;
-          }
+  private static class Term {
+    final TreeSet<ByteSequence> conjuncts = new TreeSet<>(BYTES_ORDER);
+    private ByteSequence text;
+
+    /**
+     * @return the sorted conjuncts joined with {@code &}
+     */
+    ByteSequence text() {
+      if (text == null) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteSequence conjunct : conjuncts) {
+          if (out.size() > 0)
+            out.write('&');
+          out.write(conjunct.getBackingArray(), conjunct.offset(), conjunct.length());
+        }
+        text = new ArrayByteSequence(out.toByteArray());
+      }
+      return text;
+    }
+  }
 
+  private byte[] combine() {
+    List<Term> terms = new ArrayList<>();
+    for (ByteSequence cv : inputs)
+      addTerms(cv, terms);
+
+    // smaller terms first, so a term is only compared against terms that could subsume it
+    terms.sort(Comparator.<Term>comparingInt(t -> t.conjuncts.size())
+        .thenComparing(Term::text, BYTES_ORDER));
+    List<Term> kept = new ArrayList<>();
+    for (Term term : terms) {
+      boolean subsumed = false;
+      for (Term k : kept) {
+        if (term.conjuncts.containsAll(k.conjuncts)) {
+          subsumed = true;
           break;
+        }
       }
+      if (!subsumed)
+        kept.add(term);
     }
 
-    insert(cv.subSequence(offset, cv.length()));
-
-    if (depth != 0)
-      throw new IllegalArgumentException("Invalid vis " + cv);
-
+    kept.sort(Comparator.comparing(Term::text, BYTES_ORDER));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    String sep = "";
+    for (Term term : kept) {
+      out.writeBytes(sep.getBytes());
+      sep = "|";
+      ByteSequence text = term.text();
+      out.write('(');
+      out.write(text.getBackingArray(), text.offset(), text.length());
+      out.write(')');
+    }
+    return out.toByteArray();
   }
 
-  private void insert(ByteSequence cv) {
-    for (int i = 0; i < cv.length(); i++) {
-
+  /**
+   * Splits a visibility into its OR terms, looking inside parentheses that wrap the whole thing.
+   */
+  private static void addTerms(ByteSequence cv, List<Term> terms) {
+    cv = unwrap(cv);
+    int offset = 0;
+    int end;
+    while ((end = findEnd(cv, offset, cv.length(), (byte) '|')) < cv.length()) {
+      addTerms(cv.subSequence(offset, end), terms);
+      offset = end + 1;
+    }
+    if (offset > 0) {
+      addTerms(cv.subSequence(offset, cv.length()), terms);
+      return;
     }
 
-    String cvs = cv.toString();
-
-    if (cvs.charAt(0) != '(')
-      cvs = "(" + cvs + ")";
-    else {
-      int depth = 0;
-      int depthZeroCloses = 0;
-      for (int i = 0; i < cv.length(); i++) {
-        switch (cv.byteAt(i)) {
-          case '(':
-            depth++;
-            break;
-          case ')':
-            depth--;
-            if (depth == 0)
-              depthZeroCloses++;
-            break;
-        }
-      }
+    Term term = new Term();
+    addConjuncts(cv, term.conjuncts);
+    terms.add(term);
+  }
 
-      if (depthZeroCloses > 1)
-        cvs = "(" + cvs + ")";
+  /**
+   * Splits a term into its AND conjuncts, flattening nested conjunctions.
+   */
+  private static void addConjuncts(ByteSequence cv, Set<ByteSequence> conjuncts) {
+    cv = unwrap(cv);
+    int offset = 0;
+    int end;
+    while ((end = findEnd(cv, offset, cv.length(), (byte) '&')) < cv.length()) {
+      addConjuncts(cv.subSequence(offset, end), conjuncts);
+      offset = end + 1;
+    }
+    if (offset > 0) {
+      addConjuncts(cv.subSequence(offset, cv.length()), conjuncts);
+    } else if (findEnd(cv, 0, cv.length(), (byte) '|') < cv.length()) {
+      // a disjunction inside a conjunction is kept whole
+      byte[] b = new byte[cv.length() + 2];
+      b[0] = '(';
+      System.arraycopy(cv.getBackingArray(), cv.offset(), b, 1, cv.length());
+      b[b.length - 1] = ')';
+      conjuncts.add(new ArrayByteSequence(b));
+    } else {
+      conjuncts.add(cv);
     }
+  }
 
-    visibilities.add(cvs);
+  /**
+   * Removes parentheses that wrap the entire sequence.
+   */
+  private static ByteSequence unwrap(ByteSequence cv) {
+    while (cv.length() >= 2 && cv.byteAt(0) == '('
+        && findEnd(cv, 1, cv.length(), (byte) ')') == cv.length() - 1)
+      cv = cv.subSequence(1, cv.length() - 1);
+    if (cv.length() == 0)
+      throw new IllegalArgumentException("Invalid vis, empty term");
+    return cv;
   }
 
-  byte[] get() {
-    StringBuilder sb = new StringBuilder();
-    String sep = "";
-    for (String cvs : visibilities) {
-      sb.append(sep);
-      sep = "|";
-      sb.append(cvs);
+  /**
+   * Finds the first occurrence of an operator outside of any parentheses or quotes, starting at
+   * the given depth of zero.
+   *
+   * @param op
+   *          the operator to find, a closing parenthesis to find the one matching an already open
+   *          parenthesis, or 0 to just validate the sequence
+   * @return the index of the operator, or end if it was not found
+   */
+  private static int findEnd(ByteSequence cv, int start, int end, byte op) {
+    int depth = op == ')' ? 1 : 0;
+    for (int i = start; i < end; i++) {
+      byte b = cv.byteAt(i);
+      switch (b) {
+        case '"':
+          // skip over a quoted term, which may contain any of the operators
+          for (i++; i < end && cv.byteAt(i) != '"'; i++) {
+            if (cv.byteAt(i) == '\\')
+              i++;
+          }
+          if (i >= end)
+            throw new IllegalArgumentException("Invalid vis, unterminated quote " + cv);
+          break;
+        case '(':
+          depth++;
+          break;
+        case ')':
+          depth--;
+          if (depth < 0)
+            throw new IllegalArgumentException("Invalid vis " + cv);
+          if (depth == 0 && op == ')')
+            return i;
+          break;
+        case '|':
+        case '&':
+          if (depth == 0 && b == op)
+            return i;
+          break;
+      }
     }
-
-    return sb.toString().getBytes();
+    if (depth != 0 && op != ')')
+      throw new IllegalArgumentException("Invalid vis " + cv);
+    return end;
   }
 }
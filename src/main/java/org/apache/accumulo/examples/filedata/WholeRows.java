@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+
+/**
+ * Range handling for iterators that read whole rows and return one entry per row, such as
+ * {@link HistogramIterator} and {@link FileVerificationIterator}.
+ */
+class WholeRows {
+
+  private WholeRows() {}
+
+  /**
+   * Widens a range to the whole rows it overlaps, except a row whose start it excludes. A range
+   * that starts after the beginning of a row skips to the next row, since that row's entry was
+   * already returned, and a range that ends in the middle of a row is extended to the end of that
+   * row.
+   *
+   * @return the range to seek the source to, or null if no row should be read
+   */
+  static Range seekRange(Range range) {
+    Key start = range.getStartKey();
+    if (start != null && !(range.isStartKeyInclusive() && isRowStart(start)))
+      start = start.followingKey(PartialKey.ROW);
+    Key end = range.getEndKey();
+    if (end != null && !(!range.isEndKeyInclusive() && isRowStart(end)))
+      end = end.followingKey(PartialKey.ROW);
+    if (start != null && end != null && start.compareTo(end) >= 0)
+      return null;
+    return new Range(start, true, end, false);
+  }
+
+  // true if no key of the row sorts before the given key
+  private static boolean isRowStart(Key key) {
+    return key.getColumnFamilyData().length() == 0 && key.getColumnQualifierData().length() == 0
+        && key.getColumnVisibilityData().length() == 0 && key.getTimestamp() == Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.accumulo.core.client.Accumulo;
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.miniclusterImpl.MiniAccumuloConfigImpl;
+import org.apache.accumulo.test.functional.ConfigurableMacBase;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChangeDetectorIT extends ConfigurableMacBase {
+
+  @TempDir
+  Path tempDir;
+
+  private AccumuloClient client;
+  private String dirTable;
+  private String indexTable;
+  private String dataTable;
+
+  @Override
+  protected void configure(MiniAccumuloConfigImpl cfg, Configuration hadoopCoreSite) {
+    cfg.setProperty(Property.TSERV_NATIVEMAP_ENABLED, "false");
+  }
+
+  @BeforeEach
+  public void setupInstance() throws Exception {
+    String[] names = getUniqueNames(3);
+    dirTable = names[0];
+    indexTable = names[1];
+    dataTable = names[2];
+    client = Accumulo.newClient().from(getClientProperties()).build();
+  }
+
+  @AfterEach
+  public void teardown() {
+    client.close();
+  }
+
+  private void ingest(Path dir) throws Exception {
+    Ingest.main(new String[] {"-c", getCluster().getClientPropsPath(), "--dirTable", dirTable,
+        "--indexTable", indexTable, "--dataTable", dataTable, "--counts", dir.toString()});
+  }
+
+  /**
+   * @return the column families stored for a path in the directory table, or an empty set if the
+   *         path is not stored
+   */
+  private Set<String> readColumnFamilies(Path path) throws Exception {
+    Set<String> colfs = new TreeSet<>();
+    try (Scanner scanner = client.createScanner(dirTable, Authorizations.EMPTY)) {
+      scanner.setRange(new Range(QueryUtil.getRow(path.toString())));
+      for (Entry<Key,Value> e : scanner)
+        colfs.add(e.getKey().getColumnFamily().toString());
+    }
+    return colfs;
+  }
+
+  private Set<String> readIndexRefs() throws Exception {
+    Set<String> refs = new HashSet<>();
+    try (Scanner scanner = client.createScanner(indexTable, Authorizations.EMPTY)) {
+      for (Entry<Key,Value> e : scanner)
+        refs.add(e.getKey().getColumnQualifier().toString());
+    }
+    return refs;
+  }
+
+  private String readCounts(Path path) throws Exception {
+    try (Scanner scanner = client.createScanner(dirTable, Authorizations.EMPTY)) {
+      scanner.setRange(new Range(QueryUtil.getRow(path.toString())));
+      scanner.fetchColumn(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ);
+      for (Entry<Key,Value> e : scanner)
+        return e.getValue().toString();
+    }
+    return null;
+  }
+
+  private static boolean isFileOnly(Set<String> colfs) {
+    return !colfs.isEmpty() && !colfs.contains(QueryUtil.DIR_COLF.toString());
+  }
+
+  @Test
+  public void testChanges() throws Exception {
+    Path root = tempDir.toRealPath();
+    Path a = Files.createDirectory(root.resolve("a"));
+    Path file1 = Files.write(a.resolve("file1"), new byte[] {1});
+    Path sub = Files.createDirectory(a.resolve("sub"));
+    Path file2 = Files.write(sub.resolve("file2"), new byte[] {2});
+    Path b = Files.write(root.resolve("b"), new byte[] {3});
+    Path c = Files.createDirectory(root.resolve("c"));
+    Path file3 = Files.write(c.resolve("file3"), new byte[] {4});
+
+    ingest(root);
+    // 2 dirs and 1 file directly under the root, 3 dirs and 4 files in all
+    assertEquals("2,1,3,4", readCounts(root));
+    assertTrue(isFileOnly(readColumnFamilies(b)));
+    assertEquals(Set.of(QueryUtil.DIR_COLF.toString()), readColumnFamilies(c));
+    assertTrue(readIndexRefs().contains(QueryUtil.getRow(file2.toString()).toString()));
+
+    // delete a directory, change a file, and turn a file into a directory and a directory into
+    // a file
+    Files.delete(file2);
+    Files.delete(sub);
+    FileTime lastmod = Files.getLastModifiedTime(file1);
+    Files.write(file1, new byte[] {1, 1});
+    Files.setLastModifiedTime(file1, FileTime.fromMillis(lastmod.toMillis() + 1000));
+    Files.delete(b);
+    Files.createDirectory(b);
+    Path file4 = Files.write(b.resolve("file4"), new byte[] {5});
+    Files.delete(file3);
+    Files.delete(c);
+    Files.write(c, new byte[] {6});
+
+    ingest(root);
+    assertTrue(readColumnFamilies(sub).isEmpty());
+    assertTrue(readColumnFamilies(file2).isEmpty());
+    assertTrue(readColumnFamilies(file3).isEmpty());
+    Set<String> refs = readIndexRefs();
+    assertFalse(refs.contains(QueryUtil.getRow(sub.toString()).toString()));
+    assertFalse(refs.contains(QueryUtil.getRow(file2.toString()).toString()));
+    assertFalse(refs.contains(QueryUtil.getRow(file3.toString()).toString()));
+    assertTrue(refs.contains(QueryUtil.getRow(b.toString()).toString()));
+    assertTrue(refs.contains(QueryUtil.getRow(c.toString()).toString()));
+
+    // a file written again keeps its old version, while a replaced path keeps only its new type
+    assertEquals(2, readColumnFamilies(file1).size());
+    assertEquals(Set.of(QueryUtil.DIR_COLF.toString()), readColumnFamilies(b));
+    assertTrue(isFileOnly(readColumnFamilies(file4)));
+    assertTrue(isFileOnly(readColumnFamilies(c)));
+    assertEquals(1, readColumnFamilies(c).size());
+
+    // 2 dirs and 1 file directly under the root, 2 dirs and 3 files in all
+    assertEquals("2,1,2,3", readCounts(root));
+    assertEquals("0,1,0,1", readCounts(b));
+    assertEquals("0,1,0,1", readCounts(a));
+  }
+
+  @Test
+  public void testLinks() throws Exception {
+    Path root = tempDir.toRealPath();
+    Path a = Files.createDirectory(root.resolve("a"));
+    Path file1 = Files.write(a.resolve("file1"), new byte[] {1});
+    Files.createSymbolicLink(a.resolve("link1"), file1);
+    Files.createSymbolicLink(a.resolve("link2"), file1);
+    Files.createSymbolicLink(root.resolve("alink"), a);
+
+    // the targets of the links are counted once
+    ingest(root);
+    assertEquals("1,0,1,1", readCounts(root));
+    assertEquals("0,1,0,1", readCounts(a));
+
+    ingest(root);
+    assertEquals("1,0,1,1", readCounts(root));
+    assertEquals("0,1,0,1", readCounts(a));
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.examples.dirlist.ChangeDetector.Change;
+import org.apache.accumulo.examples.dirlist.ChangeDetector.Stored;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+public class ChangeDetectorTest {
+
+  private static final ColumnVisibility CV = new ColumnVisibility("A");
+
+  private static void add(TreeMap<Key,Value> data, Mutation m) {
+    for (ColumnUpdate update : m.getUpdates())
+      data.put(new Key(m.getRow(), update.getColumnFamily(), update.getColumnQualifier(),
+          update.getColumnVisibility(), 1), new Value(update.getValue()));
+  }
+
+  @Test
+  public void testReadRow() {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    add(data, Ingest.buildMutation(CV, "/local", true, false, true, 272, 12345, null));
+    data.put(new Key(QueryUtil.getRow("/local"), QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ),
+        new Value("1,2,3,4"));
+    add(data, Ingest.buildMutation(CV, "/local/file", false, false, false, 1024, 12345, "123"));
+    add(data, Ingest.buildMutation(CV, "/local/file", false, false, false, 2048, 23456, "456"));
+    add(data, Ingest.buildMutation(CV, "/local/new", false, false, false, 10, 100, null));
+
+    PeekingIterator<Entry<Key,Value>> entries = Iterators
+        .peekingIterator(data.entrySet().iterator());
+    Stored dir = ChangeDetector.readRow(entries);
+    assertTrue(dir.isDir());
+    assertEquals(12345, dir.dirLastmod);
+    assertEquals(272, dir.dirLength);
+    assertEquals(-1, dir.fileLastmod);
+
+    // only the latest version of a file is read
+    Stored file = ChangeDetector.readRow(entries);
+    assertFalse(file.isDir());
+    assertEquals(23456, file.fileLastmod);
+    assertEquals(2048, file.fileLength);
+
+    assertEquals(Change.UNCHANGED, ChangeDetector.compare(file, false, 2048, 23456));
+    assertEquals(Change.CHANGED, ChangeDetector.compare(file, false, 2048, 23457));
+    assertEquals(Change.CHANGED, ChangeDetector.compare(file, false, 1024, 23456));
+    assertEquals(Change.REPLACED, ChangeDetector.compare(file, true, 2048, 23456));
+    assertEquals(Change.REPLACED, ChangeDetector.compare(dir, false, 272, 12345));
+    assertEquals(Change.UNCHANGED, ChangeDetector.compare(dir, true, 272, 12345));
+    assertEquals(Change.CHANGED, ChangeDetector.compare(dir, true, 306, 12345));
+    assertEquals(Change.NEW, ChangeDetector.compare(null, false, 10, 100));
+
+    // the iterator is left at the next row
+    assertEquals(100, ChangeDetector.readRow(entries).fileLastmod);
+    assertFalse(entries.hasNext());
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.jupiter.api.Test;
+
+public class CountCombinerTest {
+
+  /**
+   * Combines the counts written to each row, as the combiner would when they are read.
+   */
+  private static class CombiningWriter implements BatchWriter {
+    final Map<String,List<Value>> written = new HashMap<>();
+
+    @Override
+    public void addMutation(Mutation m) {
+      for (ColumnUpdate update : m.getUpdates())
+        written.computeIfAbsent(new String(m.getRow()), k -> new ArrayList<>())
+            .add(new Value(update.getValue()));
+    }
+
+    @Override
+    public void addMutations(Iterable<Mutation> iterable) {
+      iterable.forEach(this::addMutation);
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    Map<String,String> combined() {
+      Map<String,String> counts = new HashMap<>();
+      written.forEach((row, values) -> counts.put(row,
+          new CountCombiner().reduce(new Key(row), values.iterator()).toString()));
+      return counts;
+    }
+  }
+
+  @Test
+  public void testReduce() {
+    List<Value> values = Arrays.asList(new Value("2,1,2,3"), new Value("1,0,1,5"),
+        new Value("-1,0,-1,-2"));
+    assertEquals("2,1,2,6",
+        new CountCombiner().reduce(new Key("row"), values.iterator()).toString());
+    assertThrows(IllegalArgumentException.class, () -> new CountCombiner().reduce(new Key("row"),
+        Arrays.asList(new Value("1,2")).iterator()));
+  }
+
+  @Test
+  public void testDeltas() throws Exception {
+    CombiningWriter writer = new CombiningWriter();
+    // the same paths as CountIT
+    try (CountDeltas deltas = new CountDeltas(writer, RowFormat.STANDARD,
+        new ColumnVisibility(), 2)) {
+      deltas.add("/", true);
+      deltas.add("/local", true);
+      deltas.add("/local/user1", true);
+      deltas.add("/local/user2", true);
+      deltas.add("/local/file", false);
+      deltas.add("/local/user1/file1", false);
+      deltas.add("/local/user1/file2", false);
+      deltas.add("/local/user2/gone", true);
+      deltas.add("/local/user2/gone/file", false);
+    }
+    Map<String,String> expected = new HashMap<>();
+    expected.put(QueryUtil.getRow("").toString(), "1,0,4,4");
+    expected.put(QueryUtil.getRow("/local").toString(), "2,1,3,4");
+    expected.put(QueryUtil.getRow("/local/user1").toString(), "0,2,0,2");
+    expected.put(QueryUtil.getRow("/local/user2").toString(), "1,0,1,1");
+    expected.put(QueryUtil.getRow("/local/user2/gone").toString(), "0,1,0,1");
+    assertEquals(expected, writer.combined());
+
+    // deleting a directory removes it and everything under it from the counts above it
+    try (CountDeltas deltas = new CountDeltas(writer, RowFormat.STANDARD,
+        new ColumnVisibility(), 100)) {
+      deltas.remove("/local/user2/gone", true, 0, 1);
+    }
+    expected.put(QueryUtil.getRow("").toString(), "1,0,3,3");
+    expected.put(QueryUtil.getRow("/local").toString(), "2,1,2,3");
+    expected.put(QueryUtil.getRow("/local/user2").toString(), "0,0,0,0");
+    assertEquals(expected, writer.combined());
+  }
+}
@@ -18,9 +18,12 @@ package org.apache.accumulo.examples.dirlist;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import org.apache.accumulo.core.client.Accumulo;
 import org.apache.accumulo.core.client.AccumuloClient;
@@ -29,6 +32,8 @@ import org.apache.accumulo.core.client.BatchWriterConfig;
 import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.conf.Property;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.security.ColumnVisibility;
@@ -106,4 +111,83 @@ public class CountIT extends ConfigurableMacBase {
     }
     assertEquals(i, expected.size());
   }
+
+  private Map<String,String> readCounts() throws Exception {
+    Map<String,String> counts = new TreeMap<>();
+    try (Scanner scanner = client.createScanner(tableName, Authorizations.EMPTY)) {
+      scanner.setRange(new Range());
+      scanner.fetchColumn(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ);
+      for (Entry<Key,Value> e : scanner)
+        counts.put(e.getKey().getRow().toString(), e.getValue().toString());
+    }
+    return counts;
+  }
+
+  @Test
+  public void testThreads() throws Exception {
+    try (BatchWriter bw = client.createBatchWriter(tableName)) {
+      ColumnVisibility cv = new ColumnVisibility();
+      bw.addMutation(Ingest.buildMutation(cv, "/other", true, false, true, 272, 12345, null));
+      bw.addMutation(
+          Ingest.buildMutation(cv, "/other/file", false, false, false, 1024, 12345, null));
+    }
+
+    // each top level directory is counted in its own task
+    FileCount fc = new FileCount(client, tableName, Authorizations.EMPTY, new ColumnVisibility(),
+        new ScannerOpts(), new BatchWriterOpts(), 4);
+    fc.run();
+
+    Map<String,String> expected = new TreeMap<>();
+    expected.put(QueryUtil.getRow("").toString(), "2,0,4,4");
+    expected.put(QueryUtil.getRow("/local").toString(), "2,1,2,3");
+    expected.put(QueryUtil.getRow("/local/user1").toString(), "0,2,0,2");
+    expected.put(QueryUtil.getRow("/local/user2").toString(), "0,0,0,0");
+    expected.put(QueryUtil.getRow("/other").toString(), "0,1,0,1");
+    assertEquals(expected, readCounts());
+  }
+
+  private String readCounts(String path) throws Exception {
+    try (Scanner scanner = client.createScanner(tableName, Authorizations.EMPTY)) {
+      scanner.setRange(new Range(QueryUtil.getRow(path)));
+      scanner.fetchColumn(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ);
+      for (Entry<Key,Value> e : scanner)
+        return e.getValue().toString();
+    }
+    return null;
+  }
+
+  @Test
+  public void testCombined() throws Exception {
+    FileCount fc = new FileCount(client, tableName, Authorizations.EMPTY, new ColumnVisibility(),
+        new ScannerOpts(), new BatchWriterOpts());
+    fc.run();
+    fc.run();
+    assertTrue(CountCombiner.hasOldVersions(client, tableName, Authorizations.EMPTY));
+
+    // the combiner is only configured once the old versions of the counts are compacted away
+    CountCombiner.attach(client, tableName, Authorizations.EMPTY);
+    assertTrue(CountCombiner.isAttached(client, tableName));
+    assertFalse(CountCombiner.hasOldVersions(client, tableName, Authorizations.EMPTY));
+    assertEquals("2,1,2,3", readCounts("/local"));
+
+    // make the stored counts wrong, and wait for the combiner to sum them
+    try (BatchWriter bw = client.createBatchWriter(tableName)) {
+      Mutation m = new Mutation(QueryUtil.getRow("/local"));
+      m.put(QueryUtil.DIR_COLF, QueryUtil.COUNTS_COLQ, new ColumnVisibility(),
+          CountCombiner.toValue(1, -1, 0, 5));
+      bw.addMutation(m);
+    }
+    long deadline = System.currentTimeMillis() + 60_000;
+    while (!"3,0,2,8".equals(readCounts("/local"))) {
+      assertTrue(System.currentTimeMillis() < deadline, "counts were not combined");
+      Thread.sleep(250);
+    }
+
+    // counting again writes only the difference from the stored counts
+    fc.run();
+    assertEquals("1,0,3,3", readCounts(""));
+    assertEquals("2,1,2,3", readCounts("/local"));
+    assertEquals("0,2,0,2", readCounts("/local/user1"));
+    assertEquals("0,0,0,0", readCounts("/local/user2"));
+  }
 }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.client.summary.Summarizer.Collector;
+import org.apache.accumulo.core.client.summary.SummarizerConfiguration;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.examples.dirlist.QueryUtil.SubtreeSummary;
+import org.junit.jupiter.api.Test;
+
+public class DirSummarizerTest {
+
+  private static final ColumnVisibility CV = new ColumnVisibility("A");
+
+  private static void add(TreeMap<Key,Value> data, Mutation m) {
+    for (ColumnUpdate update : m.getUpdates())
+      data.put(new Key(m.getRow(), update.getColumnFamily(), update.getColumnQualifier(),
+          update.getColumnVisibility(), 1), new Value(update.getValue()));
+  }
+
+  private static void addFile(TreeMap<Key,Value> data, String path, long length, long lastmod) {
+    add(data, Ingest.buildMutation(CV, path, false, false, false, length, lastmod, null));
+  }
+
+  private static TreeMap<Key,Value> createData() {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    add(data, Ingest.buildMutation(CV, "/local", true, false, true, 272, 100, null));
+    addFile(data, "/local/a.jar", 100, 1000);
+    // an older version of a file is not summarized
+    addFile(data, "/local/a.jar", 50, 500);
+    addFile(data, "/local/user1/b.txt", 10, 3000);
+    addFile(data, "/local/user1/deep/c", 1, 2000);
+    addFile(data, "/top.jar", 5, 4000);
+    return data;
+  }
+
+  private static Map<String,Long> summarize(SummarizerConfiguration config,
+      Map<Key,Value> data) {
+    Collector collector = new DirSummarizer().collector(config);
+    for (Entry<Key,Value> entry : data.entrySet())
+      collector.accept(entry.getKey(), entry.getValue());
+    Map<String,Long> stats = new HashMap<>();
+    collector.summarize(stats::put);
+    return stats;
+  }
+
+  @Test
+  public void testSummarize() {
+    SummarizerConfiguration config = SummarizerConfiguration.builder(DirSummarizer.class)
+        .addOption(DirSummarizer.DEPTH_OPT, 2).build();
+    TreeMap<Key,Value> data = createData();
+    Map<String,Long> stats = summarize(config, data);
+
+    SubtreeSummary root = SubtreeSummary.fromStatistics("", stats, true);
+    assertEquals(4, root.getFiles());
+    assertEquals(116, root.getBytes());
+    assertEquals(1000, root.getOldest());
+    assertEquals(4000, root.getNewest());
+    assertEquals(Map.of("jar", 2L, "txt", 1L, "", 1L), root.getExtensions());
+    assertTrue(root.isExact());
+
+    SubtreeSummary local = SubtreeSummary.fromStatistics("/local", stats, true);
+    assertEquals(3, local.getFiles());
+    assertEquals(111, local.getBytes());
+    assertEquals(3000, local.getNewest());
+    assertEquals(Map.of("jar", 1L, "txt", 1L, "", 1L), local.getExtensions());
+
+    SubtreeSummary user1 = SubtreeSummary.fromStatistics("/local/user1", stats, true);
+    assertEquals(2, user1.getFiles());
+    assertEquals(11, user1.getBytes());
+    assertEquals(2000, user1.getOldest());
+
+    // directories deeper than the configured depth are not summarized
+    SubtreeSummary deep = SubtreeSummary.fromStatistics("/local/user1/deep", stats, true);
+    assertEquals(0, deep.getFiles());
+    assertEquals(-1, deep.getOldest());
+
+    // the summaries of separate files combine to the summary of all of them
+    Map<String,Long> combined = summarize(config, data.headMap(new Key("003")));
+    new DirSummarizer().combiner(config).merge(combined,
+        summarize(config, data.tailMap(new Key("003"))));
+    assertEquals(stats, combined);
+  }
+
+  @Test
+  public void testMaxStats() {
+    SummarizerConfiguration config = SummarizerConfiguration.builder(DirSummarizer.class)
+        .addOption(DirSummarizer.MAX_STATS_OPT, 3).build();
+    Map<String,Long> stats = summarize(config, createData());
+    assertEquals(4, stats.size());
+    assertTrue(stats.get(DirSummarizer.DROPPED) > 0);
+    assertFalse(SubtreeSummary.fromStatistics("", stats, true).isExact());
+  }
+
+  @Test
+  public void testDefaultMaxStats() {
+    // hundreds of directories at depth 2 fit within the default limit
+    TreeMap<Key,Value> data = new TreeMap<>();
+    for (int i = 0; i < 20; i++)
+      for (int j = 0; j < 50; j++)
+        addFile(data, "/dir" + i + "/sub" + j + "/file.txt", 10, 1000);
+    SummarizerConfiguration config = SummarizerConfiguration.builder(DirSummarizer.class)
+        .addOption(DirSummarizer.DEPTH_OPT, 2).build();
+    Map<String,Long> stats = summarize(config, data);
+    assertFalse(stats.containsKey(DirSummarizer.DROPPED));
+    assertEquals(1000, SubtreeSummary.fromStatistics("", stats, true).getFiles());
+    assertEquals(1, SubtreeSummary.fromStatistics("/dir3/sub7", stats, true).getFiles());
+
+    assertEquals(1024, DirSummarizer.defaultMaxStats(0));
+    assertEquals(16384, DirSummarizer.defaultMaxStats(2));
+    assertEquals(65536, DirSummarizer.defaultMaxStats(10));
+  }
+
+  @Test
+  public void testGetExtension() {
+    assertEquals("jar", DirSummarizer.getExtension("a.b.jar"));
+    assertEquals("", DirSummarizer.getExtension(".hidden"));
+    assertEquals("", DirSummarizer.getExtension("README"));
+  }
+}
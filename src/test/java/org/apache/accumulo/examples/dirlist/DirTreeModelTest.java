@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import org.apache.accumulo.examples.dirlist.Viewer.NodeInfo;
+import org.junit.jupiter.api.Test;
+
+public class DirTreeModelTest {
+
+  private final Map<String,AtomicInteger> listings = new ConcurrentHashMap<>();
+
+  private static NodeInfo info(String path, boolean isDir) {
+    String type = isDir ? "dir:" : "9223370726265493838:";
+    return new NodeInfo(path.substring(path.lastIndexOf('/') + 1),
+        Map.of("fullname", path, type + "lastmod:", "12345"));
+  }
+
+  private List<NodeInfo> list(String path) throws Exception {
+    listings.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+    switch (path) {
+      case "/a":
+        return List.of(info("/a/b", true), info("/a/f", false));
+      case "/a/b":
+        return List.of(info("/a/b/g", false));
+      default:
+        throw new FileNotFoundException(path);
+    }
+  }
+
+  private int listed(String path) {
+    AtomicInteger count = listings.get(path);
+    return count == null ? 0 : count.get();
+  }
+
+  // checks a condition on the event thread until it holds
+  private static void waitFor(BooleanSupplier condition) throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      AtomicBoolean holds = new AtomicBoolean();
+      SwingUtilities.invokeAndWait(() -> holds.set(condition.getAsBoolean()));
+      if (holds.get())
+        return;
+      Thread.sleep(10);
+    }
+    fail("timed out");
+  }
+
+  private static String childName(DefaultMutableTreeNode node, int index) {
+    return ((NodeInfo) ((DefaultMutableTreeNode) node.getChildAt(index)).getUserObject())
+        .getName();
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+    DefaultMutableTreeNode root = new DefaultMutableTreeNode(info("/a", true));
+    try (DirTreeModel model = new DirTreeModel(root, this::list, 2, 10, 4)) {
+      SwingUtilities.invokeAndWait(() -> model.load(root));
+      waitFor(() -> root.getChildCount() == 2 && childName(root, 0).equals("b"));
+      DefaultMutableTreeNode dir = (DefaultMutableTreeNode) root.getChildAt(0);
+      assertFalse(model.isLeaf(dir));
+      assertTrue(model.isLeaf(root.getChildAt(1)));
+
+      // the subdirectory is read ahead, so expanding it shows its entries at once
+      waitFor(() -> model.list("/a/b", false).isDone());
+      SwingUtilities.invokeAndWait(() -> model.load(dir));
+      assertEquals(1, dir.getChildCount());
+      assertEquals("g", childName(dir, 0));
+
+      // entries removed on collapse are shown again from the cache
+      SwingUtilities.invokeAndWait(() -> model.unloadChildren(root));
+      assertEquals(0, dir.getChildCount());
+      SwingUtilities.invokeAndWait(() -> model.load(dir));
+      assertEquals(1, dir.getChildCount());
+      SwingUtilities.invokeAndWait(() -> model.load(root));
+      assertEquals(2, root.getChildCount());
+      assertEquals(1, listed("/a"));
+      assertEquals(1, listed("/a/b"));
+    }
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    DefaultMutableTreeNode root = new DefaultMutableTreeNode(info("/missing", true));
+    try (DirTreeModel model = new DirTreeModel(root, this::list, 1, 10, 4)) {
+      SwingUtilities.invokeAndWait(() -> model.load(root));
+      waitFor(() -> childName(root, 0).startsWith("could not list"));
+      assertEquals(1, root.getChildCount());
+
+      // a failed listing is not cached, so it is read again
+      SwingUtilities.invokeAndWait(() -> model.load(root));
+      waitFor(() -> listed("/missing") == 2);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DirectoryWalkerTest {
+
+  @TempDir
+  Path tempDir;
+
+  private Map<String,Boolean> walk(Path root, int parallelism) throws Exception {
+    Map<String,Boolean> visited = new ConcurrentHashMap<>();
+    new DirectoryWalker(parallelism).walk(root, (path, attrs) -> {
+      Boolean previous = visited.put(path.toString(), attrs.isDirectory());
+      if (previous != null)
+        throw new IllegalStateException("visited twice " + path);
+    });
+    return new TreeMap<>(visited);
+  }
+
+  @Test
+  public void testWalk() throws Exception {
+    Path root = tempDir.toRealPath();
+    Map<String,Boolean> expected = new TreeMap<>();
+    expected.put(root.toString(), true);
+    // enough files in one directory to be visited in several batches
+    for (int i = 0; i < 600; i++)
+      expected.put(Files.createFile(root.resolve("file" + i)).toString(), false);
+    Path dir = root.resolve("a/b/c");
+    Files.createDirectories(dir);
+    for (Path p = dir; !p.equals(root); p = p.getParent())
+      expected.put(p.toString(), true);
+    expected.put(Files.createFile(dir.resolve("deep")).toString(), false);
+
+    assertEquals(expected, walk(root, 4));
+    assertEquals(expected, walk(root, 1));
+
+    // a single file is the only path visited
+    assertEquals(Map.of(dir.resolve("deep").toString(), false), walk(dir.resolve("deep"), 2));
+  }
+
+  @Test
+  public void testLinks() throws Exception {
+    Path root = tempDir.toRealPath();
+    Path dir = Files.createDirectory(root.resolve("dir"));
+    Path file = Files.createFile(dir.resolve("file"));
+    try {
+      // a link to a parent would loop forever if it were followed
+      Files.createSymbolicLink(dir.resolve("loop"), root);
+      Files.createSymbolicLink(root.resolve("fileLink"), file);
+      Files.createSymbolicLink(root.resolve("dangling"), root.resolve("missing"));
+    } catch (UnsupportedOperationException | IOException e) {
+      return;
+    }
+
+    // links are visited as the path they point to, and are not followed into
+    Set<Path> visited = ConcurrentHashMap.newKeySet();
+    new DirectoryWalker(2).walk(root, (path, attrs) -> visited.add(path));
+    assertEquals(Set.of(root, dir, file), visited);
+  }
+
+  @Test
+  public void testVisitorFailure() throws IOException {
+    Path root = tempDir.toRealPath();
+    Files.createDirectories(root.resolve("a/b"));
+    Files.createFile(root.resolve("a/b/bad"));
+    IOException failure = new IOException("bad file");
+    IOException thrown = assertThrows(IOException.class,
+        () -> new DirectoryWalker(2).walk(root, (path, attrs) -> {
+          if (path.getFileName().toString().equals("bad"))
+            throw failure;
+        }));
+    assertSame(failure, thrown);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.accumulo.core.client.Accumulo;
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.ScannerBase;
+import org.apache.accumulo.core.conf.Property;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.miniclusterImpl.MiniAccumuloConfigImpl;
+import org.apache.accumulo.test.functional.ConfigurableMacBase;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class QueryUtilIT extends ConfigurableMacBase {
+
+  @TempDir
+  Path tempDir;
+
+  private AccumuloClient client;
+  private String dirTable;
+  private String indexTable;
+  private String trigramTable;
+  private String dataTable;
+  private Path root;
+  private QueryUtil queryUtil;
+
+  @Override
+  protected void configure(MiniAccumuloConfigImpl cfg, Configuration hadoopCoreSite) {
+    cfg.setProperty(Property.TSERV_NATIVEMAP_ENABLED, "false");
+  }
+
+  @BeforeEach
+  public void setupInstance() throws Exception {
+    String[] names = getUniqueNames(4);
+    dirTable = names[0];
+    indexTable = names[1];
+    trigramTable = names[2];
+    dataTable = names[3];
+    client = Accumulo.newClient().from(getClientProperties()).build();
+
+    root = tempDir.toRealPath();
+    Files.write(root.resolve("file1"), new byte[] {1});
+    Files.write(root.resolve("fine2"), new byte[] {2});
+    Files.write(root.resolve("other.dat"), new byte[] {3});
+    Path sub = Files.createDirectory(root.resolve("sub"));
+    Files.write(sub.resolve("profile.txt"), new byte[] {4});
+    Files.write(sub.resolve("fixe"), new byte[] {5});
+
+    String propsPath = getCluster().getClientPropsPath();
+    Ingest.main(new String[] {"-c", propsPath, "--dirTable", dirTable, "--indexTable", indexTable,
+        "--trigramTable", trigramTable, "--dataTable", dataTable, root.toString()});
+
+    opts("-t", indexTable, "--trigramTable", trigramTable);
+  }
+
+  private void opts(String... args) throws Exception {
+    List<String> allArgs = new ArrayList<>(List.of("-c", getCluster().getClientPropsPath()));
+    allArgs.addAll(List.of(args));
+    QueryUtil.Opts opts = new QueryUtil.Opts();
+    opts.parseArgs(QueryUtil.class.getName(), allArgs.toArray(new String[0]));
+    queryUtil = new QueryUtil(client, opts);
+  }
+
+  @AfterEach
+  public void teardown() {
+    client.close();
+  }
+
+  /**
+   * @return the paths found under the ingested directory, relative to it
+   */
+  private Set<String> search(String pattern) throws Exception {
+    Set<String> found = new TreeSet<>();
+    String prefix = root + "/";
+    try (ScannerBase scanner = queryUtil.wildCardSearch(pattern)) {
+      for (Entry<Key,Value> e : scanner) {
+        // the directory table row is the depth followed by the path
+        String path = e.getKey().getColumnQualifier().toString().substring(3);
+        if (path.startsWith(prefix))
+          found.add(path.substring(prefix.length()));
+      }
+    }
+    return found;
+  }
+
+  @Test
+  public void testTrigramSearch() throws Exception {
+    assertEquals(Set.of("file1", "fine2", "sub/fixe"), search("fi*"));
+    assertEquals(Set.of("file1", "sub/profile.txt"), search("*ile*"));
+    assertEquals(Set.of("file1"), search("*ile?"));
+    assertEquals(Set.of("sub/profile.txt"), search("pro*.t?t"));
+    assertEquals(Set.of(), search("*xyz*"));
+  }
+
+  @Test
+  public void testFullSearch() throws Exception {
+    // patterns without three characters in a row are matched against every name
+    assertEquals(Set.of("file1", "fine2", "sub/fixe", "sub/profile.txt"), search("*fi?e*"));
+    assertEquals(Set.of("file1", "fine2"), search("f*e?"));
+    assertEquals(Set.of("sub"), search("s?b"));
+  }
+
+  private List<String> list(String startAfter) throws Exception {
+    List<String> names = new ArrayList<>();
+    try (QueryUtil.DirListIterator entries = queryUtil.streamDirList(root.toString(), startAfter,
+        null)) {
+      while (entries.hasNext())
+        names.add(entries.next().getKey());
+    }
+    return names;
+  }
+
+  @Test
+  public void testPaging() throws Exception {
+    opts("-t", dirTable);
+    QueryUtil.DirPage page = queryUtil.getDirListPage(root.toString(), null, 3, null);
+    assertEquals(List.of("file1", "fine2", "other.dat"),
+        new ArrayList<>(page.getEntries().keySet()));
+    assertEquals("other.dat", page.getToken());
+    page = queryUtil.getDirListPage(root.toString(), page.getToken(), 3, null);
+    assertEquals(List.of("sub"), new ArrayList<>(page.getEntries().keySet()));
+    assertNull(page.getToken());
+
+    // a page that ends with the last entry has no token
+    page = queryUtil.getDirListPage(root.toString(), null, 4, null);
+    assertEquals(4, page.getEntries().size());
+    assertNull(page.getToken());
+
+    // only the requested columns are read
+    page = queryUtil.getDirListPage(root.toString(), null, 10, List.of("length"));
+    for (Map<String,String> data : page.getEntries().values())
+      for (String column : data.keySet())
+        assertTrue(column.equals("fullname") || column.contains(":length:"), column);
+  }
+
+  @Test
+  public void testToken() throws Exception {
+    opts("-t", dirTable);
+    assertEquals(List.of("file1", "fine2", "other.dat", "sub"), list(null));
+    assertEquals(List.of("other.dat", "sub"), list("fine2"));
+    assertEquals(List.of("other.dat", "sub"), list("fo"));
+    assertEquals(List.of(), list("zzz"));
+    // a token with a slash sorts past the directory
+    assertEquals(List.of(), list("sub/profile.txt"));
+  }
+
+  @Test
+  public void testSummary() throws Exception {
+    // a new directory table, summarized from its first file
+    String summaryTable = getUniqueNames(5)[4];
+    Ingest.main(new String[] {"-c", getCluster().getClientPropsPath(), "--dirTable", summaryTable,
+        "--indexTable", indexTable, "--dataTable", dataTable, "--summaryDepth", "2",
+        root.toString()});
+
+    // the entries were flushed when the ingest finished
+    opts("-t", summaryTable);
+    QueryUtil.SubtreeSummary summary = queryUtil.getSubtreeSummary("/");
+    assertEquals(5, summary.getFiles());
+    assertEquals(5, summary.getBytes());
+    assertTrue(summary.isExact());
+  }
+}
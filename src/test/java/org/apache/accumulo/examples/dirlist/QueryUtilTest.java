@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.Iterators;
+
+public class QueryUtilTest {
+
+  private static void add(TreeMap<Key,Value> data, Mutation m) {
+    for (ColumnUpdate update : m.getUpdates())
+      data.put(new Key(m.getRow(), update.getColumnFamily(), update.getColumnQualifier(),
+          update.getColumnVisibility(), 1), new Value(update.getValue()));
+  }
+
+  @Test
+  public void testDirListIterator() {
+    ColumnVisibility cv = new ColumnVisibility("A");
+    TreeMap<Key,Value> data = new TreeMap<>();
+    add(data, Ingest.buildMutation(cv, "/local/file", false, false, false, 1024, 12345, null));
+    add(data, Ingest.buildMutation(cv, "/local/file", false, false, false, 2048, 23456, null));
+    add(data, Ingest.buildMutation(cv, "/local/user1", true, false, true, 272, 12345, null));
+
+    Iterator<Entry<String,Map<String,String>>> entries = new QueryUtil.DirListIterator(null,
+        Iterators.peekingIterator(data.entrySet().iterator()), RowFormat.STANDARD, "/local");
+    Entry<String,Map<String,String>> file = entries.next();
+    assertEquals("file", file.getKey());
+    assertEquals("/local/file", file.getValue().get("fullname"));
+    // every version of a file is listed, under its column family decoded as a long
+    assertEquals("1024", file.getValue().get((Long.MAX_VALUE - 12345) + ":length:A"));
+    assertEquals("2048", file.getValue().get((Long.MAX_VALUE - 23456) + ":length:A"));
+    assertEquals(9, file.getValue().size());
+
+    Entry<String,Map<String,String>> dir = entries.next();
+    assertEquals("user1", dir.getKey());
+    assertEquals("272", dir.getValue().get("dir:length:A"));
+    assertEquals("true", dir.getValue().get("dir:exec:A"));
+    assertFalse(entries.hasNext());
+  }
+
+  @Test
+  public void testDecodeData() throws Exception {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    add(data, Ingest.buildMutation(new ColumnVisibility("A"), "/local/user1", true, false, true,
+        272, 12345, null));
+    Value row = WholeRowIterator.encodeRow(new ArrayList<>(data.keySet()),
+        new ArrayList<>(data.values()));
+
+    Map<String,String> decoded = QueryUtil.decodeData(data.firstKey(), row, "/local/user1",
+        new HashMap<>());
+    assertEquals("/local/user1", decoded.get("fullname"));
+    assertEquals("272", decoded.get("dir:length:A"));
+    assertEquals("12345", decoded.get("dir:lastmod:A"));
+    assertEquals(5, decoded.size());
+  }
+}
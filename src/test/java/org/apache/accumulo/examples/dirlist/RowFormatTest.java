@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+
+public class RowFormatTest {
+
+  private static boolean startsWith(Text row, Text prefix) {
+    return row.getLength() >= prefix.getLength() && Arrays.equals(
+        Arrays.copyOf(row.getBytes(), prefix.getLength()),
+        Arrays.copyOf(prefix.getBytes(), prefix.getLength()));
+  }
+
+  @Test
+  public void testCompactRows() {
+    RowFormat format = RowFormat.COMPACT;
+    Text root = format.getRow("");
+    assertEquals(1, root.getLength());
+    assertEquals(root, format.getRow("/"));
+    assertEquals("", format.getPath(root, ""));
+
+    Text row = format.getRow("/local/user1");
+    // a depth byte, the parent id and the name
+    assertEquals(1 + 16 + 5, row.getLength());
+    assertEquals("user1", format.getName(row));
+    assertEquals("/local/user1", format.getPath(row, "/local"));
+    assertEquals("/local", format.getPath(format.getRow("/local"), ""));
+    assertEquals("/local", format.getPath(format.getRow("/local"), "/"));
+    assertEquals("caf\u00e9", format.getName(format.getRow("/local/caf\u00e9")));
+
+    // the children of a directory share a prefix that no other rows have
+    Text prefix = format.getChildPrefix("/local");
+    assertEquals(prefix, format.getChildPrefix("/local/"));
+    assertTrue(startsWith(row, prefix));
+    assertTrue(startsWith(format.getRow("/local/file"), prefix));
+    assertFalse(startsWith(format.getRow("/other/user1"), prefix));
+    assertFalse(startsWith(format.getRow("/local/user1/file"), prefix));
+    assertTrue(startsWith(format.getRow("/local"), format.getChildPrefix("")));
+
+    // the rows of directories with the same name under different parents differ
+    assertNotEquals(format.getRow("/a/b/c"), format.getRow("/b/a/c"));
+    assertEquals(new Text("/local/user1"), format.getIndexRef("/local/user1"));
+  }
+
+  @Test
+  public void testKeys() {
+    for (RowFormat format : RowFormat.values()) {
+      assertEquals(format.getKey(format.getRow("/local")),
+          format.getParentKey(format.getRow("/local/user1")), format.name());
+      assertEquals(format.getKey(format.getRow("")), format.getParentKey(format.getRow("/local")),
+          format.name());
+      assertNotEquals(format.getKey(format.getRow("/local")),
+          format.getKey(format.getRow("/local/user1")), format.name());
+    }
+    assertEquals("/local", RowFormat.STANDARD.getKey(RowFormat.STANDARD.getRow("/local")));
+    assertEquals("/local/user1",
+        RowFormat.STANDARD.getPath(RowFormat.STANDARD.getRow("/local/user1"), null));
+  }
+
+  @Test
+  public void testDepthOrder() {
+    RowFormat format = RowFormat.COMPACT;
+    // all rows at one depth sort before those at the next
+    assertTrue(format.getRow("/zzz").compareTo(format.getRow("/a/a")) < 0);
+    for (int depth : new int[] {0, 1, 127, 128, 300, 0x3fff}) {
+      Text prefix = format.getDepthPrefix(depth);
+      assertEquals(depth, RowFormat.readDepth(prefix));
+      if (depth < 0x3fff)
+        assertTrue(prefix.compareTo(format.getDepthPrefix(depth + 1)) < 0);
+    }
+    assertThrows(IllegalArgumentException.class, () -> format.getDepthPrefix(0x4000));
+    StringBuilder deep = new StringBuilder();
+    for (int i = 0; i < 200; i++)
+      deep.append("/d");
+    Text row = format.getRow(deep.toString());
+    assertEquals(200, RowFormat.readDepth(row));
+    assertEquals("d", format.getName(row));
+    assertTrue(startsWith(row, format.getDepthPrefix(200)));
+  }
+
+  @Test
+  public void testUnicodePaths() {
+    String path = "/local/caf\u00e9";
+    Text row = QueryUtil.getRow(path);
+    assertEquals("002" + path, row.toString());
+    assertEquals(path, RowFormat.STANDARD.getPath(row, null));
+    assertEquals("caf\u00e9", RowFormat.STANDARD.getName(row));
+    assertEquals("fcaf\u00e9", QueryUtil.getForwardIndex(path).toString());
+
+    // the reverse index holds the bytes of the name reversed, so suffixes are prefixes of it
+    byte[] expected = {'r', (byte) 0xa9, (byte) 0xc3, 'f', 'a', 'c'};
+    Text reverse = QueryUtil.getReverseIndex(path);
+    assertArrayEquals(expected, Arrays.copyOf(reverse.getBytes(), reverse.getLength()));
+    assertTrue(startsWith(reverse, QueryUtil.getReverseIndex("/\u00e9")));
+    assertEquals("r" + new StringBuilder("e.txt").reverse(),
+        new String(QueryUtil.getReverseIndex("/e.txt").copyBytes(), UTF_8));
+  }
+}
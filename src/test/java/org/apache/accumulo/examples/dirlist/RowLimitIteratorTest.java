@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iteratorsImpl.system.SortedMapIterator;
+import org.junit.jupiter.api.Test;
+
+public class RowLimitIteratorTest {
+
+  private static RowLimitIterator limit(TreeMap<Key,Value> data, int limit) throws IOException {
+    IteratorSetting setting = new IteratorSetting(60, RowLimitIterator.class);
+    RowLimitIterator.setLimit(setting, limit);
+    RowLimitIterator iter = new RowLimitIterator();
+    iter.init(new SortedMapIterator(data), setting.getOptions(), null);
+    return iter;
+  }
+
+  private static List<String> read(RowLimitIterator iter, Range range) throws IOException {
+    List<String> keys = new ArrayList<>();
+    iter.seek(range, Collections.emptySet(), false);
+    while (iter.hasTop()) {
+      keys.add(iter.getTopKey().getRow() + " " + iter.getTopKey().getColumnQualifier());
+      iter.next();
+    }
+    return keys;
+  }
+
+  @Test
+  public void testLimit() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    for (String row : new String[] {"a", "b", "c", "d"}) {
+      data.put(new Key(row, "dir", "length"), new Value("1"));
+      data.put(new Key(row, "dir", "lastmod"), new Value("2"));
+    }
+
+    RowLimitIterator iter = limit(data, 2);
+    // every entry of the rows within the limit is returned
+    assertEquals(List.of("a lastmod", "a length", "b lastmod", "b length"),
+        read(iter, new Range()));
+    // the limit starts again at each seek, even in the middle of a row
+    assertEquals(List.of("b length", "c lastmod", "c length"),
+        read(iter, new Range(new Key("b", "dir", "length"), null)));
+    assertEquals(List.of("d lastmod", "d length"), read(iter, new Range("d", null)));
+
+    assertEquals(List.of("a lastmod", "a length", "b lastmod", "b length", "c lastmod",
+        "c length", "d lastmod", "d length"), read(limit(data, 4), new Range()));
+    assertThrows(IllegalArgumentException.class,
+        () -> RowLimitIterator.setLimit(new IteratorSetting(60, RowLimitIterator.class), 0));
+  }
+}
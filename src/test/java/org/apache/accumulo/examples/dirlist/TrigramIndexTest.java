@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.dirlist;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+
+public class TrigramIndexTest {
+
+  private static Set<Text> trigrams(String... trigrams) {
+    Set<Text> set = new HashSet<>();
+    for (String trigram : trigrams)
+      set.add(new Text(trigram));
+    return set;
+  }
+
+  // whether the index would find a path for a pattern, and the regular expression would keep it
+  private static boolean matches(String pattern, String path) {
+    return TrigramIndex.getTrigrams(path).containsAll(TrigramIndex.getPatternTrigrams(pattern))
+        && Pattern.matches(TrigramIndex.toRowRegex(pattern), QueryUtil.getRow(path).toString());
+  }
+
+  @Test
+  public void testTrigrams() {
+    assertEquals(trigrams("\0ab", "abc", "bcd", "cd\0"), TrigramIndex.getTrigrams("/x/abcd"));
+    // short names are still indexed
+    assertEquals(trigrams("\0a\0"), TrigramIndex.getTrigrams("/x/a"));
+
+    assertEquals(trigrams("\0ab", "abc", "bcd"), TrigramIndex.getPatternTrigrams("abcd*"));
+    assertEquals(trigrams("foo", "bar"), TrigramIndex.getPatternTrigrams("*foo*bar*"));
+    assertEquals(trigrams("ab\0", "cde"), TrigramIndex.getPatternTrigrams("*cde?ab"));
+    assertEquals(trigrams("bc\0"), TrigramIndex.getPatternTrigrams("*a*bc"));
+    assertTrue(TrigramIndex.getPatternTrigrams("*a*b*").isEmpty());
+  }
+
+  @Test
+  public void testMatches() {
+    assertTrue(matches("*foo*bar*", "/local/xfooybarz"));
+    assertTrue(matches("*foo*bar*", "/local/foobar"));
+    assertFalse(matches("*foo*bar*", "/local/barfoo"));
+    assertTrue(matches("foo*.jar", "/lib/foo-1.0.jar"));
+    assertFalse(matches("foo*.jar", "/lib/afoo-1.0.jar"));
+    assertTrue(matches("a?c", "/x/abc"));
+    assertFalse(matches("a?c", "/x/abbc"));
+    // regular expression characters in a pattern are matched literally
+    assertTrue(matches("a.b(1)*", "/x/a.b(1).txt"));
+    assertFalse(matches("a.b*", "/x/axb"));
+    // a wildcard does not match across directories
+    assertFalse(matches("x*", "/x/y/z"));
+  }
+
+  @Test
+  public void testMutations() {
+    ColumnVisibility cv = new ColumnVisibility("A");
+    Mutation m = TrigramIndex.buildMutation(RowFormat.STANDARD, cv, "/x/abcd");
+    assertEquals(TrigramIndex.getPartition("/x/abcd"), new Text(m.getRow()));
+    Set<Text> families = new HashSet<>();
+    for (ColumnUpdate update : m.getUpdates()) {
+      families.add(new Text(update.getColumnFamily()));
+      assertEquals(QueryUtil.getRow("/x/abcd"), new Text(update.getColumnQualifier()));
+      assertFalse(update.isDeleted());
+    }
+    assertEquals(TrigramIndex.getTrigrams("/x/abcd"), families);
+
+    Mutation delete = TrigramIndex.buildDeleteMutation(RowFormat.STANDARD, "/x/abcd",
+        Arrays.asList(new Text("A"), new Text("B")));
+    assertEquals(8, delete.getUpdates().size());
+    assertTrue(delete.getUpdates().stream().allMatch(ColumnUpdate::isDeleted));
+
+    assertNull(TrigramIndex.buildMutation(RowFormat.STANDARD, cv, "/"));
+  }
+}
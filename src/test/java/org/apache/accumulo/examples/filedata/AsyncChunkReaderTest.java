@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.accumulo.examples.filedata.AsyncChunkReader.ChunkProbe;
+import org.apache.accumulo.examples.filedata.AsyncChunkReader.Request;
+import org.junit.jupiter.api.Test;
+
+public class AsyncChunkReaderTest {
+
+  private static final ChunkProbe NO_LATER_CHUNKS = request -> false;
+  private static final ChunkProbe LATER_CHUNKS = request -> true;
+
+  private static Request request(long offset, int length) {
+    Request request = new Request("hash", offset, length);
+    assertTrue(request.setChunkSize(4));
+    return request;
+  }
+
+  private static String read(Request request, ChunkProbe probe) throws Exception {
+    AsyncChunkReader.finish(request, probe);
+    ByteBuffer buf = request.future.get();
+    return new String(buf.array(), 0, buf.limit());
+  }
+
+  private static void assertMissing(Request request, ChunkProbe probe) throws Exception {
+    AsyncChunkReader.finish(request, probe);
+    ExecutionException e = assertThrows(ExecutionException.class, () -> request.future.get());
+    assertTrue(e.getCause() instanceof IOException);
+  }
+
+  @Test
+  public void testRead() throws Exception {
+    // chunks 1 and 2 of "abcdefghij", read from offset 5
+    Request request = request(5, 6);
+    assertEquals(1, request.firstChunk);
+    assertEquals(2, request.lastChunk);
+    AsyncChunkReader.addChunk(request, 1, "efgh".getBytes());
+    AsyncChunkReader.addChunk(request, 2, "ij".getBytes());
+    assertEquals("fghij", read(request, LATER_CHUNKS));
+
+    // the end marker of a file of whole chunks ends a read there
+    request = request(4, 8);
+    AsyncChunkReader.addChunk(request, 1, "efgh".getBytes());
+    request.numChunks = 2;
+    assertEquals("efgh", read(request, LATER_CHUNKS));
+  }
+
+  @Test
+  public void testPastEnd() throws Exception {
+    // nothing found, and nothing after, is past the end of the file
+    assertEquals("", read(request(100, 4), NO_LATER_CHUNKS));
+
+    // the end marker is the first chunk read
+    Request request = request(8, 4);
+    request.numChunks = 2;
+    assertEquals("", read(request, LATER_CHUNKS));
+  }
+
+  @Test
+  public void testMissingChunks() throws Exception {
+    // none of the chunks were found, but the file goes on after them
+    assertMissing(request(4, 8), LATER_CHUNKS);
+
+    // only the end marker was found, after the chunks read
+    Request request = request(4, 8);
+    request.numChunks = 2;
+    assertMissing(request, NO_LATER_CHUNKS);
+
+    // a gap between chunks
+    request = request(0, 12);
+    AsyncChunkReader.addChunk(request, 0, "abcd".getBytes());
+    AsyncChunkReader.addChunk(request, 2, "ij".getBytes());
+    assertMissing(request, NO_LATER_CHUNKS);
+
+    // the chunks stop at a whole chunk with no end marker
+    request = request(0, 12);
+    AsyncChunkReader.addChunk(request, 0, "abcd".getBytes());
+    assertMissing(request, NO_LATER_CHUNKS);
+  }
+}
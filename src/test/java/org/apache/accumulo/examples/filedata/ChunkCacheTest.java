@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyValue;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+
+public class ChunkCacheTest {
+
+  private static final Authorizations AUTHS = new Authorizations("A", "B");
+
+  private static void addChunk(List<Entry<Key,Value>> data, String row, int chunkSize,
+      int chunkCount, String vis, String value) {
+    Text chunkCQ = new Text(FileDataIngest.intToBytes(chunkSize));
+    chunkCQ.append(FileDataIngest.intToBytes(chunkCount), 0, 4);
+    data.add(new KeyValue(new Key(new Text(row), FileDataIngest.CHUNK_CF, chunkCQ, new Text(vis)),
+        value.getBytes()));
+  }
+
+  private static List<Entry<Key,Value>> chunk(String row, int index, String value) {
+    List<Entry<Key,Value>> entries = new ArrayList<>();
+    addChunk(entries, row, 4, index, "A", value);
+    return entries;
+  }
+
+  private static String read(PeekingIteratorSource source, ChunkCache cache, String hash)
+      throws IOException {
+    ChunkInputStream cis = new ChunkInputStream();
+    cis.setSource(new CachingChunkIterator(cache, AUTHS, hash, source));
+    byte[] b = new byte[100];
+    int read = cis.read(b);
+    cis.close();
+    return read < 0 ? "" : new String(b, 0, read);
+  }
+
+  /**
+   * Serves ranges of sorted entries, counting how often it is opened.
+   */
+  private static class PeekingIteratorSource
+      implements Function<Range,Iterator<Entry<Key,Value>>> {
+    final List<Entry<Key,Value>> data;
+    final AtomicInteger opened = new AtomicInteger();
+
+    PeekingIteratorSource(List<Entry<Key,Value>> data) {
+      this.data = data;
+    }
+
+    @Override
+    public Iterator<Entry<Key,Value>> apply(Range range) {
+      opened.incrementAndGet();
+      return data.stream().filter(e -> range.contains(e.getKey())).collect(Collectors.toList())
+          .iterator();
+    }
+  }
+
+  @Test
+  public void testEviction() {
+    ChunkCache cache = new ChunkCache(10);
+    cache.put(AUTHS, "a", 4, 0, chunk("a", 0, "abcd"));
+    cache.put(AUTHS, "a", 4, 1, chunk("a", 1, "efgh"));
+    assertEquals(8, cache.getSize());
+    assertNotNull(cache.get(AUTHS, "a", 4, 0));
+
+    // chunk 1 is the least recently used
+    cache.put(AUTHS, "a", 4, 2, chunk("a", 2, "ijk"));
+    assertEquals(7, cache.getSize());
+    assertEquals(1, cache.getEvictions());
+    assertNull(cache.get(AUTHS, "a", 4, 1));
+    List<Entry<Key,Value>> entries = cache.get(AUTHS, "a", 4, 0);
+    assertEquals("abcd", entries.get(0).getValue().toString());
+    assertEquals(chunk("a", 0, "abcd").get(0).getKey(), entries.get(0).getKey());
+
+    // other authorizations do not see the cached chunks
+    assertNull(cache.get(new Authorizations("A"), "a", 4, 0));
+
+    // chunks larger than the cache are not cached
+    cache.put(AUTHS, "b", 20, 0, chunk("b", 0, "abcdefghijklmnopqrst"));
+    assertNull(cache.get(AUTHS, "b", 20, 0));
+    assertEquals(7, cache.getSize());
+    assertEquals(2, cache.getHits());
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void testCachedRead() throws IOException {
+    List<Entry<Key,Value>> data = new ArrayList<>();
+    addChunk(data, "a", 4, 0, "A", "abcd");
+    addChunk(data, "a", 4, 0, "B", "abcd");
+    addChunk(data, "a", 4, 1, "A", "efgh");
+    addChunk(data, "a", 4, 2, "A", "ij");
+    addChunk(data, "a", 4, 3, "A", "");
+    addChunk(data, "b", 4, 0, "A", "klmn");
+    addChunk(data, "b", 4, 1, "A", "");
+    PeekingIteratorSource source = new PeekingIteratorSource(data);
+    ChunkCache cache = new ChunkCache(1024);
+
+    assertEquals("abcdefghij", read(source, cache, "a"));
+    assertEquals(1, source.opened.get());
+    assertEquals(4, cache.getChunkSize(AUTHS, "a"));
+    assertEquals(14, cache.getSize());
+
+    // all chunks now come from the cache
+    assertEquals("abcdefghij", read(source, cache, "a"));
+    assertEquals(1, source.opened.get());
+    assertEquals(4, cache.getHits());
+
+    assertEquals("klmn", read(source, cache, "b"));
+    assertEquals("", read(source, cache, "c"));
+    assertEquals(3, source.opened.get());
+  }
+
+  @Test
+  public void testPartiallyCachedRead() throws IOException {
+    List<Entry<Key,Value>> data = new ArrayList<>();
+    addChunk(data, "a", 4, 0, "A", "abcd");
+    addChunk(data, "a", 4, 1, "A", "efgh");
+    addChunk(data, "a", 4, 2, "A", "ij");
+    addChunk(data, "a", 4, 3, "A", "");
+    PeekingIteratorSource source = new PeekingIteratorSource(data);
+    // only room for the end of the file
+    ChunkCache cache = new ChunkCache(6);
+
+    assertEquals("abcdefghij", read(source, cache, "a"));
+    assertNull(cache.get(AUTHS, "a", 4, 0));
+    // the first chunk is read from the source, along with the rest of the file
+    assertEquals("abcdefghij", read(source, cache, "a"));
+    assertEquals(2, source.opened.get());
+  }
+}
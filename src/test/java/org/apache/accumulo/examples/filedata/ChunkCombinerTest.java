@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
@@ -47,7 +48,7 @@ public class ChunkCombinerTest {
     private Iterator<Entry<Key,Value>> iter;
     private Entry<Key,Value> entry;
     Collection<ByteSequence> columnFamilies;
-    private final SortedMap<Key,Value> map;
+    final SortedMap<Key,Value> map;
     private Range range;
 
     @Override
@@ -55,7 +56,7 @@ public class ChunkCombinerTest {
       return new MapIterator(map);
     }
 
-    private MapIterator(SortedMap<Key,Value> map) {
+    MapIterator(SortedMap<Key,Value> map) {
       this.map = map;
       iter = map.entrySet().iterator();
       this.range = new Range();
@@ -196,10 +197,10 @@ public class ChunkCombinerTest {
     cRow3.put(new Key("row3", refs, "hash1\0x", "A&B"), new Value("".getBytes()));
     cRow3.put(new Key("row3", refs, "hash1\0y", "(A&B)"), new Value("".getBytes()));
     cRow3.put(new Key("row3", refs, "hash1\0z", "(F|G)&(D|E)"), new Value("".getBytes()));
-    cRow3.put(new Key("row3", chunk_cf, "0000", "((F|G)&(D|E))|(A&B)|(C&(D|E))", 20),
+    cRow3.put(new Key("row3", chunk_cf, "0000", "((D|E)&(F|G))|((D|E)&C)|(A&B)", 20),
         new Value("V1".getBytes()));
 
-    cOnlyRow3.put(new Key("row3", chunk_cf, "0000", "((F|G)&(D|E))|(A&B)|(C&(D|E))", 20),
+    cOnlyRow3.put(new Key("row3", chunk_cf, "0000", "((D|E)&(F|G))|((D|E)&C)|(A&B)", 20),
         new Value("V1".getBytes()));
 
     badrow.put(new Key("row1", chunk_cf, "0000", "A"), new Value("V1".getBytes()));
@@ -258,4 +259,129 @@ public class ChunkCombinerTest {
 
     assertEquals(result, seen);
   }
+
+  /**
+   * Counts the seeks of the copies made of it, which the combiner uses to read refs.
+   */
+  private static class CountingMapIterator extends MapIterator {
+    final AtomicInteger copySeeks;
+
+    CountingMapIterator(SortedMap<Key,Value> map, AtomicInteger copySeeks) {
+      super(map);
+      this.copySeeks = copySeeks;
+    }
+
+    @Override
+    public MapIterator deepCopy(IteratorEnvironment env) {
+      return new CountingMapIterator(map, copySeeks) {
+        @Override
+        public void seek(Range range, Collection<ByteSequence> columnFamilies,
+            boolean inclusive) {
+          copySeeks.incrementAndGet();
+          super.seek(range, columnFamilies, inclusive);
+        }
+      };
+    }
+  }
+
+  private static TreeMap<Key,Value> refsRows(String... rows) {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    for (String row : rows) {
+      data.put(new Key(row, "refs", "uid1\0a", "A"), new Value("a"));
+      data.put(new Key(row, "refs", "uid2\0b", "B"), new Value("b"));
+      data.put(new Key(row, "~chunk", "0000", "A"), new Value("V1"));
+      data.put(new Key(row, "~chunk", "0000", "B"), new Value("V1"));
+      data.put(new Key(row, "~chunk", "0001", "A"), new Value("V2"));
+    }
+    return data;
+  }
+
+  private static TreeMap<Key,Value> scan(SortedKeyValueIterator<Key,Value> iter, Range range,
+      Collection<ByteSequence> cols) throws IOException {
+    iter.seek(range, cols, true);
+    TreeMap<Key,Value> seen = new TreeMap<>();
+    while (iter.hasTop()) {
+      seen.put(new Key(iter.getTopKey()), new Value(iter.getTopValue()));
+      iter.next();
+    }
+    return seen;
+  }
+
+  private static void assertChunkVis(String vis, TreeMap<Key,Value> seen) {
+    for (Key k : seen.keySet()) {
+      if (k.getColumnFamily().equals(FileDataIngest.CHUNK_CF))
+        assertEquals(vis, k.getColumnVisibility().toString(), k.toString());
+    }
+  }
+
+  @Test
+  public void testRefsInScan() throws IOException {
+    AtomicInteger copySeeks = new AtomicInteger();
+    ChunkCombiner iter = new ChunkCombiner();
+    iter.init(new CountingMapIterator(refsRows("row1", "row2"), copySeeks), null, null);
+
+    // the refs sort before the chunks, so their visibilities are gathered in the same pass
+    TreeMap<Key,Value> seen = scan(iter, new Range(), emptyColfs);
+    assertEquals(8, seen.size());
+    assertChunkVis("(A)|(B)", seen);
+    assertEquals(0, copySeeks.get());
+
+    // without the refs in the scan they are read with a separate seek per row
+    seen = scan(iter, new Range(), Collections.singleton(FileDataIngest.CHUNK_CF_BS));
+    assertEquals(4, seen.size());
+    assertChunkVis("(A)|(B)", seen);
+    assertEquals(0, copySeeks.get(), "rows seen in the earlier pass are cached");
+  }
+
+  @Test
+  public void testPartialStartRow() throws IOException {
+    AtomicInteger copySeeks = new AtomicInteger();
+    ChunkCombiner iter = new ChunkCombiner();
+    iter.init(new CountingMapIterator(refsRows("row1", "row2"), copySeeks), null, null);
+
+    // a scan starting after the first ref of row1 must still combine both of its refs
+    Range range = new Range(new Key("row1", "refs", "uid2\0b", "B"), true, null, true);
+    TreeMap<Key,Value> seen = scan(iter, range, emptyColfs);
+    assertEquals(7, seen.size());
+    assertChunkVis("(A)|(B)", seen);
+    // only the partial row was read with a separate seek
+    assertEquals(1, copySeeks.get());
+
+    // the same holds for a scan starting in the middle of the chunks
+    iter = new ChunkCombiner();
+    iter.init(new CountingMapIterator(refsRows("row1"), copySeeks), null, null);
+    seen = scan(iter, new Range(new Key("row1", "~chunk", "0001"), true, null, true), emptyColfs);
+    assertEquals(1, seen.size());
+    assertChunkVis("(A)|(B)", seen);
+    assertEquals(2, copySeeks.get());
+  }
+
+  @Test
+  public void testVisCacheEviction() throws IOException {
+    Collection<ByteSequence> chunks = Collections.singleton(FileDataIngest.CHUNK_CF_BS);
+    Range row1 = new Range("row1");
+    Range row2 = new Range("row2");
+
+    AtomicInteger copySeeks = new AtomicInteger();
+    ChunkCombiner iter = new ChunkCombiner();
+    iter.init(new CountingMapIterator(refsRows("row1", "row2"), copySeeks),
+        Map.of(ChunkCombiner.VIS_CACHE_SIZE_OPT, "1"), null);
+    scan(iter, row1, chunks);
+    scan(iter, row2, chunks);
+    assertEquals(2, copySeeks.get());
+    // row1 was evicted to make room for row2, so its refs are read again
+    assertChunkVis("(A)|(B)", scan(iter, row1, chunks));
+    assertEquals(3, copySeeks.get());
+    scan(iter, row1, chunks);
+    assertEquals(3, copySeeks.get());
+
+    copySeeks.set(0);
+    iter = new ChunkCombiner();
+    iter.init(new CountingMapIterator(refsRows("row1", "row2"), copySeeks),
+        Map.of(ChunkCombiner.VIS_CACHE_SIZE_OPT, "2"), null);
+    scan(iter, row1, chunks);
+    scan(iter, row2, chunks);
+    scan(iter, row1, chunks);
+    assertEquals(2, copySeeks.get());
+  }
 }
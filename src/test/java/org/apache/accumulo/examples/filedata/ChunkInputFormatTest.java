@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.KeyValue;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+
+public class ChunkInputFormatTest {
+
+  // adds the chunk keys of a file with the given number of chunks, as returned by a key only scan
+  private static void addFile(List<Entry<Key,Value>> data, String row, int chunkSize,
+      int numChunks) {
+    for (int i = 0; i <= numChunks; i++) {
+      Text chunkCQ = new Text(FileDataIngest.intToBytes(chunkSize));
+      chunkCQ.append(FileDataIngest.intToBytes(i), 0, 4);
+      data.add(new KeyValue(new Key(new Text(row), FileDataIngest.CHUNK_CF, chunkCQ, new Text("A")),
+          new byte[0]));
+    }
+  }
+
+  private static Range range(String start, String end) {
+    return new Range(start == null ? null : new Text(start), false,
+        end == null ? null : new Text(end), true);
+  }
+
+  @Test
+  public void testBalancedRanges() {
+    List<Entry<Key,Value>> data = new ArrayList<>();
+    addFile(data, "a", 100, 3);
+    addFile(data, "b", 100, 4);
+    addFile(data, "c", 100, 50);
+    addFile(data, "d", 100, 1);
+    addFile(data, "e", 100, 2);
+    addFile(data, "f", 100, 8);
+
+    List<Range> ranges = ChunkInputFormat.balancedRanges(data.iterator(), 1000);
+    // the large file is alone, and the small files around it are grouped
+    assertEquals(List.of(range(null, "b"), range("b", "c"), range("c", "e"), range("e", null)),
+        ranges);
+  }
+
+  @Test
+  public void testBalancedRangesCoverTable() {
+    List<Range> ranges = ChunkInputFormat
+        .balancedRanges(new ArrayList<Entry<Key,Value>>().iterator(), 1000);
+    assertEquals(1, ranges.size());
+    assertTrue(ranges.get(0).isInfiniteStartKey() && ranges.get(0).isInfiniteStopKey());
+
+    List<Entry<Key,Value>> data = new ArrayList<>();
+    addFile(data, "a", 100, 20);
+    addFile(data, "b", 100, 20);
+    ranges = ChunkInputFormat.balancedRanges(data.iterator(), 1000);
+    assertEquals(List.of(range(null, "a"), range("a", null)), ranges);
+    // rows without chunks, such as those before, between, or after files, are still read
+    for (String row : new String[] {"0", "a", "aa", "b", "z"}) {
+      long covering = ranges.stream().filter(r -> r.contains(new Key(row))).count();
+      assertEquals(1, covering, row);
+    }
+  }
+}
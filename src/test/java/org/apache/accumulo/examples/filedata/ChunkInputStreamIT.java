@@ -19,11 +19,16 @@ package org.apache.accumulo.examples.filedata;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.accumulo.core.client.Accumulo;
 import org.apache.accumulo.core.client.AccumuloClient;
@@ -192,4 +197,151 @@ public class ChunkInputStreamIT extends AccumuloClusterHarness {
     assertFalse(pi.hasNext());
   }
 
+  @Test
+  public void testSeekWithAccumulo() throws AccumuloException, AccumuloSecurityException,
+      TableExistsException, TableNotFoundException, IOException {
+    List<Entry<Key,Value>> seekdata = new ArrayList<>();
+    addData(seekdata, "s", "refs", "id\0name", "A&B", "name");
+    addData(seekdata, "s", "~chunk", 4, 0, "A&B", "abcd");
+    addData(seekdata, "s", "~chunk", 4, 1, "A&B", "efgh");
+    addData(seekdata, "s", "~chunk", 4, 2, "A&B", "ij");
+    addData(seekdata, "s", "~chunk", 4, 3, "A&B", "");
+
+    client.tableOperations().create(tableName);
+    BatchWriter bw = client.createBatchWriter(tableName, new BatchWriterConfig());
+    for (Entry<Key,Value> e : seekdata) {
+      Key k = e.getKey();
+      Mutation m = new Mutation(k.getRow());
+      m.put(k.getColumnFamily(), k.getColumnQualifier(),
+          new ColumnVisibility(k.getColumnVisibility()), e.getValue());
+      bw.addMutation(m);
+    }
+    bw.close();
+
+    SeekableChunkInputStream scis = new SeekableChunkInputStream(
+        client.createScanner(tableName, AUTHS), "s");
+    byte[] b = new byte[20];
+    int read;
+    assertEquals(read = scis.read(b), 10);
+    assertEquals(new String(b, 0, read), "abcdefghij");
+    assertEquals(read = scis.read(b), -1);
+
+    scis.seek(5);
+    assertEquals(read = scis.read(b, 0, 2), 2);
+    assertEquals(new String(b, 0, read), "fg");
+    assertEquals(scis.getPosition(), 7);
+    assertEquals(read = scis.read(b), 3);
+    assertEquals(new String(b, 0, read), "hij");
+
+    scis.seek(8);
+    assertEquals((byte) 'i', (byte) scis.read());
+    assertEquals(scis.skip(1), 1);
+    assertEquals(scis.read(), -1);
+
+    scis.seek(100);
+    assertEquals(scis.read(b), -1);
+    assertEquals(scis.getPosition(), 10);
+    // the last chunk found by the first seek past the end is remembered for the next ones
+    scis.seek(50);
+    assertEquals(scis.getPosition(), 10);
+    assertEquals(scis.read(), -1);
+    scis.seek(9);
+    assertEquals((byte) 'j', (byte) scis.read());
+
+    // skipping stops at the end of the file
+    scis.seek(3);
+    assertEquals(scis.skip(100), 7);
+    assertEquals(scis.getPosition(), 10);
+    assertEquals(scis.skip(1), 0);
+    assertEquals(scis.read(), -1);
+    scis.seek(9);
+    assertEquals(scis.skip(Long.MAX_VALUE), 1);
+    // skipping to the end marker of a file that ends in a partial chunk
+    scis.seek(0);
+    assertEquals(scis.skip(12), 10);
+    scis.seek(6);
+    assertEquals(scis.skip(4), 4);
+    assertEquals(scis.read(), -1);
+    scis.close();
+  }
+
+  @Test
+  public void testReadAsyncWithAccumulo() throws Exception {
+    List<Entry<Key,Value>> asyncdata = new ArrayList<>();
+    addData(asyncdata, "s", "refs", "id\0name", "A&B", "name");
+    addData(asyncdata, "s", "~chunk", 4, 0, "A&B", "abcd");
+    addData(asyncdata, "s", "~chunk", 4, 0, "C", "abcd");
+    addData(asyncdata, "s", "~chunk", 4, 1, "A&B", "efgh");
+    addData(asyncdata, "s", "~chunk", 4, 2, "A&B", "ij");
+    addData(asyncdata, "s", "~chunk", 4, 3, "A&B", "");
+    addData(asyncdata, "t", "~chunk", 3, 0, "A&B", "klm");
+    addData(asyncdata, "t", "~chunk", 3, 1, "A&B", "");
+    addData(asyncdata, "u", "~chunk", 2, 0, "A&B", "no");
+    addData(asyncdata, "u", "~chunk", 2, 2, "A&B", "");
+
+    client.tableOperations().create(tableName);
+    BatchWriter bw = client.createBatchWriter(tableName, new BatchWriterConfig());
+    for (Entry<Key,Value> e : asyncdata) {
+      Key k = e.getKey();
+      Mutation m = new Mutation(k.getRow());
+      m.put(k.getColumnFamily(), k.getColumnQualifier(),
+          new ColumnVisibility(k.getColumnVisibility()), e.getValue());
+      bw.addMutation(m);
+    }
+    bw.close();
+
+    try (FileDataQuery fdq = new FileDataQuery(client, tableName, AUTHS)) {
+      List<CompletableFuture<ByteBuffer>> reads = new ArrayList<>();
+      reads.add(fdq.readAsync("s", 0, 20));
+      reads.add(fdq.readAsync("s", 3, 4));
+      reads.add(fdq.readAsync("s", 9, 5));
+      reads.add(fdq.readAsync("s", 10, 5));
+      reads.add(fdq.readAsync("s", 100, 5));
+      reads.add(fdq.readAsync("t", 1, 1));
+      String[] expected = {"abcdefghij", "defg", "j", "", "", "l"};
+      for (int i = 0; i < expected.length; i++) {
+        ByteBuffer buf = reads.get(i).get();
+        assertEquals(expected[i], new String(buf.array(), 0, buf.limit()));
+      }
+
+      // a missing file, and a file missing one of its chunks
+      ExecutionException e = assertThrows(ExecutionException.class,
+          () -> fdq.readAsync("v", 0, 4).get());
+      assertTrue(e.getCause() instanceof IOException);
+      e = assertThrows(ExecutionException.class, () -> fdq.readAsync("u", 0, 4).get());
+      assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void testReadAheadWithAccumulo() throws Exception {
+    List<Entry<Key,Value>> files = new ArrayList<>();
+    addData(files, "s", "refs", "id\0name", "A&B", "name");
+    addData(files, "s", "~chunk", 4, 0, "A&B", "abcd");
+    addData(files, "s", "~chunk", 4, 1, "A&B", "efgh");
+    addData(files, "s", "~chunk", 4, 2, "A&B", "ij");
+    addData(files, "s", "~chunk", 4, 3, "A&B", "");
+    addData(files, "t", "~chunk", 3, 0, "A&B", "klm");
+    addData(files, "t", "~chunk", 3, 1, "A&B", "");
+
+    client.tableOperations().create(tableName);
+    BatchWriter bw = client.createBatchWriter(tableName, new BatchWriterConfig());
+    for (Entry<Key,Value> e : files) {
+      Key k = e.getKey();
+      Mutation m = new Mutation(k.getRow());
+      m.put(k.getColumnFamily(), k.getColumnQualifier(),
+          new ColumnVisibility(k.getColumnVisibility()), e.getValue());
+      bw.addMutation(m);
+    }
+    bw.close();
+
+    try (FileDataQuery fdq = new FileDataQuery(client, tableName, AUTHS, 1)) {
+      // stopping part way through a file does not hold up reading the next one
+      assertEquals('a', fdq.getData("s").read());
+      assertEquals(1, fdq.getLastRefs().size());
+      assertEquals("klm", new String(fdq.getData("t").readAllBytes()));
+      assertEquals("abcdefghij", new String(fdq.getData("s").readAllBytes()));
+      assertEquals('a', fdq.getData("s").read());
+    }
+  }
 }
@@ -22,6 +22,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -223,6 +224,94 @@ public class ChunkInputStreamTest {
     assertFalse(pi.hasNext());
   }
 
+  @Test
+  public void testReadAhead() throws IOException {
+    ChunkInputStream cis = new ChunkInputStream();
+    byte[] b = new byte[20];
+    int read;
+    try (ReadAheadIterator pi = new ReadAheadIterator(data.iterator(), 2)) {
+      cis.setSource(pi);
+      assertEquals(read = cis.read(b), 8);
+      assertEquals(new String(b, 0, read), "asdfjkl;");
+      assertEquals(read = cis.read(b), -1);
+
+      cis.setSource(pi);
+      assertEquals(read = cis.read(b), 10);
+      assertEquals(new String(b, 0, read), "qwertyuiop");
+      assertEquals(read = cis.read(b), -1);
+      assertEquals(cis.getVisibilities().toString(), "[A&B, B&C, D]");
+      cis.close();
+
+      cis.setSource(pi);
+      assertEquals(read = cis.read(b), 16);
+      assertEquals(new String(b, 0, read), "asdfjkl;asdfjkl;");
+      assertEquals(read = cis.read(b), -1);
+      cis.close();
+
+      cis.setSource(pi);
+      assertEquals(read = cis.read(b), -1);
+      cis.close();
+
+      cis.setSource(pi);
+      assertEquals(read = cis.read(b), 8);
+      assertEquals(new String(b, 0, read), "asdfjkl;");
+      assertEquals(read = cis.read(b), -1);
+      cis.close();
+
+      assertFalse(pi.hasNext());
+    }
+
+    try (ReadAheadIterator pi = new ReadAheadIterator(baddata.iterator(), 3)) {
+      cis.setSource(pi);
+      assumeExceptionOnRead(cis, b);
+      assumeExceptionOnClose(cis);
+      assertEquals(cis.getVisibilities().toString(), "[A]");
+    }
+  }
+
+  private static void addCompressedData(List<Entry<Key,Value>> data, String row, int chunkSize,
+      int chunkCount, String vis, String value) {
+    Text chunkCQ = new Text(FileDataIngest.intToBytes(chunkSize));
+    chunkCQ.append(FileDataIngest.intToBytes(chunkCount), 0, 4);
+    chunkCQ.append(new byte[] {ChunkCodec.DEFLATE}, 0, 1);
+    byte[] compressed = new byte[1000];
+    int len = new ChunkCodec(6).compress(value.getBytes(), value.length(), compressed);
+    data.add(new KeyValue(new Key(new Text(row), new Text("~chunk"), chunkCQ, new Text(vis)),
+        Arrays.copyOf(compressed, len)));
+  }
+
+  @Test
+  public void testCompressedChunks() throws IOException {
+    List<Entry<Key,Value>> cdata = new ArrayList<>();
+    addData(cdata, "a", "~chunk", 10, 0, "A", "aaaaaaaaaa");
+    addCompressedData(cdata, "a", 10, 0, "B", "aaaaaaaaaa");
+    addCompressedData(cdata, "a", 10, 1, "A", "bbbbbbbbbb");
+    addData(cdata, "a", "~chunk", 10, 2, "A", "cc");
+    addData(cdata, "a", "~chunk", 10, 3, "A", "");
+    addCompressedData(cdata, "b", 10, 0, "A", "dddddddddd");
+    addData(cdata, "b", "~chunk", 10, 2, "A", "");
+
+    ChunkInputStream cis = new ChunkInputStream();
+    byte[] b = new byte[30];
+    int read;
+    PeekingIterator<Entry<Key,Value>> pi = Iterators.peekingIterator(cdata.iterator());
+
+    cis.setSource(pi);
+    assertEquals(read = cis.read(b), 22);
+    assertEquals(new String(b, 0, read), "aaaaaaaaaabbbbbbbbbbcc");
+    assertEquals(read = cis.read(b), -1);
+    assertEquals(cis.getVisibilities().toString(), "[A, B]");
+    cis.close();
+
+    cis.setSource(pi);
+    assertEquals(read = cis.read(b, 0, 4), 4);
+    assertEquals(new String(b, 0, read), "dddd");
+    assumeExceptionOnRead(cis, b);
+    assumeExceptionOnClose(cis);
+
+    assertFalse(pi.hasNext());
+  }
+
   private static void assumeExceptionOnRead(ChunkInputStream cis, byte[] b) {
     try {
       assertEquals(0, cis.read(b));
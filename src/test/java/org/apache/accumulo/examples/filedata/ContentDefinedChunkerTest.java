@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class ContentDefinedChunkerTest {
+
+  private static List<ByteBuffer> split(ContentDefinedChunker chunker, byte[] data) {
+    List<ByteBuffer> chunks = new ArrayList<>();
+    int off = 0;
+    while (off < data.length) {
+      int len = chunker.nextChunkLength(data, off,
+          Math.min(chunker.getMaxSize(), data.length - off));
+      chunks.add(ByteBuffer.wrap(data, off, len).slice());
+      off += len;
+    }
+    return chunks;
+  }
+
+  @Test
+  public void testSizeBounds() {
+    ContentDefinedChunker chunker = new ContentDefinedChunker(256, 1024, 4096);
+    byte[] data = new byte[1 << 20];
+    new Random(42).nextBytes(data);
+    List<ByteBuffer> chunks = split(chunker, data);
+    int total = 0;
+    for (int i = 0; i < chunks.size(); i++) {
+      int len = chunks.get(i).remaining();
+      assertTrue(len <= 4096);
+      if (i < chunks.size() - 1)
+        assertTrue(len > 256);
+      total += len;
+    }
+    assertEquals(data.length, total);
+
+    // all zeros never hits a boundary, so every chunk is the maximum size
+    chunks = split(chunker, new byte[10000]);
+    assertEquals(3, chunks.size());
+    assertEquals(4096, chunks.get(0).remaining());
+    assertEquals(10000 - 8192, chunks.get(2).remaining());
+  }
+
+  @Test
+  public void testInsertOnlyChangesNearbyChunks() {
+    ContentDefinedChunker chunker = new ContentDefinedChunker(256, 1024, 4096);
+    byte[] data = new byte[1 << 20];
+    new Random(7).nextBytes(data);
+    byte[] shifted = new byte[data.length + 1];
+    shifted[0] = 'x';
+    System.arraycopy(data, 0, shifted, 1, data.length);
+
+    List<ByteBuffer> original = split(chunker, data);
+    Set<ByteBuffer> shiftedChunks = new HashSet<>(split(chunker, shifted));
+    int shared = 0;
+    for (ByteBuffer chunk : original)
+      if (shiftedChunks.contains(chunk))
+        shared++;
+    assertTrue(shared >= original.size() - 2,
+        "only " + shared + " of " + original.size() + " chunks shared");
+  }
+
+  @Test
+  public void testInvalidSizes() {
+    assertThrows(IllegalArgumentException.class, () -> new ContentDefinedChunker(0, 1024, 4096));
+    assertThrows(IllegalArgumentException.class,
+        () -> new ContentDefinedChunker(2048, 1024, 4096));
+    assertThrows(IllegalArgumentException.class, () -> new ContentDefinedChunker(256, 1000, 4096));
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.Iterators;
+
+public class ContentDefinedIngestTest {
+
+  @TempDir
+  Path tempDir;
+
+  private static TreeMap<Key,Value> toMap(FileDataIngestTest.ListWriter bw) {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    for (Mutation m : bw.mutations) {
+      for (ColumnUpdate update : m.getUpdates())
+        data.put(new Key(m.getRow(), update.getColumnFamily(), update.getColumnQualifier(),
+            update.getColumnVisibility(), 1), new Value(update.getValue()));
+    }
+    return data;
+  }
+
+  private static Map<String,byte[]> chunks(FileDataIngestTest.ListWriter chunkBW) {
+    Map<String,byte[]> chunks = new HashMap<>();
+    toMap(chunkBW).forEach((k, v) -> chunks.put(k.getRow().toString(), v.get()));
+    return chunks;
+  }
+
+  private static byte[] read(TreeMap<Key,Value> data, Map<String,byte[]> chunks)
+      throws IOException {
+    ManifestInputStream in = new ManifestInputStream(hashes -> chunks, 4);
+    in.setSource(Iterators.peekingIterator(data.entrySet().iterator()));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] b = new byte[1000];
+    int len;
+    while ((len = in.read(b)) >= 0)
+      out.write(b, 0, len);
+    in.close();
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testIngest() throws Exception {
+    byte[] content = new byte[50000];
+    new Random(7).nextBytes(content);
+    Path file = tempDir.resolve("a.bin");
+    Files.write(file, content);
+
+    FileDataIngestTest.ListWriter dataBW = new FileDataIngestTest.ListWriter();
+    FileDataIngestTest.ListWriter chunkBW = new FileDataIngestTest.ListWriter();
+    ContentDefinedIngest cdi = new ContentDefinedIngest(new ContentDefinedChunker(256, 1024, 4096),
+        new ColumnVisibility());
+    String hash = cdi.insertFileData(file.toString(), dataBW, chunkBW);
+
+    TreeMap<Key,Value> data = toMap(dataBW);
+    assertEquals(hash, data.firstKey().getRow().toString());
+    assertEquals(FileDataIngest.REFS_CF, data.firstKey().getColumnFamily());
+    // the manifest ends with an empty end marker after one entry per chunk
+    Map<String,byte[]> chunks = chunks(chunkBW);
+    assertTrue(chunks.size() > 10);
+    assertEquals(chunkBW.mutations.size() + 1,
+        data.keySet().stream().filter(k -> k.getColumnFamily().equals(FileDataIngest.MANIFEST_CF))
+            .count());
+    assertEquals(0, data.lastEntry().getValue().getSize());
+    for (byte[] chunk : chunks.values())
+      assertTrue(chunk.length <= 4096);
+
+    assertArrayEquals(content, read(data, chunks));
+  }
+
+  @Test
+  public void testSharedChunks() throws Exception {
+    byte[] content = new byte[50000];
+    new Random(7).nextBytes(content);
+    Path a = tempDir.resolve("a.bin");
+    Files.write(a, content);
+    // a small edit near the start only changes the chunks around it
+    content[100] ^= 1;
+    Path b = tempDir.resolve("b.bin");
+    Files.write(b, content);
+
+    ContentDefinedIngest cdi = new ContentDefinedIngest(new ContentDefinedChunker(256, 1024, 4096),
+        new ColumnVisibility());
+    FileDataIngestTest.ListWriter chunksA = new FileDataIngestTest.ListWriter();
+    FileDataIngestTest.ListWriter chunksB = new FileDataIngestTest.ListWriter();
+    FileDataIngestTest.ListWriter dataBW = new FileDataIngestTest.ListWriter();
+    String hashA = cdi.insertFileData(a.toString(), dataBW, chunksA);
+    String hashB = cdi.insertFileData(b.toString(), dataBW, chunksB);
+    assertNotEquals(hashA, hashB);
+
+    Set<String> shared = new HashSet<>(chunks(chunksA).keySet());
+    shared.retainAll(chunks(chunksB).keySet());
+    assertTrue(shared.size() >= chunksA.mutations.size() - 2);
+
+    Map<String,byte[]> all = chunks(chunksA);
+    all.putAll(chunks(chunksB));
+    TreeMap<Key,Value> data = toMap(dataBW);
+    assertArrayEquals(content, read(new TreeMap<>(data.tailMap(new Key(hashB))), all));
+  }
+}
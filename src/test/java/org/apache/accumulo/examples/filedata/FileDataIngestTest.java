@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileDataIngestTest {
+
+  @TempDir
+  Path tempDir;
+
+  /**
+   * Keeps every mutation written to it.
+   */
+  static class ListWriter implements BatchWriter {
+    final List<Mutation> mutations = new ArrayList<>();
+
+    @Override
+    public synchronized void addMutation(Mutation m) {
+      mutations.add(m);
+    }
+
+    @Override
+    public synchronized void addMutations(Iterable<Mutation> iterable) {
+      iterable.forEach(mutations::add);
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    synchronized int countChunks(String row) {
+      int count = 0;
+      for (Mutation m : mutations) {
+        ColumnUpdate update = m.getUpdates().get(0);
+        if (new String(m.getRow(), StandardCharsets.UTF_8).equals(row) && Arrays
+            .equals(update.getColumnFamily(), FileDataIngest.CHUNK_CF.toString().getBytes()))
+          count++;
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Finds content stored if its hash is in a given set.
+   */
+  private static class SetChecker extends StoredContentChecker {
+    final Set<String> stored;
+    int lookups = 0;
+
+    SetChecker(Set<String> stored) {
+      super(null, "dataTable", Authorizations.EMPTY, new ColumnVisibility(), 4);
+      this.stored = stored;
+    }
+
+    @Override
+    public synchronized Set<String> findStored(Map<String,Long> sizes) {
+      lookups++;
+      Set<String> found = new HashSet<>(sizes.keySet());
+      found.retainAll(stored);
+      return found;
+    }
+  }
+
+  private String file(String name, String content) throws IOException {
+    Path path = tempDir.resolve(name);
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    return path.toString();
+  }
+
+  @Test
+  public void testMappedFile() throws Exception {
+    ListWriter bw = new ListWriter();
+    FileDataIngest fdi = new FileDataIngest(4, new ColumnVisibility());
+    String hash = fdi.insertFileData(file("a.txt", "abcdefghij"), bw);
+
+    MessageDigest md5 = MessageDigest.getInstance("MD5");
+    assertEquals(fdi.hexString(md5.digest("abcdefghij".getBytes(StandardCharsets.UTF_8))), hash);
+    // the refs, three chunks and the end marker
+    assertEquals(5, bw.mutations.size());
+    assertEquals(4, bw.countChunks(hash));
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (Mutation m : bw.mutations.subList(1, 5))
+      content.write(m.getUpdates().get(0).getValue());
+    assertEquals("abcdefghij", content.toString(StandardCharsets.UTF_8.name()));
+
+    // an empty file only has the refs and an end marker
+    bw = new ListWriter();
+    hash = fdi.insertFileData(file("empty", ""), bw);
+    assertEquals(2, bw.mutations.size());
+    assertEquals(1, bw.countChunks(hash));
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    List<String> files = new ArrayList<>();
+    for (int i = 0; i < 20; i++)
+      files.add(file("f" + i, "content of file " + (i % 5)));
+
+    ListWriter serial = new ListWriter();
+    FileDataIngest fdi = new FileDataIngest(8, new ColumnVisibility());
+    List<String> hashes = fdi.insertFileData(files, serial, 1);
+
+    // the hashes come back in the order of the files, whichever thread read them
+    ListWriter concurrent = new ListWriter();
+    assertEquals(hashes, fdi.insertFileData(files, concurrent, 4));
+    assertEquals(serial.mutations.size(), concurrent.mutations.size());
+    for (String hash : hashes)
+      assertEquals(serial.countChunks(hash), concurrent.countChunks(hash));
+  }
+  @Test
+  public void testEndMarker() throws Exception {
+    ListWriter bw = new ListWriter();
+    FileDataIngest fdi = new FileDataIngest(4, new ColumnVisibility());
+    String hash = fdi.insertFileData(file("a.txt", "abcdefghij"), bw);
+
+    // refs, three chunks and the end marker
+    assertEquals(5, bw.mutations.size());
+    assertEquals(4, bw.countChunks(hash));
+    Mutation last = bw.mutations.get(4);
+    Key marker = StoredContentChecker.endMarker(hash, 10, 4);
+    assertArrayEquals(marker.getRow().copyBytes(), last.getRow());
+    assertArrayEquals(marker.getColumnQualifier().copyBytes(),
+        last.getUpdates().get(0).getColumnQualifier());
+    assertEquals(0, last.getUpdates().get(0).getValue().length);
+
+    // an empty file only has an end marker
+    assertArrayEquals(FileDataIngest.intToBytes(0), Arrays.copyOfRange(
+        StoredContentChecker.endMarker(hash, 0, 4).getColumnQualifier().copyBytes(), 4, 8));
+  }
+
+  @Test
+  public void testSkipStored() throws Exception {
+    List<String> files = Arrays.asList(file("a.txt", "abcdefghij"), file("b.txt", "abcdefghij"),
+        file("c.txt", "xyz"));
+
+    // nothing is stored yet, but content repeated in the files is written once
+    ListWriter bw = new ListWriter();
+    FileDataIngest fdi = new FileDataIngest(4, new ColumnVisibility());
+    SetChecker checker = new SetChecker(Collections.emptySet());
+    fdi.setStoredContentChecker(checker);
+    List<String> hashes = fdi.insertFileData(files, bw, 2);
+    assertEquals(hashes.get(0), hashes.get(1));
+    assertEquals(4, bw.countChunks(hashes.get(0)));
+    assertEquals(2, bw.countChunks(hashes.get(2)));
+    assertEquals(9, bw.mutations.size());
+    assertEquals(1, checker.lookups);
+
+    // only refs are written for stored content
+    bw = new ListWriter();
+    fdi = new FileDataIngest(4, new ColumnVisibility());
+    checker = new SetChecker(Collections.singleton(hashes.get(0)));
+    fdi.setStoredContentChecker(checker);
+    assertEquals(hashes, fdi.insertFileData(files, bw, 2));
+    assertEquals(0, bw.countChunks(hashes.get(0)));
+    assertEquals(2, bw.countChunks(hashes.get(2)));
+    assertEquals(5, bw.mutations.size());
+    assertEquals(1, checker.lookups);
+
+    // a single file is looked up on its own
+    bw = new ListWriter();
+    assertEquals(hashes.get(0), fdi.insertFileData(files.get(1), bw));
+    assertEquals(1, bw.mutations.size());
+    assertEquals(2, checker.lookups);
+  }
+
+  @Test
+  public void testStoredVisibility() {
+    StoredContentChecker checker = new StoredContentChecker(null, "dataTable",
+        Authorizations.EMPTY, new ColumnVisibility("A"), 4);
+    Key marker = StoredContentChecker.endMarker("abc", 10, 4);
+    Key markerA = new Key(marker.getRow(), marker.getColumnFamily(), marker.getColumnQualifier(),
+        new Text("A"));
+    Key markerB = new Key(marker.getRow(), marker.getColumnFamily(), marker.getColumnQualifier(),
+        new Text("B"));
+
+    // content stored with another visibility is written again
+    assertTrue(checker.matches(markerA, new Value()));
+    assertFalse(checker.matches(markerB, new Value()));
+    assertFalse(checker.matches(marker, new Value()));
+    assertFalse(checker.matches(markerA, new Value("x")));
+  }
+}
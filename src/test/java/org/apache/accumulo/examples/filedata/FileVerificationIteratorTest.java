@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.examples.filedata.FileVerificationIterator.Status;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+
+public class FileVerificationIteratorTest {
+
+  private static String hash(String content) throws NoSuchAlgorithmException {
+    return FileDataIngest.hexString(MessageDigest.getInstance("MD5").digest(content.getBytes()));
+  }
+
+  private static void addChunk(TreeMap<Key,Value> data, String row, int chunkSize, int chunkCount,
+      String vis, byte[] value, byte codec) {
+    Text chunkCQ = new Text(FileDataIngest.intToBytes(chunkSize));
+    chunkCQ.append(FileDataIngest.intToBytes(chunkCount), 0, 4);
+    if (codec != ChunkCodec.NONE)
+      chunkCQ.append(new byte[] {codec}, 0, 1);
+    data.put(new Key(new Text(row), FileDataIngest.CHUNK_CF, chunkCQ, new Text(vis), 5),
+        new Value(value));
+  }
+
+  private static void addChunk(TreeMap<Key,Value> data, String row, int chunkCount,
+      String value) {
+    addChunk(data, row, 4, chunkCount, "A", value.getBytes(), ChunkCodec.NONE);
+  }
+
+  private static void addRefs(TreeMap<Key,Value> data, String row) {
+    data.put(new Key(row, "refs", "id\0name", "A"), new Value("name"));
+  }
+
+  private static Map<String,Status> verify(TreeMap<Key,Value> data, boolean failuresOnly)
+      throws IOException {
+    FileVerificationIterator iter = new FileVerificationIterator();
+    iter.init(new ChunkCombinerTest.MapIterator(data), Collections
+        .singletonMap(FileVerificationIterator.FAILURES_ONLY_OPT, Boolean.toString(failuresOnly)),
+        null);
+    iter.seek(new Range(), Collections.emptySet(), false);
+    Map<String,Status> results = new HashMap<>();
+    while (iter.hasTop()) {
+      assertEquals(FileVerificationIterator.VERIFY_CQ, iter.getTopKey().getColumnQualifier());
+      String status = iter.getTopValue().toString().split(" ")[0];
+      results.put(iter.getTopKey().getRow().toString(), Status.valueOf(status));
+      iter.next();
+    }
+    return results;
+  }
+
+  @Test
+  public void testVerify() throws Exception {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    Map<String,Status> expected = new HashMap<>();
+
+    String good = hash("abcdefghij");
+    addRefs(data, good);
+    addChunk(data, good, 0, "abcd");
+    addChunk(data, good, 4, 0, "B", "abcd".getBytes(), ChunkCodec.NONE);
+    addChunk(data, good, 1, "efgh");
+    addChunk(data, good, 2, "ij");
+    addChunk(data, good, 3, "");
+    // a second, complete copy with a larger chunk size
+    addChunk(data, good, 8, 0, "A", "abcdefgh".getBytes(), ChunkCodec.NONE);
+    addChunk(data, good, 8, 1, "A", "ij".getBytes(), ChunkCodec.NONE);
+    addChunk(data, good, 8, 2, "A", new byte[0], ChunkCodec.NONE);
+    expected.put(good, Status.OK);
+
+    String empty = hash("");
+    addChunk(data, empty, 0, "");
+    expected.put(empty, Status.OK);
+
+    String compressed = hash("cccccccc");
+    byte[] buf = new byte[100];
+    int len = new ChunkCodec(6).compress("cccccccc".getBytes(), 8, buf);
+    addChunk(data, compressed, 8, 0, "A", Arrays.copyOf(buf, len), ChunkCodec.DEFLATE);
+    addChunk(data, compressed, 8, 1, "A", new byte[0], ChunkCodec.NONE);
+    expected.put(compressed, Status.OK);
+
+    String missing = hash("0123456789");
+    addChunk(data, missing, 0, "0123");
+    addChunk(data, missing, 2, "89");
+    addChunk(data, missing, 3, "");
+    expected.put(missing, Status.MISSING_CHUNKS);
+
+    String noEnd = hash("xyz");
+    addChunk(data, noEnd, 0, "xyz");
+    expected.put(noEnd, Status.MISSING_END_MARKER);
+
+    String extra = hash("uvw");
+    addChunk(data, extra, 0, "uvw");
+    addChunk(data, extra, 1, "");
+    addChunk(data, extra, 2, "");
+    expected.put(extra, Status.EXTRA_CHUNKS);
+
+    String mismatch = hash("hello");
+    addChunk(data, mismatch, 0, "hell");
+    addChunk(data, mismatch, 1, "p");
+    addChunk(data, mismatch, 2, "");
+    expected.put(mismatch, Status.HASH_MISMATCH);
+
+    String shortChunk = hash("abcdef");
+    addChunk(data, shortChunk, 0, "ab");
+    addChunk(data, shortChunk, 1, "cdef");
+    addChunk(data, shortChunk, 2, "");
+    expected.put(shortChunk, Status.BAD_CHUNK);
+
+    String badCopy = hash("rstu");
+    addChunk(data, badCopy, 0, "rstu");
+    addChunk(data, badCopy, 1, "");
+    addChunk(data, badCopy, 8, 0, "A", "rstu".getBytes(), ChunkCodec.NONE);
+    expected.put(badCopy, Status.MISSING_END_MARKER);
+
+    String refsOnly = hash("gone");
+    addRefs(data, refsOnly);
+    expected.put(refsOnly, Status.NO_CHUNKS);
+
+    // rows with a manifest keep their chunks elsewhere, and rows with neither are not files
+    data.put(new Key(hash("manifest"), "~manifest", "", "A"), new Value("list"));
+    addRefs(data, hash("manifest"));
+    data.put(new Key("total", "info", "histTotal", ""), new Value("1,2"));
+
+    assertEquals(expected, verify(data, false));
+
+    expected.remove(good);
+    expected.remove(empty);
+    expected.remove(compressed);
+    assertEquals(expected, verify(data, true));
+  }
+
+  @Test
+  public void testSeekWithinRow() throws Exception {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    String first = hash("a");
+    String second = hash("b");
+    for (String row : Arrays.asList(first, second)) {
+      addRefs(data, row);
+      addChunk(data, row, 0, row.equals(first) ? "a" : "b");
+      addChunk(data, row, 1, "");
+    }
+    String later = first.compareTo(second) < 0 ? second : first;
+    String earlier = later.equals(first) ? second : first;
+
+    FileVerificationIterator iter = new FileVerificationIterator();
+    iter.init(new ChunkCombinerTest.MapIterator(data), null, null);
+    // continuing a scan after the entry of the first row does not return it again
+    Key top = new Key(new Text(earlier), FileVerificationIterator.VERIFY_CF,
+        FileVerificationIterator.VERIFY_CQ);
+    iter.seek(new Range(top, false, null, true), Collections.emptySet(), false);
+    assertEquals(later, iter.getTopKey().getRow().toString());
+    assertEquals("OK", iter.getTopValue().toString());
+  }
+}
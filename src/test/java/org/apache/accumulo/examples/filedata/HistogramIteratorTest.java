@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+
+public class HistogramIteratorTest {
+
+  private static void addChunk(TreeMap<Key,Value> data, String row, int chunkSize,
+      int chunkCount, String vis, byte[] value, byte codec) {
+    Text chunkCQ = new Text(FileDataIngest.intToBytes(chunkSize));
+    chunkCQ.append(FileDataIngest.intToBytes(chunkCount), 0, 4);
+    if (codec != ChunkCodec.NONE)
+      chunkCQ.append(new byte[] {codec}, 0, 1);
+    data.put(new Key(new Text(row), FileDataIngest.CHUNK_CF, chunkCQ, new Text(vis), 5),
+        new Value(value));
+  }
+
+  private static void addChunk(TreeMap<Key,Value> data, String row, int chunkSize,
+      int chunkCount, String vis, String value) {
+    addChunk(data, row, chunkSize, chunkCount, vis, value.getBytes(), ChunkCodec.NONE);
+  }
+
+  private static long[] hist(String data) {
+    long[] hist = new long[256];
+    for (byte b : data.getBytes())
+      hist[b & 0xff]++;
+    return hist;
+  }
+
+  private static TreeMap<Key,Value> testData() {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    addChunk(data, "a", 4, 0, "A", "aabb");
+    addChunk(data, "a", 4, 0, "B", "aabb");
+    addChunk(data, "a", 4, 1, "A", "ab");
+    addChunk(data, "a", 4, 2, "A", "");
+    data.put(new Key("b", "refs", "id\0name", "A"), new Value("name"));
+    data.put(new Key("c", "refs", "id\0name", "A"), new Value("name"));
+    byte[] compressed = new byte[100];
+    int len = new ChunkCodec(6).compress("cccccccc".getBytes(), 8, compressed);
+    addChunk(data, "c", 8, 0, "A", Arrays.copyOf(compressed, len), ChunkCodec.DEFLATE);
+    addChunk(data, "c", 8, 1, "A", "");
+    return data;
+  }
+
+  @Test
+  public void testHistogram() throws IOException {
+    HistogramIterator iter = new HistogramIterator();
+    iter.init(new ChunkCombinerTest.MapIterator(testData()), null, null);
+    iter.seek(new Range(), Collections.emptySet(), false);
+
+    assertTrue(iter.hasTop());
+    assertEquals(new Key(new Text("a"), HistogramIterator.HIST_CF, HistogramIterator.HIST_CQ,
+        new Text("A"), 5), iter.getTopKey());
+    assertArrayEquals(hist("aabbab"), HistogramIterator.decode(iter.getTopValue()));
+    Key first = new Key(iter.getTopKey());
+
+    iter.next();
+    assertTrue(iter.hasTop());
+    assertEquals("c", iter.getTopKey().getRow().toString());
+    assertArrayEquals(hist("cccccccc"), HistogramIterator.decode(iter.getTopValue()));
+    iter.next();
+    assertFalse(iter.hasTop());
+
+    // continuing a scan after the first entry does not return the first row again
+    iter.seek(new Range(first, false, null, true), Collections.emptySet(), false);
+    assertTrue(iter.hasTop());
+    assertEquals("c", iter.getTopKey().getRow().toString());
+
+    // a range that ends in the middle of a row still counts the whole row
+    iter.seek(new Range(new Key("a"), true, new Key("a", "~chunk"), true), Collections.emptySet(),
+        false);
+    assertTrue(iter.hasTop());
+    assertArrayEquals(hist("aabbab"), HistogramIterator.decode(iter.getTopValue()));
+    iter.next();
+    assertFalse(iter.hasTop());
+  }
+
+  @Test
+  public void testChunkSizes() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    // the same file written with two chunk sizes is only counted once
+    addChunk(data, "a", 4, 0, "A", "aabb");
+    addChunk(data, "a", 4, 1, "A", "ab");
+    addChunk(data, "a", 4, 2, "A", "");
+    addChunk(data, "a", 8, 0, "A", "aabbab");
+    addChunk(data, "a", 8, 1, "A", "");
+
+    HistogramIterator iter = new HistogramIterator();
+    iter.init(new ChunkCombinerTest.MapIterator(data), null, null);
+    iter.seek(new Range(), Collections.emptySet(), false);
+    assertTrue(iter.hasTop());
+    assertArrayEquals(hist("aabbab"), HistogramIterator.decode(iter.getTopValue()));
+    iter.next();
+    assertFalse(iter.hasTop());
+  }
+
+  @Test
+  public void testEncoding() {
+    long[] hist = hist("hello world");
+    Value encoded = HistogramIterator.encode(hist);
+    assertArrayEquals(hist, HistogramIterator.decode(encoded));
+    assertEquals(256, encoded.toString().split(",").length);
+  }
+}
@@ -42,5 +42,11 @@ public class KeyUtilTest {
     checkSeps("abcde");
     checkSeps("");
     checkSeps("", "");
+
+    // fields are encoded and decoded as UTF-8
+    assertEquals(new Text("\u00e9\0\u00e9"), KeyUtil.buildNullSepText("\u00e9", "\u00e9"));
+    String[] rets = KeyUtil.splitNullSepText(new Text("\u00e9\0b"));
+    assertEquals("\u00e9", rets[0]);
+    assertEquals("b", rets[1]);
   }
 }
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.Iterators;
+
+public class ManifestInputStreamTest {
+
+  /**
+   * Serves chunks from a map, recording the size of each fetch.
+   */
+  private static class MapFetcher implements ManifestInputStream.ChunkFetcher {
+    final Map<String,byte[]> chunks = new HashMap<>();
+    final List<Integer> fetches = new ArrayList<>();
+
+    @Override
+    public Map<String,byte[]> fetch(Collection<String> hashes) {
+      fetches.add(hashes.size());
+      Map<String,byte[]> found = new HashMap<>();
+      for (String hash : hashes) {
+        if (chunks.containsKey(hash))
+          found.put(hash, chunks.get(hash));
+      }
+      return found;
+    }
+  }
+
+  private static void addEntry(TreeMap<Key,Value> data, String row, int index, String vis,
+      String hash) {
+    data.put(new Key(new Text(row), FileDataIngest.MANIFEST_CF,
+        new Text(FileDataIngest.intToBytes(index)), new Text(vis)), new Value(hash));
+  }
+
+  /**
+   * Adds a manifest for the given chunks to the data, and the chunks to the fetcher.
+   */
+  private static void addFile(TreeMap<Key,Value> data, MapFetcher fetcher, String row,
+      String... chunks) {
+    data.put(new Key(row, "refs", "id\0name", "A"), new Value("name"));
+    for (int i = 0; i < chunks.length; i++) {
+      addEntry(data, row, i, "A", "hash" + chunks[i]);
+      fetcher.chunks.put("hash" + chunks[i], chunks[i].getBytes());
+    }
+    addEntry(data, row, chunks.length, "A", "");
+  }
+
+  private static String read(ManifestInputStream in, TreeMap<Key,Value> data) throws IOException {
+    in.setSource(Iterators.peekingIterator(data.entrySet().iterator()));
+    return readAll(in);
+  }
+
+  private static String readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] b = new byte[3];
+    int len;
+    while ((len = in.read(b)) >= 0)
+      out.write(b, 0, len);
+    return out.toString();
+  }
+
+  @Test
+  public void testChunkBoundaries() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    MapFetcher fetcher = new MapFetcher();
+    addFile(data, fetcher, "row1", "ab", "cdefg", "h", "ijkl", "mn");
+    // the same entry with another visibility is read once
+    addEntry(data, "row1", 1, "B", "hashcdefg");
+
+    ManifestInputStream in = new ManifestInputStream(fetcher, 2);
+    assertEquals("abcdefghijklmn", read(in, data));
+    assertEquals(List.of(2, 2, 1), fetcher.fetches);
+    assertEquals(-1, in.read());
+    in.close();
+
+    // single byte reads cross chunks too
+    in.setSource(Iterators.peekingIterator(data.entrySet().iterator()));
+    StringBuilder sb = new StringBuilder();
+    int b;
+    while ((b = in.read()) >= 0)
+      sb.append((char) b);
+    assertEquals("abcdefghijklmn", sb.toString());
+    in.close();
+
+    // an empty file only has an end marker
+    TreeMap<Key,Value> empty = new TreeMap<>();
+    addFile(empty, fetcher, "row2");
+    assertEquals("", read(new ManifestInputStream(fetcher, 2), empty));
+  }
+
+  @Test
+  public void testNextFile() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    MapFetcher fetcher = new MapFetcher();
+    addFile(data, fetcher, "row1", "ab", "cd");
+    addFile(data, fetcher, "row2", "ef");
+    var source = Iterators.peekingIterator(data.entrySet().iterator());
+
+    ManifestInputStream in = new ManifestInputStream(fetcher, 10);
+    in.setSource(source);
+    assertEquals('a', in.read());
+    in.close();
+    in.setSource(source);
+    assertEquals("ef", readAll(in));
+  }
+
+  @Test
+  public void testMissingChunk() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    MapFetcher fetcher = new MapFetcher();
+    addFile(data, fetcher, "row1", "ab", "cd", "ef");
+    fetcher.chunks.remove("hashcd");
+    assertThrows(IOException.class, () -> read(new ManifestInputStream(fetcher, 10), data));
+  }
+
+  @Test
+  public void testMissingEntries() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    MapFetcher fetcher = new MapFetcher();
+    addFile(data, fetcher, "row1", "ab", "cd", "ef");
+    data.remove(new Key(new Text("row1"), FileDataIngest.MANIFEST_CF,
+        new Text(FileDataIngest.intToBytes(1)), new Text("A")));
+    assertThrows(IOException.class, () -> read(new ManifestInputStream(fetcher, 10), data));
+
+    // no end marker
+    TreeMap<Key,Value> noEnd = new TreeMap<>();
+    addFile(noEnd, fetcher, "row1", "ab");
+    noEnd.remove(noEnd.lastKey());
+    assertThrows(IOException.class, () -> read(new ManifestInputStream(fetcher, 10), noEnd));
+  }
+
+  @Test
+  public void testExtraEntries() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    MapFetcher fetcher = new MapFetcher();
+    addFile(data, fetcher, "row1", "ab", "cd");
+    // the end marker with another visibility is not an extra entry
+    addEntry(data, "row1", 2, "B", "");
+    assertEquals("abcd", read(new ManifestInputStream(fetcher, 10), data));
+
+    addEntry(data, "row1", 3, "A", "hashab");
+    assertThrows(IOException.class, () -> read(new ManifestInputStream(fetcher, 10), data));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.junit.jupiter.api.Test;
+
+public class ReadAheadIteratorTest {
+
+  private static TreeMap<Key,Value> data(int size) {
+    TreeMap<Key,Value> data = new TreeMap<>();
+    for (int i = 0; i < size; i++)
+      data.put(new Key(String.format("row%03d", i)), new Value("v" + i));
+    return data;
+  }
+
+  /**
+   * Counts the entries read from a source.
+   */
+  private static Iterator<Entry<Key,Value>> counting(Iterator<Entry<Key,Value>> source,
+      AtomicInteger count) {
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return source.hasNext();
+      }
+
+      @Override
+      public Entry<Key,Value> next() {
+        count.incrementAndGet();
+        return source.next();
+      }
+    };
+  }
+
+  @Test
+  public void testReadAll() throws Exception {
+    TreeMap<Key,Value> data = data(100);
+    CountDownLatch released = new CountDownLatch(1);
+    try (ReadAheadIterator iter = new ReadAheadIterator(data.entrySet().iterator(), 3,
+        released::countDown)) {
+      for (Entry<Key,Value> e : data.entrySet()) {
+        assertTrue(iter.hasNext());
+        assertEquals(e.getKey(), iter.peek().getKey());
+        assertEquals(e, iter.next());
+      }
+      assertFalse(iter.hasNext());
+      // the source is released once it is exhausted, without closing the iterator
+      assertTrue(released.await(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testStopEarly() throws Exception {
+    AtomicInteger read = new AtomicInteger();
+    CountDownLatch released = new CountDownLatch(1);
+    ReadAheadIterator iter = new ReadAheadIterator(
+        counting(data(100).entrySet().iterator(), read), 2, released::countDown);
+    iter.next();
+    iter.next();
+
+    // the reader is blocked on the full buffer until the iterator is closed
+    assertFalse(released.await(100, TimeUnit.MILLISECONDS));
+    iter.close();
+    assertTrue(released.await(10, TimeUnit.SECONDS));
+    assertTrue(read.get() < 10, "read " + read.get());
+    assertThrows(IllegalStateException.class, iter::hasNext);
+  }
+
+  @Test
+  public void testStopWhileReading() throws Exception {
+    // a source that blocks, as a scanner does while waiting on a tablet server
+    CountDownLatch released = new CountDownLatch(1);
+    Iterator<Entry<Key,Value>> slow = new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        try {
+          Thread.sleep(60_000);
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        return true;
+      }
+
+      @Override
+      public Entry<Key,Value> next() {
+        return data(1).firstEntry();
+      }
+    };
+    ReadAheadIterator iter = new ReadAheadIterator(slow, 2, released::countDown);
+    iter.close();
+    assertTrue(released.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testError() throws Exception {
+    CountDownLatch released = new CountDownLatch(1);
+    Iterator<Entry<Key,Value>> failing = new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Entry<Key,Value> next() {
+        throw new IllegalArgumentException("scan failed");
+      }
+    };
+    try (ReadAheadIterator iter = new ReadAheadIterator(failing, 2, released::countDown)) {
+      assertThrows(IllegalArgumentException.class, iter::hasNext);
+      assertTrue(released.await(10, TimeUnit.SECONDS));
+    }
+  }
+}
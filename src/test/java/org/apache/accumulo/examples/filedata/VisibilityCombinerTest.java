@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.junit.jupiter.api.Test;
+
+public class VisibilityCombinerTest {
+
+  private static String combine(String... vis) {
+    VisibilityCombiner vc = new VisibilityCombiner();
+    for (String v : vis)
+      vc.add(new ArrayByteSequence(v));
+    return new String(vc.get());
+  }
+
+  @Test
+  public void testCombine() {
+    assertEquals("(A)|(B)", combine("A", "B"));
+    assertEquals("(A)|(B)", combine("B", "(A)", "A"));
+    assertEquals("((D|E)&C)|(A&B)", combine("(A&B)|(C&(D|E))", "A&B"));
+    assertEquals("((D|E)&(F|G))", combine("(F|G)&(D|E)"));
+    assertEquals("(A&B)", combine("B&A"));
+    assertEquals("(A&B&C)", combine("C&(B&A)", "(A&C)&B"));
+  }
+
+  @Test
+  public void testSimplify() {
+    assertEquals("(A)", combine("A", "A&B"));
+    assertEquals("(A)", combine("A&B", "(A)"));
+    assertEquals("(A)|(B)", combine("A|B", "(B)&C", "B&(C|D)"));
+    assertEquals("(A&B)", combine("(A&B)", "B&A", "((B)&A)"));
+    assertEquals("(A&B)", combine("A&B", "A&(B&C)"));
+    assertEquals("(\"a|b\")", combine("\"a|b\"", "\"a|b\"&C"));
+  }
+
+  @Test
+  public void testEmpty() {
+    assertEquals("(A)", combine("A", ""));
+    assertEquals("(A)|(B)", combine("", "B", "A", ""));
+    assertEquals("", combine(""));
+  }
+
+  @Test
+  public void testInvalid() {
+    VisibilityCombiner vc = new VisibilityCombiner();
+    assertThrows(IllegalArgumentException.class, () -> vc.add(new ArrayByteSequence("(A")));
+    assertThrows(IllegalArgumentException.class, () -> vc.add(new ArrayByteSequence("A)")));
+    assertThrows(IllegalArgumentException.class, () -> vc.add(new ArrayByteSequence("\"A")));
+  }
+
+  @Test
+  public void testCache() {
+    Map<Set<ByteSequence>,byte[]> cache = new HashMap<>();
+    VisibilityCombiner vc1 = new VisibilityCombiner(cache);
+    vc1.add(new ArrayByteSequence("A"));
+    vc1.add(new ArrayByteSequence("B"));
+    byte[] first = vc1.get();
+    assertEquals(1, cache.size());
+
+    VisibilityCombiner vc2 = new VisibilityCombiner(cache);
+    vc2.add(new ArrayByteSequence("B"));
+    vc2.add(new ArrayByteSequence("A"));
+    vc2.add(new ArrayByteSequence("A"));
+    assertSame(first, vc2.get());
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.accumulo.examples.filedata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+import org.junit.jupiter.api.Test;
+
+public class WholeRowsTest {
+
+  private static Range rows(String start, String end) {
+    return new Range(start == null ? null : new Key(start), true,
+        end == null ? null : new Key(end), false);
+  }
+
+  @Test
+  public void testSeekRange() {
+    assertEquals(new Range(), WholeRows.seekRange(new Range()));
+    // ranges that already cover whole rows are unchanged
+    assertEquals(rows("a", "b"), WholeRows.seekRange(new Range("a", true, "b", false)));
+    assertEquals(rows("a", "b\0"), WholeRows.seekRange(new Range("a", true, "b", true)));
+    assertEquals(rows("a", null), WholeRows.seekRange(new Range("a", null)));
+
+    // a start after the beginning of a row skips that row
+    Key mid = new Key("a", "cf", "cq");
+    assertEquals(rows("a\0", null), WholeRows.seekRange(new Range(mid, true, null, true)));
+    assertEquals(rows("a\0", null),
+        WholeRows.seekRange(new Range(new Key("a"), false, null, true)));
+
+    // an end in the middle of a row reads the rest of that row
+    assertEquals(rows(null, "a\0"), WholeRows.seekRange(new Range(null, true, mid, true)));
+    assertEquals(rows(null, "b\0"),
+        WholeRows.seekRange(new Range(null, true, new Key("b", "cf"), false)));
+    assertEquals(rows(null, "b\0"),
+        WholeRows.seekRange(new Range(null, true, new Key("b"), true)));
+
+    // ranges within a row that was already returned are empty
+    assertNull(WholeRows.seekRange(new Range(mid, true, mid.followingKey(PartialKey.ROW_COLFAM),
+        false)));
+    assertNull(WholeRows.seekRange(new Range(new Key("a"), true, new Key("a"), false)));
+  }
+}